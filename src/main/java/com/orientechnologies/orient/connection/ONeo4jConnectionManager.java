@@ -31,30 +31,34 @@ import org.neo4j.driver.v1.Session;
 public class ONeo4jConnectionManager {
 
   private OSourceNeo4jInfo sourceNeo4jInfo;
+  private org.neo4j.driver.v1.Driver driver;
 
   public ONeo4jConnectionManager(OSourceNeo4jInfo sourceNeo4jInfo) {
     this.sourceNeo4jInfo = sourceNeo4jInfo;
   }
 
   /**
-   * It returns a new connection to neo4j server.
+   * It returns a new connection to neo4j server. All the sessions share the same driver, so that
+   * several sessions can be used concurrently.
    *
    * @throws SQLException
    */
-  public Session getSession() throws Exception {
+  public synchronized Session getSession() throws Exception {
 
-    org.neo4j.driver.v1.Driver driver = null;
     Session session = null;
 
     try {
-      Config noSSL = Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig();
-      driver =
-          GraphDatabase.driver(
-              this.sourceNeo4jInfo.getNeo4jUrl(),
-              AuthTokens.basic(
-                  this.sourceNeo4jInfo.getNeo4jUsername(), this.sourceNeo4jInfo.getNeo4jPassword()),
-              noSSL);
-      session = driver.session();
+      if (this.driver == null) {
+        Config noSSL = Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig();
+        this.driver =
+            GraphDatabase.driver(
+                this.sourceNeo4jInfo.getNeo4jUrl(),
+                AuthTokens.basic(
+                    this.sourceNeo4jInfo.getNeo4jUsername(),
+                    this.sourceNeo4jInfo.getNeo4jPassword()),
+                noSSL);
+      }
+      session = this.driver.session();
     } catch (Exception e) {
       String mess = "";
       ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
@@ -64,6 +68,14 @@ public class ONeo4jConnectionManager {
     return session;
   }
 
+  /** Closes the driver and all its sessions. */
+  public synchronized void close() {
+    if (this.driver != null) {
+      this.driver.close();
+      this.driver = null;
+    }
+  }
+
   /**
    * It checks the connection to neo4j server.
    *
@@ -0,0 +1,264 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import com.orientechnologies.orient.output.OPluginMessageHandler;
+import com.orientechnologies.orient.util.ORingBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementation of OPluginMessageHandler which never makes the importer threads wait for the
+ * output: messages are put in a bounded lock-free ring buffer and printed by a single background
+ * thread through the wrapped message handler. When the buffer is full, messages are lost according
+ * to the overflow policy, and the number of lost messages is printed as soon as there is room.
+ * Messages filtered out by the level are discarded before being buffered.
+ */
+public class ONeo4jImporterAsyncMessageHandler implements OPluginMessageHandler {
+
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /** What is lost when the buffer is full. */
+  public enum OverflowPolicy {
+    DROP, // the new message
+    OVERWRITE; // the oldest message in the buffer
+
+    public static OverflowPolicy parse(String policy) {
+      return valueOf(policy.trim().toUpperCase(Locale.ENGLISH));
+    }
+  }
+
+  private final OPluginMessageHandler printer;
+  private final OverflowPolicy overflowPolicy;
+  private final ORingBuffer<Message> buffer;
+  private final AtomicLong handled = new AtomicLong(); // printed or lost
+  private final AtomicLong lost = new AtomicLong();
+  private final Thread drainer;
+  private volatile boolean closed;
+
+  public ONeo4jImporterAsyncMessageHandler(
+      OPluginMessageHandler printer, OverflowPolicy overflowPolicy) {
+    this(printer, overflowPolicy, DEFAULT_CAPACITY);
+  }
+
+  public ONeo4jImporterAsyncMessageHandler(
+      OPluginMessageHandler printer, OverflowPolicy overflowPolicy, int capacity) {
+    this.printer = printer;
+    this.overflowPolicy = overflowPolicy;
+    this.buffer = new ORingBuffer<Message>(capacity);
+    this.drainer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                drain();
+              }
+            },
+            "neo4j-importer-log");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  @Override
+  public int getOutputManagerLevel() {
+    return printer.getOutputManagerLevel();
+  }
+
+  @Override
+  public void setOutputManagerLevel(int level) {
+    printer.setOutputManagerLevel(level);
+  }
+
+  @Override
+  public void debug(Object requester, String message) {
+    this.publish(OOutputStreamManager.DEBUG_LEVEL, requester, message, null);
+  }
+
+  @Override
+  public void debug(Object requester, String format, Object... args) {
+    this.publish(OOutputStreamManager.DEBUG_LEVEL, requester, format, args);
+  }
+
+  @Override
+  public void info(Object requester, String message) {
+    this.publish(OOutputStreamManager.INFO_LEVEL, requester, message, null);
+  }
+
+  @Override
+  public void info(Object requester, String format, Object... args) {
+    this.publish(OOutputStreamManager.INFO_LEVEL, requester, format, args);
+  }
+
+  @Override
+  public void warn(Object requester, String message) {
+    this.publish(OOutputStreamManager.WARNING_LEVEL, requester, message, null);
+  }
+
+  @Override
+  public void warn(Object requester, String format, Object... args) {
+    this.publish(OOutputStreamManager.WARNING_LEVEL, requester, format, args);
+  }
+
+  @Override
+  public void error(Object requester, String message) {
+    this.publish(OOutputStreamManager.ERROR_LEVEL, requester, message, null);
+  }
+
+  @Override
+  public void error(Object requester, String format, Object... args) {
+    this.publish(OOutputStreamManager.ERROR_LEVEL, requester, format, args);
+  }
+
+  /** Returns the number of messages lost because the buffer was full. */
+  public long getLostMessages() {
+    return lost.get();
+  }
+
+  /** Waits until the messages published so far have been printed. */
+  public void flush() {
+    long published = buffer.offered();
+    while (handled.get() < published && drainer.isAlive()) {
+      LockSupport.unpark(drainer);
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  /**
+   * Prints the pending messages and stops the background thread. Messages published afterwards are
+   * printed directly.
+   */
+  public void close() {
+    this.flush();
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void publish(int level, Object requester, String format, Object[] args) {
+
+    int outputLevel = printer.getOutputManagerLevel();
+    if (outputLevel == OOutputStreamManager.BLANK_LEVEL || outputLevel > level) {
+      return;
+    }
+
+    Message message = new Message(level, requester, format, args);
+    if (closed) {
+      this.print(message);
+      return;
+    }
+    while (!buffer.offer(message)) {
+      if (overflowPolicy == OverflowPolicy.DROP) {
+        lost.incrementAndGet();
+        return;
+      }
+      // makes room by losing the oldest message, unless the drainer took it meanwhile
+      if (buffer.poll() != null) {
+        lost.incrementAndGet();
+        handled.incrementAndGet();
+      }
+    }
+  }
+
+  private void drain() {
+    long reportedLost = 0;
+    while (true) {
+      Message message = buffer.poll();
+      if (message != null) {
+        this.print(message);
+        handled.incrementAndGet();
+        continue;
+      }
+
+      long currentLost = lost.get();
+      if (currentLost > reportedLost) {
+        printer.warn(this, "\n" + (currentLost - reportedLost) + " log messages lost\n");
+        reportedLost = currentLost;
+      }
+
+      if (closed) {
+        return;
+      }
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+  }
+
+  private void print(Message message) {
+    try {
+      switch (message.level) {
+        case OOutputStreamManager.DEBUG_LEVEL:
+          if (message.args == null) {
+            printer.debug(message.requester, message.format);
+          } else {
+            printer.debug(message.requester, message.format, message.args);
+          }
+          break;
+        case OOutputStreamManager.INFO_LEVEL:
+          if (message.args == null) {
+            printer.info(message.requester, message.format);
+          } else {
+            printer.info(message.requester, message.format, message.args);
+          }
+          break;
+        case OOutputStreamManager.WARNING_LEVEL:
+          if (message.args == null) {
+            printer.warn(message.requester, message.format);
+          } else {
+            printer.warn(message.requester, message.format, message.args);
+          }
+          break;
+        default:
+          if (message.args == null) {
+            printer.error(message.requester, message.format);
+          } else {
+            printer.error(message.requester, message.format, message.args);
+          }
+          break;
+      }
+    } catch (RuntimeException e) {
+      // a broken output must not stop the drainer, nor the import
+      lost.incrementAndGet();
+    }
+  }
+
+  private static class Message {
+
+    private final int level;
+    private final Object requester;
+    private final String format;
+    private final Object[] args;
+
+    Message(int level, Object requester, String format, Object[] args) {
+      this.level = level;
+      this.requester = requester;
+      this.format = format;
+      this.args = args;
+    }
+  }
+}
@@ -20,8 +20,10 @@
 
 package com.orientechnologies.orient.context;
 
+import com.orientechnologies.orient.connection.ONeo4jConnectionManager;
 import com.orientechnologies.orient.core.db.OrientDB;
 import com.orientechnologies.orient.core.db.OrientDBConfig;
+import com.orientechnologies.orient.listener.OProgressMonitor;
 import com.orientechnologies.orient.output.OPluginMessageHandler;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -35,6 +37,9 @@ public class ONeo4jImporterContext {
 
   private OPluginMessageHandler messageHandler;
   private ONeo4jImporterStatistics statistics;
+  private ONeo4jConnectionManager neo4jConnectionManager;
+  private OProgressMonitor progressMonitor;
+  private final ONeo4jImporterControl control = new ONeo4jImporterControl();
 
   public ONeo4jImporterContext(OrientDB orientDBInstance) {
     this.statistics = new ONeo4jImporterStatistics();
@@ -148,6 +153,17 @@ public class ONeo4jImporterContext {
     this.messageHandler = messageHandler;
   }
 
+  /**
+   * Returns true if the message handler prints debug messages: on the import hot path, messages are
+   * built only if they are going to be printed.
+   */
+  public boolean isDebugEnabled() {
+    if (this.messageHandler instanceof ONeo4jImporterMessageHandler) {
+      return ((ONeo4jImporterMessageHandler) this.messageHandler).isDebugEnabled();
+    }
+    return ONeo4jImporterMessageHandler.isDebugEnabled(this.messageHandler.getOutputManagerLevel());
+  }
+
   public ONeo4jImporterStatistics getStatistics() {
     return this.statistics;
   }
@@ -155,4 +171,25 @@ public class ONeo4jImporterContext {
   public void setStatistics(ONeo4jImporterStatistics statistics) {
     this.statistics = statistics;
   }
+
+  public ONeo4jConnectionManager getNeo4jConnectionManager() {
+    return this.neo4jConnectionManager;
+  }
+
+  public void setNeo4jConnectionManager(ONeo4jConnectionManager neo4jConnectionManager) {
+    this.neo4jConnectionManager = neo4jConnectionManager;
+  }
+
+  /** Returns the pause and throttle of the import. */
+  public ONeo4jImporterControl getControl() {
+    return this.control;
+  }
+
+  public OProgressMonitor getProgressMonitor() {
+    return this.progressMonitor;
+  }
+
+  public void setProgressMonitor(OProgressMonitor progressMonitor) {
+    this.progressMonitor = progressMonitor;
+  }
 }
@@ -0,0 +1,112 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pause and throttle of a running import, driven from outside (e.g. through JMX). The import
+ * workers call acquire() between their batches, with the number of records written since the
+ * previous call: it returns at once unless the import is paused, or throttled and ahead of the
+ * allowed rate.
+ */
+public class ONeo4jImporterControl {
+
+  private volatile boolean paused;
+  private volatile double maxRecordsPerSecond; // 0 means unlimited
+  private final AtomicLong nextSlotNanos = new AtomicLong(System.nanoTime());
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  public void pause() {
+    paused = true;
+  }
+
+  public synchronized void resume() {
+    paused = false;
+    this.notifyAll();
+  }
+
+  public double getMaxRecordsPerSecond() {
+    return maxRecordsPerSecond;
+  }
+
+  /**
+   * @param maxRecordsPerSecond written by all the workers together, 0 to remove the limit
+   */
+  public void setMaxRecordsPerSecond(double maxRecordsPerSecond) {
+    if (maxRecordsPerSecond < 0) {
+      throw new IllegalArgumentException("The max records per second cannot be negative");
+    }
+    this.maxRecordsPerSecond = maxRecordsPerSecond;
+    nextSlotNanos.set(System.nanoTime());
+  }
+
+  /** Waits while the import is paused, and for the time slot of the record when throttled. */
+  public void acquire() throws InterruptedException {
+    this.acquire(1);
+  }
+
+  /**
+   * Waits while the import is paused, and when throttled until the passed records fit in the
+   * allowed rate.
+   *
+   * @param records written since the previous call
+   */
+  public void acquire(int records) throws InterruptedException {
+
+    if (paused) {
+      synchronized (this) {
+        while (paused) {
+          this.wait();
+        }
+      }
+    }
+
+    double rate = maxRecordsPerSecond;
+    if (rate <= 0) {
+      return;
+    }
+    // the records take the next free slots, back to the time they took to write at most: slots
+    // not taken while idle are not saved up. The caller waits for the end of its slots.
+    long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    long duration = records * interval;
+    long now = System.nanoTime();
+    long end;
+    while (true) {
+      long next = nextSlotNanos.get();
+      end = Math.max(next, now - duration) + duration;
+      if (nextSlotNanos.compareAndSet(next, end)) {
+        break;
+      }
+    }
+    while (end - System.nanoTime() > 0) {
+      LockSupport.parkNanos(this, end - System.nanoTime());
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events of the import, so that a recording lines up the activity of the
+ * importer with GC, I/O and lock contention:
+ *
+ * <ul>
+ *   <li>BATCH: a committed batch, lasting as long as its commit, with the class of its records
+ *       ("(multiple)" if more than one), their number and their estimated size;
+ *   <li>SCHEMA_CHANGE: a class, property or index created by the import;
+ *   <li>PHASE: an import phase, lasting from its start to its end.
+ * </ul>
+ *
+ * The event types are defined at runtime through jdk.jfr.EventFactory, which this code can only
+ * reach by reflection, and are disabled when the JVM has no flight recorder. An event is created
+ * only while a recording enables its type: otherwise begin() returns an event doing nothing.
+ */
+public class ONeo4jImporterEvents {
+
+  public static final String MULTIPLE_CLASSES = "(multiple)";
+
+  private static final String NAME_PREFIX = "com.orientechnologies.orient.neo4jimporter.";
+  private static final String[] CATEGORY = {"OrientDB", "Neo4j Importer"};
+
+  public static final Type BATCH =
+      new Type(
+          "Batch",
+          "Committed Batch",
+          "Batch of vertices or edges committed to OrientDB, lasting as long as the commit",
+          new Field("className", String.class, "Class", null),
+          new Field("records", long.class, "Records", null),
+          new Field("bytes", long.class, "Estimated Size", "BYTES"));
+
+  public static final Type SCHEMA_CHANGE =
+      new Type(
+          "SchemaChange",
+          "Schema Change",
+          "Class, property or index created in OrientDB",
+          new Field("className", String.class, "Class", null),
+          new Field("change", String.class, "Change", null));
+
+  public static final Type PHASE =
+      new Type(
+          "Phase",
+          "Import Phase",
+          "Phase of the import, lasting from its start to its end",
+          new Field("phase", String.class, "Phase", null));
+
+  /** Event of a type not enabled by any recording. */
+  private static final Event DISABLED = new Event(null, null);
+
+  /** Type of event, defined in the flight recorder when the class is loaded. */
+  public static class Type {
+
+    private final Object eventType; // jdk.jfr.EventType, null without flight recorder
+    private final Object factory; // jdk.jfr.EventFactory
+
+    private Type(String name, String label, String description, Field... fields) {
+      Object factory = null;
+      Object eventType = null;
+      if (Reflection.AVAILABLE) {
+        try {
+          List<Object> annotations = new ArrayList<Object>();
+          annotations.add(Reflection.annotation("jdk.jfr.Name", NAME_PREFIX + name));
+          annotations.add(Reflection.annotation("jdk.jfr.Label", label));
+          annotations.add(Reflection.annotation("jdk.jfr.Description", description));
+          annotations.add(Reflection.annotation("jdk.jfr.Category", CATEGORY));
+          annotations.add(Reflection.annotation("jdk.jfr.StackTrace", false));
+          List<Object> values = new ArrayList<Object>();
+          for (Field field : fields) {
+            values.add(field.toValueDescriptor());
+          }
+          factory = Reflection.create.invoke(null, annotations, values);
+          eventType = Reflection.getEventType.invoke(factory);
+        } catch (Exception e) {
+          factory = null;
+          eventType = null;
+        }
+      }
+      this.factory = factory;
+      this.eventType = eventType;
+    }
+
+    /** Returns whether a running recording enables this type. */
+    public boolean isEnabled() {
+      if (eventType == null) {
+        return false;
+      }
+      try {
+        return (Boolean) Reflection.isEnabled.invoke(eventType);
+      } catch (Exception e) {
+        return false;
+      }
+    }
+
+    /** Starts the timing of an event, committed by Event.commit(). */
+    public Event begin() {
+      if (!this.isEnabled()) {
+        return DISABLED;
+      }
+      try {
+        Object event = Reflection.newEvent.invoke(factory);
+        Reflection.begin.invoke(event);
+        return new Event(this, event);
+      } catch (Exception e) {
+        return DISABLED;
+      }
+    }
+  }
+
+  /** Event being timed. */
+  public static class Event {
+
+    private final Type type;
+    private final Object event; // jdk.jfr.Event
+
+    private Event(Type type, Object event) {
+      this.type = type;
+      this.event = event;
+    }
+
+    /**
+     * Ends the timing and records the event, if its type is still enabled.
+     *
+     * @param values of the fields of the type, in order
+     */
+    public void commit(Object... values) {
+      if (event == null) {
+        return;
+      }
+      try {
+        for (int i = 0; i < values.length; i++) {
+          Reflection.set.invoke(event, i, values[i]);
+        }
+        Reflection.commit.invoke(event);
+      } catch (Exception e) {
+        // the flight recorder is a diagnostic aid, it never stops the import
+      }
+    }
+
+    boolean isRecorded() {
+      return type != null;
+    }
+  }
+
+  private static class Field {
+
+    private final String name;
+    private final Class<?> type;
+    private final String label;
+    private final String dataAmount;
+
+    Field(String name, Class<?> type, String label, String dataAmount) {
+      this.name = name;
+      this.type = type;
+      this.label = label;
+      this.dataAmount = dataAmount;
+    }
+
+    Object toValueDescriptor() throws Exception {
+      List<Object> annotations = new ArrayList<Object>();
+      annotations.add(Reflection.annotation("jdk.jfr.Label", label));
+      if (dataAmount != null) {
+        annotations.add(Reflection.annotation("jdk.jfr.DataAmount", dataAmount));
+      }
+      return Reflection.valueDescriptor.newInstance(type, name, annotations);
+    }
+  }
+
+  /** Entry points of the jdk.jfr API, resolved once. */
+  private static class Reflection {
+
+    private static final boolean AVAILABLE;
+    private static Constructor<?> annotationElement;
+    private static Constructor<?> valueDescriptor;
+    private static Method create;
+    private static Method getEventType;
+    private static Method isEnabled;
+    private static Method newEvent;
+    private static Method begin;
+    private static Method set;
+    private static Method commit;
+
+    static {
+      boolean available;
+      try {
+        Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+        valueDescriptor =
+            Class.forName("jdk.jfr.ValueDescriptor")
+                .getConstructor(Class.class, String.class, List.class);
+        create = eventFactoryClass.getMethod("create", List.class, List.class);
+        getEventType = eventFactoryClass.getMethod("getEventType");
+        isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+        newEvent = eventFactoryClass.getMethod("newEvent");
+        begin = eventClass.getMethod("begin");
+        set = eventClass.getMethod("set", int.class, Object.class);
+        commit = eventClass.getMethod("commit");
+        available = true;
+      } catch (Exception e) {
+        available = false;
+      } catch (LinkageError e) {
+        available = false;
+      }
+      AVAILABLE = available;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object annotation(String annotationClass, Object value) throws Exception {
+      Class<? extends Annotation> type =
+          (Class<? extends Annotation>) Class.forName(annotationClass);
+      return annotationElement.newInstance(type, value);
+    }
+  }
+}
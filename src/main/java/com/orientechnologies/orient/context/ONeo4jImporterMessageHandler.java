@@ -33,7 +33,7 @@ import java.io.PrintStream;
  */
 public class ONeo4jImporterMessageHandler implements OPluginMessageHandler {
 
-  private int level; // affects OutputStreamManager level
+  private volatile int level; // affects OutputStreamManager level
   private OOutputStreamManager outputManager;
 
   public ONeo4jImporterMessageHandler(PrintStream outputStream, int level) {
@@ -74,14 +74,35 @@ public class ONeo4jImporterMessageHandler implements OPluginMessageHandler {
     this.outputManager.setLevel(this.level);
   }
 
+  /**
+   * Returns true if debug messages are printed. Callers on the import hot path check it before
+   * building their messages, so that nothing is allocated when the level filters them out.
+   */
+  public boolean isDebugEnabled() {
+    return isDebugEnabled(this.level);
+  }
+
+  static boolean isDebugEnabled(int level) {
+    return level != OOutputStreamManager.BLANK_LEVEL && level <= OOutputStreamManager.DEBUG_LEVEL;
+  }
+
   @Override
-  public synchronized void debug(Object requester, String message) {
-    this.outputManager.debug(message);
+  public void debug(Object requester, String message) {
+    // filtered messages don't contend for the lock
+    if (this.isDebugEnabled()) {
+      synchronized (this) {
+        this.outputManager.debug(message);
+      }
+    }
   }
 
   @Override
-  public synchronized void debug(Object requester, String format, Object... args) {
-    this.outputManager.debug(format, args);
+  public void debug(Object requester, String format, Object... args) {
+    if (this.isDebugEnabled()) {
+      synchronized (this) {
+        this.outputManager.debug(format, args);
+      }
+    }
   }
 
   @Override
@@ -21,12 +21,91 @@
 package com.orientechnologies.orient.context;
 
 import com.orientechnologies.orient.listener.OStatisticsListener;
+import com.orientechnologies.orient.util.OMetricsRegistry;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-/** Created by frank on 08/11/2016. */
+/**
+ * Created by frank on 08/11/2016.
+ *
+ * <p>The import threads update the metrics of the registry; the public counters below are a
+ * snapshot of them, taken by snapshot() and before notifying the listeners.
+ */
 public class ONeo4jImporterStatistics {
 
+  // counters
+  public static final String NEO4J_NODES = "neo4j.nodes";
+  public static final String NEO4J_NODES_NO_LABEL = "neo4j.nodes.noLabel";
+  public static final String NEO4J_NODES_MULTIPLE_LABELS = "neo4j.nodes.multipleLabels";
+  public static final String ORIENTDB_VERTICES = "orientdb.vertices";
+  public static final String ORIENTDB_VERTICES_UPDATED = "orientdb.vertices.updated"; // by a sync
+  public static final String ORIENTDB_VERTICES_DELETED = "orientdb.vertices.deleted"; // by a sync
+  public static final String ORIENTDB_VERTICES_FAILED = "orientdb.vertices.failed"; // dead letters
+  public static final String NEO4J_RELATIONSHIPS = "neo4j.relationships";
+  public static final String ORIENTDB_EDGES = "orientdb.edges";
+  public static final String ORIENTDB_EDGES_UPDATED = "orientdb.edges.updated"; // by a sync
+  public static final String ORIENTDB_EDGES_DELETED = "orientdb.edges.deleted"; // by a sync
+  public static final String ORIENTDB_EDGES_FAILED = "orientdb.edges.failed"; // dead letters
+  public static final String NEO4J_RETRIES = "neo4j.retries"; // of queries after a failure
+  public static final String NEO4J_CONSTRAINTS = "neo4j.constraints";
+  public static final String NEO4J_UNIQUE_CONSTRAINTS = "neo4j.constraints.unique";
+  public static final String ORIENTDB_CONSTRAINTS = "orientdb.constraints";
+  public static final String ORIENTDB_UNIQUE_CONSTRAINTS = "orientdb.constraints.unique";
+  public static final String ORIENTDB_NOT_UNIQUE_WORKAROUNDS = "orientdb.constraints.notUnique";
+  public static final String NEO4J_INDICES = "neo4j.indices";
+  public static final String NEO4J_NON_CONSTRAINTS_INDICES = "neo4j.indices.nonConstraints";
+  public static final String ORIENTDB_INTERNAL_VERTEX_INDICES = "orientdb.indices.internalVertex";
+  public static final String ORIENTDB_INTERNAL_EDGE_INDICES = "orientdb.indices.internalEdge";
+  public static final String ORIENTDB_INDICES = "orientdb.indices";
+  public static final String NEO4J_TOTAL_CONSTRAINTS = "neo4j.total.constraints";
+  public static final String NEO4J_TOTAL_UNIQUE_CONSTRAINTS = "neo4j.total.constraints.unique";
+  public static final String NEO4J_TOTAL_NODE_PROPERTY_EXISTENCE_CONSTRAINTS =
+      "neo4j.total.constraints.nodePropertyExistence";
+  public static final String NEO4J_TOTAL_REL_PROPERTY_EXISTENCE_CONSTRAINTS =
+      "neo4j.total.constraints.relationshipPropertyExistence";
+
+  // gauges
+  public static final String NEO4J_TOTAL_NODES = "neo4j.total.nodes";
+  public static final String NEO4J_TOTAL_RELATIONSHIPS = "neo4j.total.relationships";
+  // records a sync or a replay has to write
+  public static final String NEO4J_SYNC_NODES = "neo4j.sync.nodes";
+  public static final String NEO4J_SYNC_RELATIONSHIPS = "neo4j.sync.relationships";
+  public static final String NEO4J_TOTAL_INDICES = "neo4j.total.indices";
+  public static final String ORIENTDB_VERTEX_CLASSES = "orientdb.classes.vertex";
+  public static final String ORIENTDB_EDGE_CLASSES = "orientdb.classes.edge";
+  public static final String ORIENTDB_RECORDS_SIZE = "orientdb.records.bytes";
+  public static final String ORIENTDB_RECORDS_SIZE_BEFORE = "orientdb.records.bytesBefore"; // run
+  // last value written by any worker: the batch committed last, the depth of the shared queues
+  public static final String BATCH_RECORDS = "batch.records";
+  public static final String BATCH_TARGET_BYTES = "batch.targetBytes";
+  public static final String PIPELINE_QUEUE_CAPACITY = "pipeline.capacity";
+  public static final String PIPELINE_FETCHED = "pipeline.fetched";
+  public static final String PIPELINE_CONVERTED = "pipeline.converted";
+  // one gauge for each worker, named after the prefix and the index of the worker
+  public static final String NEO4J_NODES_LAST_COMMITTED_ID = "neo4j.nodes.lastCommittedId";
+  public static final String NEO4J_RELATIONSHIPS_LAST_COMMITTED_ID =
+      "neo4j.relationships.lastCommittedId";
+
+  // timers of the stages of the import of each node and relationship, in the order they run
+  public static final String NEO4J_NODES_FETCH = "neo4j.nodes.fetch";
+  public static final String NEO4J_NODES_CONVERT = "neo4j.nodes.convert";
+  public static final String ORIENTDB_VERTICES_SAVE = "orientdb.vertices.save";
+  public static final String ORIENTDB_VERTICES_COMMIT = "orientdb.vertices.commit"; // per batch
+  public static final String NEO4J_RELATIONSHIPS_FETCH = "neo4j.relationships.fetch";
+  public static final String NEO4J_RELATIONSHIPS_CONVERT = "neo4j.relationships.convert";
+  public static final String ORIENTDB_EDGES_LOOKUP = "orientdb.edges.lookup"; // of the endpoints
+  public static final String ORIENTDB_EDGES_SAVE = "orientdb.edges.save";
+  public static final String ORIENTDB_EDGES_COMMIT = "orientdb.edges.commit"; // per batch
+
+  private final OMetricsRegistry metrics = new OMetricsRegistry();
+
+  // durations of the phases in the order they ran, the running one excluded
+  private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+  private volatile long phaseStartMillis;
+  private ONeo4jImporterEvents.Event phaseEvent;
+
   public volatile String importingElements = "nothing";
 
   public volatile double neo4jNodeCounter = 0;
@@ -35,6 +114,10 @@ public class ONeo4jImporterStatistics {
   public volatile double orientDBImportedVerticesCounter = 0;
   public volatile double neo4jRelCounter = 0;
   public volatile double orientDBImportedEdgesCounter = 0;
+  public volatile double orientDBUpdatedVerticesCounter = 0; // by a sync
+  public volatile double orientDBDeletedVerticesCounter = 0;
+  public volatile double orientDBUpdatedEdgesCounter = 0;
+  public volatile double orientDBDeletedEdgesCounter = 0;
   public volatile double neo4jConstraintsCounter = 0;
   public volatile double neo4jUniqueConstraintsCounter = 0;
   public volatile double orientDBImportedConstraintsCounter = 0;
@@ -47,6 +130,8 @@ public class ONeo4jImporterStatistics {
   public volatile double orientDBImportedIndicesCounter = 0;
   public volatile double neo4jTotalNodes = 0;
   public volatile double neo4jTotalRels = 0;
+  public volatile double neo4jSyncNodes = 0;
+  public volatile double neo4jSyncRels = 0;
   public volatile double neo4jTotalUniqueConstraints = 0;
   public volatile double neo4jTotalConstraints = 0;
   public volatile double neo4jTotalNodePropertyExistenceConstraints = 0;
@@ -61,6 +146,22 @@ public class ONeo4jImporterStatistics {
   public volatile long internalEdgeIndicesStartTime = 0;
   public volatile double orientDBEdgeClassesCount = 0;
   public volatile long internalEdgeIndicesStopTime = 0;
+  public volatile double orientDBRecordsSize = 0; // bytes of the imported vertices and edges
+  public volatile double orientDBRecordsSizeBefore = 0; // the same, at the start of the run
+
+  // last decision of the adaptive batch sizing, by the worker which committed last
+  public volatile double batchRecords = 0;
+  public volatile double batchTargetBytes = 0;
+  public volatile String batchSizing = "";
+
+  // records waiting between the stages of the import pipeline, capacity 0 when not running
+  public volatile double pipelineQueueCapacity = 0;
+  public volatile double fetchedQueueDepth = 0;
+  public volatile double convertedQueueDepth = 0;
+
+  // set by the stall watchdog while no progress is made, 0 and null otherwise
+  public volatile long stalledSinceMillis = 0;
+  public volatile String stallDiagnostics;
 
   // Listeners
   private volatile List<OStatisticsListener> listeners;
@@ -78,8 +179,106 @@ public class ONeo4jImporterStatistics {
   }
 
   public void notifyListeners() {
+    this.snapshot();
     for (OStatisticsListener listener : this.listeners) {
       listener.updateOnEvent(this);
     }
   }
+
+  public OMetricsRegistry getMetrics() {
+    return metrics;
+  }
+
+  public void increment(String counter) {
+    metrics.counter(counter).increment();
+  }
+
+  public void add(String counter, long delta) {
+    metrics.counter(counter).add(delta);
+  }
+
+  public void set(String gauge, double value) {
+    metrics.gauge(gauge).set(value);
+  }
+
+  public double get(String gauge) {
+    return metrics.gauge(gauge).get();
+  }
+
+  /**
+   * Marks the start of an import phase.
+   *
+   * @param elements the elements the phase imports, see importingElements
+   */
+  public synchronized void startPhase(String elements) {
+    importingElements = elements;
+    phaseStartMillis = System.currentTimeMillis();
+    phaseEvent = ONeo4jImporterEvents.PHASE.begin();
+  }
+
+  /** Marks the end of the running phase, recording its duration. */
+  public synchronized void endPhase() {
+    phaseMillis.put(importingElements, System.currentTimeMillis() - phaseStartMillis);
+    if (phaseEvent != null) {
+      phaseEvent.commit(importingElements);
+      phaseEvent = null;
+    }
+    importingElements = "nothing";
+  }
+
+  /** Returns the duration of each phase so far, by elements, including the running one. */
+  public synchronized Map<String, Long> getPhaseDurations() {
+    Map<String, Long> durations = new LinkedHashMap<String, Long>(phaseMillis);
+    if (!"nothing".equals(importingElements)) {
+      durations.put(importingElements, System.currentTimeMillis() - phaseStartMillis);
+    }
+    return durations;
+  }
+
+  /** Copies the current values of the metrics to the public fields, and returns this. */
+  public ONeo4jImporterStatistics snapshot() {
+    neo4jNodeCounter = metrics.counter(NEO4J_NODES).get();
+    neo4jNodeNoLabelCounter = metrics.counter(NEO4J_NODES_NO_LABEL).get();
+    neo4jNodeMultipleLabelsCounter = metrics.counter(NEO4J_NODES_MULTIPLE_LABELS).get();
+    orientDBImportedVerticesCounter = metrics.counter(ORIENTDB_VERTICES).get();
+    neo4jRelCounter = metrics.counter(NEO4J_RELATIONSHIPS).get();
+    orientDBImportedEdgesCounter = metrics.counter(ORIENTDB_EDGES).get();
+    orientDBUpdatedVerticesCounter = metrics.counter(ORIENTDB_VERTICES_UPDATED).get();
+    orientDBDeletedVerticesCounter = metrics.counter(ORIENTDB_VERTICES_DELETED).get();
+    orientDBUpdatedEdgesCounter = metrics.counter(ORIENTDB_EDGES_UPDATED).get();
+    orientDBDeletedEdgesCounter = metrics.counter(ORIENTDB_EDGES_DELETED).get();
+    neo4jConstraintsCounter = metrics.counter(NEO4J_CONSTRAINTS).get();
+    neo4jUniqueConstraintsCounter = metrics.counter(NEO4J_UNIQUE_CONSTRAINTS).get();
+    orientDBImportedConstraintsCounter = metrics.counter(ORIENTDB_CONSTRAINTS).get();
+    orientDBImportedUniqueConstraintsCounter = metrics.counter(ORIENTDB_UNIQUE_CONSTRAINTS).get();
+    orientDBImportedNotUniqueWorkaroundCounter =
+        metrics.counter(ORIENTDB_NOT_UNIQUE_WORKAROUNDS).get();
+    neo4jIndicesCounter = metrics.counter(NEO4J_INDICES).get();
+    neo4jNonConstraintsIndicesCounter = metrics.counter(NEO4J_NON_CONSTRAINTS_INDICES).get();
+    neo4jInternalVertexIndicesCounter = metrics.counter(ORIENTDB_INTERNAL_VERTEX_INDICES).get();
+    neo4jInternalEdgeIndicesCounter = metrics.counter(ORIENTDB_INTERNAL_EDGE_INDICES).get();
+    orientDBImportedIndicesCounter = metrics.counter(ORIENTDB_INDICES).get();
+    neo4jTotalConstraints = metrics.counter(NEO4J_TOTAL_CONSTRAINTS).get();
+    neo4jTotalUniqueConstraints = metrics.counter(NEO4J_TOTAL_UNIQUE_CONSTRAINTS).get();
+    neo4jTotalNodePropertyExistenceConstraints =
+        metrics.counter(NEO4J_TOTAL_NODE_PROPERTY_EXISTENCE_CONSTRAINTS).get();
+    neo4jTotalRelPropertyExistenceConstraints =
+        metrics.counter(NEO4J_TOTAL_REL_PROPERTY_EXISTENCE_CONSTRAINTS).get();
+
+    neo4jTotalNodes = metrics.gauge(NEO4J_TOTAL_NODES).get();
+    neo4jTotalRels = metrics.gauge(NEO4J_TOTAL_RELATIONSHIPS).get();
+    neo4jSyncNodes = metrics.gauge(NEO4J_SYNC_NODES).get();
+    neo4jSyncRels = metrics.gauge(NEO4J_SYNC_RELATIONSHIPS).get();
+    neo4jTotalIndices = metrics.gauge(NEO4J_TOTAL_INDICES).get();
+    orientDBVerticesClassCount = metrics.gauge(ORIENTDB_VERTEX_CLASSES).get();
+    orientDBEdgeClassesCount = metrics.gauge(ORIENTDB_EDGE_CLASSES).get();
+    orientDBRecordsSize = metrics.gauge(ORIENTDB_RECORDS_SIZE).get();
+    orientDBRecordsSizeBefore = metrics.gauge(ORIENTDB_RECORDS_SIZE_BEFORE).get();
+    batchRecords = metrics.gauge(BATCH_RECORDS).get();
+    batchTargetBytes = metrics.gauge(BATCH_TARGET_BYTES).get();
+    pipelineQueueCapacity = metrics.gauge(PIPELINE_QUEUE_CAPACITY).get();
+    fetchedQueueDepth = metrics.gauge(PIPELINE_FETCHED).get();
+    convertedQueueDepth = metrics.gauge(PIPELINE_CONVERTED).get();
+    return this;
+  }
 }
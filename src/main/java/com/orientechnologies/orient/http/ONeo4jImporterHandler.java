@@ -22,6 +22,7 @@ package com.orientechnologies.orient.http;
 
 import com.orientechnologies.orient.connection.ONeo4jConnectionManager;
 import com.orientechnologies.orient.connection.OSourceNeo4jInfo;
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.server.OServer;
 import java.util.ArrayList;
@@ -93,4 +94,15 @@ public class ONeo4jImporterHandler {
     status.field("jobs", jobs);
     return status;
   }
+
+  /**
+   * Metrics of the running job, or of the last one, in Prometheus text format.
+   *
+   * @return String
+   */
+  public String metrics() {
+    ONeo4jImporterJob job = currentJob;
+    boolean running = job != null && job.status == ONeo4jImporterJob.Status.RUNNING;
+    return ONeo4jImporterMetricsExporter.export(ONeo4jImporterContext.getInstance(), running);
+  }
 }
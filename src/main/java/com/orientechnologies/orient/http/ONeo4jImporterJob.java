@@ -21,14 +21,19 @@
 package com.orientechnologies.orient.http;
 
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.context.ONeo4jImporterAsyncMessageHandler;
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
 import com.orientechnologies.orient.context.ONeo4jImporterMessageHandler;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
 import com.orientechnologies.orient.core.db.OrientDB;
 import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.listener.OProgressMonitor;
 import com.orientechnologies.orient.neo4jimporter.*;
 import com.orientechnologies.orient.output.OPluginMessageHandler;
 import com.orientechnologies.orient.server.OServer;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Date;
 
 /** Created by gabriele on 27/02/17. */
 public class ONeo4jImporterJob implements Runnable {
@@ -37,9 +42,12 @@ public class ONeo4jImporterJob implements Runnable {
   private ONeo4ImporterListener listener;
   public Status status;
 
+  private static final int MAX_LOG_BYTES = 1024 * 1024;
+
   public PrintStream stream;
   private ByteArrayOutputStream baos;
-  private OPluginMessageHandler messageHandler;
+  private OPluginMessageHandler printer; // writes on the stream, from the log thread only
+  private ONeo4jImporterAsyncMessageHandler messageHandler;
 
   private OServer currentServerInstance;
 
@@ -48,7 +56,7 @@ public class ONeo4jImporterJob implements Runnable {
     this.cfg = cfg;
     this.listener = listener;
 
-    this.baos = new ByteArrayOutputStream();
+    this.baos = new BoundedLogBuffer(MAX_LOG_BYTES);
     this.stream = new PrintStream(baos);
 
     this.currentServerInstance = currentServerInstance;
@@ -72,7 +80,6 @@ public class ONeo4jImporterJob implements Runnable {
     }
 
     status = Status.RUNNING;
-    this.messageHandler = new ONeo4jImporterMessageHandler(this.stream, logLevel);
 
     ONeo4jImporterSettings settings =
         new ONeo4jImporterSettings(
@@ -83,6 +90,68 @@ public class ONeo4jImporterJob implements Runnable {
             odbProtocol,
             overrideDB,
             indexesOnRelationships);
+    if (cfg.containsField("nodeIdMapMemoryBudgetMB")) {
+      settings.setNodeIdMapMemoryBudgetMB(
+          Long.parseLong(cfg.field("nodeIdMapMemoryBudgetMB").toString()));
+    }
+    if (cfg.containsField("nodeIdMapDirectory")) {
+      settings.setNodeIdMapDirectory((String) cfg.field("nodeIdMapDirectory"));
+    }
+    if (cfg.containsField("nodeImportWorkers")) {
+      settings.setNodeImportWorkers(Integer.parseInt(cfg.field("nodeImportWorkers").toString()));
+    }
+    if (cfg.containsField("edgeImportWorkers")) {
+      settings.setEdgeImportWorkers(Integer.parseInt(cfg.field("edgeImportWorkers").toString()));
+    }
+    if (cfg.containsField("typedProperties")) {
+      settings.setTypedProperties(Boolean.parseBoolean(cfg.field("typedProperties").toString()));
+    }
+    if (cfg.containsField("pipelineQueueCapacity")) {
+      settings.setPipelineQueueCapacity(
+          Integer.parseInt(cfg.field("pipelineQueueCapacity").toString()));
+    }
+    if (cfg.containsField("convertWorkers")) {
+      settings.setConvertWorkers(Integer.parseInt(cfg.field("convertWorkers").toString()));
+    }
+    if (cfg.containsField("transactionality")) {
+      settings.setTransactionality(
+          OrientTransactionality.parse(cfg.field("transactionality").toString()));
+    }
+    if (cfg.containsField("logOverflowPolicy")) {
+      settings.setLogOverflowPolicy(
+          ONeo4jImporterAsyncMessageHandler.OverflowPolicy.parse(
+              cfg.field("logOverflowPolicy").toString()));
+    }
+    if (cfg.containsField("stallTimeoutSeconds")) {
+      settings.setStallTimeoutSeconds(Long.parseLong(cfg.field("stallTimeoutSeconds").toString()));
+    }
+    if (cfg.containsField("diagnosticsDirectory")) {
+      settings.setDiagnosticsDirectory((String) cfg.field("diagnosticsDirectory"));
+    }
+    if (cfg.containsField("resume")) {
+      settings.setResume(Boolean.parseBoolean(cfg.field("resume").toString()));
+    }
+    if (cfg.containsField("incremental")) {
+      settings.setIncremental(Boolean.parseBoolean(cfg.field("incremental").toString()));
+    }
+    if (cfg.containsField("changedSinceProperty")) {
+      settings.setChangedSinceProperty((String) cfg.field("changedSinceProperty"));
+    }
+    if (cfg.containsField("neo4jMaxRetries")) {
+      settings.setNeo4jMaxRetries(Integer.parseInt(cfg.field("neo4jMaxRetries").toString()));
+    }
+    if (cfg.containsField("deadLetterFile")) {
+      settings.setDeadLetterFile((String) cfg.field("deadLetterFile"));
+    }
+    if (cfg.containsField("replayFile")) {
+      settings.setReplayFile((String) cfg.field("replayFile"));
+    }
+
+    // the import threads never wait for the clients polling the job status
+    this.printer = new ONeo4jImporterMessageHandler(this.stream, logLevel);
+    this.messageHandler =
+        new ONeo4jImporterAsyncMessageHandler(this.printer, settings.getLogOverflowPolicy());
+
     final ONeo4jImporterPlugin neo4jImporterPlugin = new ONeo4jImporterPlugin();
 
     try {
@@ -96,6 +165,8 @@ public class ONeo4jImporterJob implements Runnable {
           settings, this.messageHandler, databaseDirectory, orientDBInstance);
     } catch (Exception e) {
       e.printStackTrace();
+    } finally {
+      this.messageHandler.close();
     }
 
     synchronized (listener) {
@@ -123,11 +194,26 @@ public class ONeo4jImporterJob implements Runnable {
       status.field("status", this.status);
 
       String lastBatchLog = "";
-      if (this.messageHandler != null) {
+      if (this.printer != null) {
         lastBatchLog = extractBatchLog();
       }
       status.field("log", lastBatchLog);
 
+      ONeo4jImporterContext context = ONeo4jImporterContext.getInstance();
+      if (this.status != null && context != null) {
+        ONeo4jImporterStatistics statistics = context.getStatistics();
+        status.field("metrics", statistics.getMetrics().snapshot());
+        status.field("stalled", statistics.stalledSinceMillis != 0);
+        if (statistics.stalledSinceMillis != 0) {
+          status.field("stalledSince", new Date(statistics.stalledSinceMillis));
+          status.field("stallDiagnostics", statistics.stallDiagnostics);
+        }
+        OProgressMonitor progressMonitor = context.getProgressMonitor();
+        if (progressMonitor != null && progressMonitor.getProgress() != null) {
+          status.field("progress", progressMonitor.getProgress().toMap());
+        }
+      }
+
       if (this.status == Status.FINISHED) {
         listener.notifyAll();
       }
@@ -139,7 +225,7 @@ public class ONeo4jImporterJob implements Runnable {
 
     String lastBatchLog = "Current status not correctly loaded.";
 
-    synchronized (this.messageHandler) {
+    synchronized (this.printer) {
 
       // filling the last log batch
       int baosInitSize = baos.size();
@@ -158,6 +244,39 @@ public class ONeo4jImporterJob implements Runnable {
     return lastBatchLog;
   }
 
+  /**
+   * Buffer of the log not yet read through the job status: if nobody reads it, the oldest half is
+   * discarded whenever it exceeds its max size.
+   */
+  private static class BoundedLogBuffer extends ByteArrayOutputStream {
+
+    private final int maxSize;
+
+    BoundedLogBuffer(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      super.write(b);
+      this.trim();
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      super.write(b, off, len);
+      this.trim();
+    }
+
+    private void trim() {
+      if (count > maxSize) {
+        int keep = maxSize / 2;
+        System.arraycopy(buf, count - keep, buf, 0, keep);
+        count = keep;
+      }
+    }
+  }
+
   public enum Status {
     STARTED,
     RUNNING,
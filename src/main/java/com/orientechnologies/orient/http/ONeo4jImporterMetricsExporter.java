@@ -0,0 +1,233 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.http;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.listener.OPhaseProgress;
+import com.orientechnologies.orient.listener.OProgressMonitor;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the importer metrics in the Prometheus text exposition format (version 0.0.4): counters,
+ * gauges, stage timers as summaries, progress and rates of the current phase, phase durations and
+ * heap headroom. Metric names are the registry names in snake case, prefixed by neo4j_importer_,
+ * with a worker label for the gauges of each worker. It reads the live metrics without locking the
+ * importer, so it can be scraped every few seconds.
+ */
+public class ONeo4jImporterMetricsExporter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final String PREFIX = "neo4j_importer_";
+
+  private final StringBuilder output = new StringBuilder(8192);
+
+  /**
+   * @param context of the running or last job, null if no job has run
+   * @param running true while the job is running
+   */
+  public static String export(ONeo4jImporterContext context, boolean running) {
+    ONeo4jImporterMetricsExporter exporter = new ONeo4jImporterMetricsExporter();
+    exporter.gauge("job_running", "1 while an import job is running.", running ? 1 : 0);
+    if (context != null) {
+      exporter.writeJob(context);
+    }
+    exporter.writeHeap();
+    return exporter.output.toString();
+  }
+
+  private void writeJob(ONeo4jImporterContext context) {
+
+    ONeo4jImporterStatistics statistics = context.getStatistics();
+    OMetricsRegistry metrics = statistics.getMetrics();
+
+    this.gauge("paused", "1 while the job is paused.", context.getControl().isPaused() ? 1 : 0);
+    this.gauge(
+        "max_records_per_second",
+        "Throttle of the job, 0 when unlimited.",
+        context.getControl().getMaxRecordsPerSecond());
+    this.gauge(
+        "stalled",
+        "1 while the stall watchdog finds no progress in the running phase.",
+        statistics.stalledSinceMillis != 0 ? 1 : 0);
+
+    for (Map.Entry<String, OMetricsRegistry.Counter> entry : metrics.getCounters().entrySet()) {
+      String name = PREFIX + metricName(entry.getKey()) + "_total";
+      this.header(name, "counter", entry.getKey());
+      this.sample(name, null, entry.getValue().get());
+    }
+    this.writeGauges(metrics);
+    this.writeTimers(metrics);
+
+    String name = PREFIX + "phase_duration_seconds";
+    this.header(name, "gauge", "Duration of each import phase, so far for the running one.");
+    for (Map.Entry<String, Long> entry : statistics.getPhaseDurations().entrySet()) {
+      this.sample(name, phaseLabel(entry.getKey()), entry.getValue() / 1000.0);
+    }
+
+    OProgressMonitor progressMonitor = context.getProgressMonitor();
+    OPhaseProgress progress = progressMonitor == null ? null : progressMonitor.getProgress();
+    if (progress != null) {
+      String phase = phaseLabel(progress.getPhase());
+      this.header(PREFIX + "phase_done", "gauge", "Elements done in the current phase.");
+      this.sample(PREFIX + "phase_done", phase, progress.getDone());
+      this.header(PREFIX + "phase_expected", "gauge", "Elements to do in the current phase.");
+      this.sample(PREFIX + "phase_expected", phase, progress.getTotal());
+      this.header(PREFIX + "phase_rate", "gauge", "Elements per second, last seconds.");
+      this.sample(PREFIX + "phase_rate", phase, progress.getCurrentRate());
+      this.header(PREFIX + "phase_moving_rate", "gauge", "Elements per second, moving average.");
+      this.sample(PREFIX + "phase_moving_rate", phase, progress.getMovingRate());
+      this.header(PREFIX + "phase_eta_seconds", "gauge", "Time left, -1 if unknown.");
+      long eta = progress.getEtaMillis();
+      this.sample(PREFIX + "phase_eta_seconds", phase, eta < 0 ? -1 : eta / 1000.0);
+    }
+  }
+
+  /**
+   * The gauges of each worker, named after it as neo4j.nodes.lastCommittedId.0, are written as a
+   * single family with a worker label.
+   */
+  private void writeGauges(OMetricsRegistry metrics) {
+
+    Map<String, Map<String, Double>> families = new LinkedHashMap<String, Map<String, Double>>();
+    for (Map.Entry<String, OMetricsRegistry.Gauge> entry : metrics.getGauges().entrySet()) {
+      String family = entry.getKey();
+      String labels = null;
+      int dot = family.lastIndexOf('.');
+      if (dot > 0 && isNumber(family.substring(dot + 1))) {
+        labels = "worker=\"" + family.substring(dot + 1) + "\"";
+        family = family.substring(0, dot);
+      }
+      Map<String, Double> samples = families.get(family);
+      if (samples == null) {
+        samples = new LinkedHashMap<String, Double>();
+        families.put(family, samples);
+      }
+      samples.put(labels, entry.getValue().get());
+    }
+
+    for (Map.Entry<String, Map<String, Double>> family : families.entrySet()) {
+      String name = PREFIX + metricName(family.getKey());
+      this.header(name, "gauge", family.getKey());
+      for (Map.Entry<String, Double> sample : family.getValue().entrySet()) {
+        this.sample(name, sample.getKey(), sample.getValue());
+      }
+    }
+  }
+
+  /** Each timer is a summary, their max values are a single gauge family with a timer label. */
+  private void writeTimers(OMetricsRegistry metrics) {
+
+    Map<String, OMetricsRegistry.Timer> timers = metrics.getTimers();
+    for (Map.Entry<String, OMetricsRegistry.Timer> entry : timers.entrySet()) {
+      OMetricsRegistry.Timer timer = entry.getValue();
+      String name = PREFIX + metricName(entry.getKey()) + "_seconds";
+      this.header(name, "summary", entry.getKey());
+      this.sample(name, "quantile=\"0.5\"", seconds(timer.getNanosAtPercentile(50)));
+      this.sample(name, "quantile=\"0.99\"", seconds(timer.getNanosAtPercentile(99)));
+      this.sample(name + "_sum", null, seconds(timer.getTotalNanos()));
+      this.sample(name + "_count", null, timer.getCount());
+    }
+
+    if (timers.isEmpty()) {
+      return;
+    }
+    String name = PREFIX + "timer_max_seconds";
+    this.header(name, "gauge", "Longest time recorded by each timer.");
+    for (Map.Entry<String, OMetricsRegistry.Timer> entry : timers.entrySet()) {
+      this.sample(
+          name, "timer=\"" + entry.getKey() + "\"", seconds(entry.getValue().getMaxNanos()));
+    }
+  }
+
+  private void writeHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    long max = runtime.maxMemory();
+    long used = runtime.totalMemory() - runtime.freeMemory();
+    this.gauge("jvm_heap_used_bytes", "Heap in use.", used);
+    this.gauge("jvm_heap_max_bytes", "Max heap.", max);
+    this.gauge("jvm_heap_headroom_bytes", "Heap that can still be allocated.", max - used);
+  }
+
+  private void gauge(String name, String help, double value) {
+    this.header(PREFIX + name, "gauge", help);
+    this.sample(PREFIX + name, null, value);
+  }
+
+  private void header(String name, String type, String help) {
+    output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private void sample(String name, String labels, double value) {
+    output.append(name);
+    if (labels != null) {
+      output.append('{').append(labels).append('}');
+    }
+    output.append(' ');
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      output.append((long) value);
+    } else {
+      output.append(value);
+    }
+    output.append('\n');
+  }
+
+  private static String phaseLabel(String phase) {
+    return "phase=\"" + phase.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  private static boolean isNumber(String text) {
+    if (text.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (!Character.isDigit(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / 1e9;
+  }
+
+  /** Converts a registry name, as neo4j.nodes.noLabel, to a metric name: neo4j_nodes_no_label. */
+  static String metricName(String name) {
+    StringBuilder metricName = new StringBuilder(name.length() + 8);
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isUpperCase(c)) {
+        metricName.append('_').append(Character.toLowerCase(c));
+      } else if (Character.isLetterOrDigit(c) && c < 128) {
+        metricName.append(c);
+      } else {
+        metricName.append('_');
+      }
+    }
+    return metricName.toString().toLowerCase(Locale.ENGLISH);
+  }
+}
@@ -62,6 +62,13 @@ public class OServerCommandNeo4jImporter extends OServerCommandAuthenticatedServ
           OHttpUtils.CONTENT_JSON,
           status.toJSON("prettyPrint"),
           null);
+    } else if ("metrics".equalsIgnoreCase(parts[1])) {
+      iResponse.send(
+          OHttpUtils.STATUS_OK_CODE,
+          "OK",
+          ONeo4jImporterMetricsExporter.CONTENT_TYPE,
+          handler.metrics(),
+          null);
     } else {
       throw new IllegalArgumentException("");
     }
@@ -0,0 +1,156 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.listener;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Progress of an import phase, updated with the number of elements done at each tick of the
+ * progress monitor. The current rate is measured over a sliding window of the last samples, and
+ * smoothed into an exponentially-weighted moving rate (like the load average, with a time constant
+ * of a minute), which gives a stable estimate of the time left.
+ */
+public class OPhaseProgress {
+
+  public static final long WINDOW_MILLIS = 10000;
+  public static final long EWMA_TIME_CONSTANT_MILLIS = 60000;
+
+  private final String phase;
+  private final long startMillis;
+  private final Deque<Sample> window = new ArrayDeque<Sample>();
+
+  private double done;
+  private double total;
+  private long lastMillis;
+  private double currentRate; // elements per second
+  private double movingRate; // elements per second
+  private boolean rated;
+
+  /**
+   * @param phase
+   * @param startMillis
+   * @param startDone elements already done when the phase starts, as the ones imported before a
+   *     resume: they are not counted in the rates
+   */
+  public OPhaseProgress(String phase, long startMillis, double startDone) {
+    this.phase = phase;
+    this.startMillis = startMillis;
+    this.lastMillis = startMillis;
+    this.done = startDone;
+    this.window.addLast(new Sample(startMillis, startDone));
+  }
+
+  /**
+   * @param nowMillis
+   * @param done elements done in the phase, including the ones done when it started
+   * @param total elements to do in the phase, 0 if unknown
+   */
+  public synchronized void update(long nowMillis, double done, double total) {
+
+    long elapsed = nowMillis - lastMillis;
+    if (elapsed > 0) {
+      double instantRate = (done - this.done) * 1000 / elapsed;
+      if (rated) {
+        double alpha = 1 - Math.exp(-(double) elapsed / EWMA_TIME_CONSTANT_MILLIS);
+        movingRate += alpha * (instantRate - movingRate);
+      } else {
+        movingRate = instantRate;
+        rated = true;
+      }
+
+      window.addLast(new Sample(nowMillis, done));
+      while (window.size() > 2 && nowMillis - window.peekFirst().millis > WINDOW_MILLIS) {
+        window.removeFirst();
+      }
+      Sample oldest = window.peekFirst();
+      currentRate = (done - oldest.done) * 1000 / (nowMillis - oldest.millis);
+      lastMillis = nowMillis;
+    }
+    this.done = done;
+    this.total = total;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  public synchronized double getDone() {
+    return done;
+  }
+
+  public synchronized double getTotal() {
+    return total;
+  }
+
+  /** Returns the percentage done, -1 if the total is unknown. */
+  public synchronized double getPercentage() {
+    return total > 0 ? Math.min(100, 100 * done / total) : -1;
+  }
+
+  /** Returns the elements per second over the sliding window. */
+  public synchronized double getCurrentRate() {
+    return currentRate;
+  }
+
+  /** Returns the exponentially-weighted moving average of the elements per second. */
+  public synchronized double getMovingRate() {
+    return movingRate;
+  }
+
+  public synchronized long getElapsedMillis() {
+    return lastMillis - startMillis;
+  }
+
+  /** Returns the estimated time to complete the phase at the moving rate, -1 if unknown. */
+  public synchronized long getEtaMillis() {
+    if (total <= 0 || movingRate <= 0) {
+      return -1;
+    }
+    return (long) (Math.max(0, total - done) * 1000 / movingRate);
+  }
+
+  public synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("phase", phase);
+    map.put("done", (long) done);
+    map.put("total", (long) total);
+    map.put("percentage", this.getPercentage());
+    map.put("currentRate", currentRate);
+    map.put("movingRate", movingRate);
+    map.put("elapsedMillis", this.getElapsedMillis());
+    map.put("etaMillis", this.getEtaMillis());
+    return map;
+  }
+
+  private static class Sample {
+
+    private final long millis;
+    private final double done;
+
+    Sample(long millis, double done) {
+      this.millis = millis;
+      this.done = done;
+    }
+  }
+}
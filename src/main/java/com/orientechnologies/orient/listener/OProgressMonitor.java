@@ -22,13 +22,20 @@ package com.orientechnologies.orient.listener;
 
 import com.orientechnologies.orient.context.ONeo4jImporterContext;
 import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.util.OFunctionsHandler;
 import java.text.DecimalFormat;
 
-/** Created by gabriele on 16/03/17. */
+/**
+ * Created by gabriele on 16/03/17.
+ *
+ * <p>Besides printing the progress, keeps the rates and the time left of the current phase, see
+ * getProgress().
+ */
 public class OProgressMonitor implements OStatisticsListener {
 
   private DecimalFormat df;
   private String format;
+  private volatile OPhaseProgress progress; // of the current or last phase
 
   public OProgressMonitor() {
     this.df = new DecimalFormat("#");
@@ -47,12 +54,27 @@ public class OProgressMonitor implements OStatisticsListener {
     String message = null;
 
     switch (statistics.importingElements) {
+      case "classes":
+        message = this.updateCreatedClasses(statistics);
+        break;
       case "vertices":
         message = this.updateImportedVerticesLog(statistics);
         break;
       case "edges":
         message = this.updateImportedEdgesLog(statistics);
         break;
+      case "sync-vertices":
+        message = this.updateSyncedVerticesLog(statistics, "sync-vertices", "Synced");
+        break;
+      case "sync-edges":
+        message = this.updateSyncedEdgesLog(statistics, "sync-edges", "Synced");
+        break;
+      case "replay-vertices":
+        message = this.updateSyncedVerticesLog(statistics, "replay-vertices", "Replayed");
+        break;
+      case "replay-edges":
+        message = this.updateSyncedEdgesLog(statistics, "replay-edges", "Replayed");
+        break;
       case "indices-on-vertices":
         message = this.updateImportedIndicesOnVertices(statistics);
         break;
@@ -71,9 +93,25 @@ public class OProgressMonitor implements OStatisticsListener {
     return message;
   }
 
+  private String updateCreatedClasses(ONeo4jImporterStatistics statistics) {
+
+    String keepLogString =
+        "Created OrientDB Classes: "
+            + df.format(statistics.orientDBVerticesClassCount)
+            + " vertex classes, "
+            + df.format(statistics.orientDBEdgeClassesCount)
+            + " edge classes";
+    String message = String.format(format, keepLogString);
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, message);
+    return keepLogString;
+  }
+
   private String updateImportedVerticesLog(ONeo4jImporterStatistics statistics) {
 
     String keepLogString;
+    OPhaseProgress progress =
+        this.track(
+            "vertices", statistics.orientDBImportedVerticesCounter, statistics.neo4jTotalNodes);
 
     if (statistics.orientDBImportedVerticesCounter == 0) {
       keepLogString =
@@ -90,16 +128,141 @@ public class OProgressMonitor implements OStatisticsListener {
               + df.format(statistics.orientDBImportedVerticesCounter)
               + " ("
               + df.format(value)
-              + "% done)";
+              + "% done)"
+              + this.rateLog(progress)
+              + this.batchSizingLog(statistics)
+              + this.pipelineLog(statistics);
       String message = String.format(format, keepLogString);
       ONeo4jImporterContext.getInstance().getMessageHandler().info(this, message);
     }
     return keepLogString;
   }
 
+  /**
+   * The nodes written by a sync, out of the new, changed and missing ones, after the vertices of
+   * the nodes deleted from Neo4j have been deleted. Or the ones written by a replay, out of the
+   * dead-lettered ones.
+   */
+  private String updateSyncedVerticesLog(
+      ONeo4jImporterStatistics statistics, String phase, String verb) {
+
+    OPhaseProgress progress =
+        this.track(phase, statistics.neo4jNodeCounter, statistics.neo4jSyncNodes);
+    String keepLogString =
+        verb
+            + " OrientDB Vertices: "
+            + df.format(statistics.neo4jNodeCounter)
+            + " of "
+            + df.format(statistics.neo4jSyncNodes)
+            + " Nodes written"
+            + this.percentageLog(statistics.neo4jNodeCounter, statistics.neo4jSyncNodes)
+            + ", "
+            + df.format(statistics.orientDBUpdatedVerticesCounter)
+            + " updated, "
+            + df.format(statistics.orientDBDeletedVerticesCounter)
+            + " deleted"
+            + this.rateLog(progress)
+            + this.batchSizingLog(statistics)
+            + this.pipelineLog(statistics);
+    String message = String.format(format, keepLogString);
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, message);
+    return keepLogString;
+  }
+
+  /**
+   * The relationships written by a sync, out of the new, changed and missing ones, after the edges
+   * of the relationships deleted from Neo4j have been deleted. Or the ones written by a replay, out
+   * of the dead-lettered ones.
+   */
+  private String updateSyncedEdgesLog(
+      ONeo4jImporterStatistics statistics, String phase, String verb) {
+
+    OPhaseProgress progress =
+        this.track(phase, statistics.neo4jRelCounter, statistics.neo4jSyncRels);
+    String keepLogString =
+        verb
+            + " OrientDB Edges: "
+            + df.format(statistics.neo4jRelCounter)
+            + " of "
+            + df.format(statistics.neo4jSyncRels)
+            + " Relationships written"
+            + this.percentageLog(statistics.neo4jRelCounter, statistics.neo4jSyncRels)
+            + ", "
+            + df.format(statistics.orientDBUpdatedEdgesCounter)
+            + " updated, "
+            + df.format(statistics.orientDBDeletedEdgesCounter)
+            + " deleted"
+            + this.rateLog(progress)
+            + this.batchSizingLog(statistics)
+            + this.pipelineLog(statistics);
+    String message = String.format(format, keepLogString);
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, message);
+    return keepLogString;
+  }
+
+  /** Percentage done, 100% when there is nothing to do. */
+  private String percentageLog(double done, double total) {
+    if (total == 0) {
+      return " (100% done)";
+    }
+    return " (" + df.format(Math.min(100, 100 * done / total)) + "% done)";
+  }
+
+  /** Rates, elapsed time and time left of the phase, empty until the first rate is measured. */
+  private String rateLog(OPhaseProgress progress) {
+    if (progress.getElapsedMillis() == 0) {
+      return "";
+    }
+    long eta = progress.getEtaMillis();
+    return " ["
+        + df.format(progress.getCurrentRate())
+        + "/s, avg "
+        + df.format(progress.getMovingRate())
+        + "/s, elapsed "
+        + OFunctionsHandler.getHMSFormat(progress.getElapsedMillis())
+        + ", ETA "
+        + (eta < 0 ? "unknown" : OFunctionsHandler.getHMSFormat(eta))
+        + "]";
+  }
+
+  /**
+   * Records waiting to be converted and to be written: a full queue means the following stages are
+   * the bottleneck. Empty when the pipeline is not running.
+   */
+  private String pipelineLog(ONeo4jImporterStatistics statistics) {
+    if (statistics.pipelineQueueCapacity == 0) {
+      return "";
+    }
+    return " [queued: "
+        + df.format(statistics.fetchedQueueDepth)
+        + " fetched, "
+        + df.format(statistics.convertedQueueDepth)
+        + " converted, of "
+        + df.format(statistics.pipelineQueueCapacity)
+        + "]";
+  }
+
+  /** Last decision of the adaptive batch sizing, empty until the first batch is committed. */
+  private String batchSizingLog(ONeo4jImporterStatistics statistics) {
+    if (statistics.batchRecords == 0) {
+      return "";
+    }
+    return " [last batch: "
+        + df.format(statistics.batchRecords)
+        + " records, target "
+        + df.format(statistics.batchTargetBytes / 1024)
+        + "KB, "
+        + statistics.batchSizing
+        + "]";
+  }
+
   private String updateImportedIndicesOnVertices(ONeo4jImporterStatistics statistics) {
 
     String keepLogString;
+    this.track(
+        "indices-on-vertices",
+        statistics.neo4jInternalVertexIndicesCounter,
+        statistics.orientDBVerticesClassCount * 2);
 
     if (statistics.neo4jInternalVertexIndicesCounter == 0) {
       keepLogString =
@@ -128,6 +291,8 @@ public class OProgressMonitor implements OStatisticsListener {
   private String updateImportedEdgesLog(ONeo4jImporterStatistics statistics) {
 
     String keepLogString;
+    OPhaseProgress progress =
+        this.track("edges", statistics.orientDBImportedEdgesCounter, statistics.neo4jTotalRels);
 
     if (statistics.orientDBImportedEdgesCounter == 0) {
       keepLogString =
@@ -143,7 +308,10 @@ public class OProgressMonitor implements OStatisticsListener {
               + df.format(statistics.orientDBImportedEdgesCounter)
               + " ("
               + df.format(value)
-              + "% done)";
+              + "% done)"
+              + this.rateLog(progress)
+              + this.batchSizingLog(statistics)
+              + this.pipelineLog(statistics);
       String message = String.format(format, keepLogString);
       ONeo4jImporterContext.getInstance().getMessageHandler().info(this, message);
     }
@@ -153,6 +321,10 @@ public class OProgressMonitor implements OStatisticsListener {
   private String updateImportedIndicesOnEdges(ONeo4jImporterStatistics statistics) {
 
     String keepLogString;
+    this.track(
+        "indices-on-edges",
+        statistics.neo4jInternalEdgeIndicesCounter,
+        statistics.orientDBEdgeClassesCount);
 
     if (statistics.neo4jInternalEdgeIndicesCounter == 0) {
       keepLogString =
@@ -181,6 +353,7 @@ public class OProgressMonitor implements OStatisticsListener {
   private String updateImportedConstraints(ONeo4jImporterStatistics statistics) {
 
     String keepLogString;
+    this.track("constraints", statistics.neo4jConstraintsCounter, statistics.neo4jTotalConstraints);
 
     if (statistics.neo4jConstraintsCounter == 0) {
       keepLogString =
@@ -214,6 +387,10 @@ public class OProgressMonitor implements OStatisticsListener {
   private String updateImportedIndices(ONeo4jImporterStatistics statistics) {
 
     String keepLogString;
+    this.track(
+        "indices",
+        statistics.neo4jNonConstraintsIndicesCounter,
+        statistics.neo4jTotalIndices - statistics.neo4jTotalUniqueConstraints);
 
     if (statistics.orientDBImportedIndicesCounter == 0) {
       keepLogString =
@@ -242,7 +419,32 @@ public class OProgressMonitor implements OStatisticsListener {
     return keepLogString;
   }
 
+  /**
+   * Returns the progress of the current phase, or of the last one if no phase is running.
+   *
+   * @return null before the first phase
+   */
+  public OPhaseProgress getProgress() {
+    return progress;
+  }
+
+  /**
+   * Feeds the progress of the phase, starting it over when the phase changes, from the counter
+   * value of its first tick: the elements imported before a resume are not rated.
+   */
+  private OPhaseProgress track(String phase, double done, double total) {
+    long now = System.currentTimeMillis();
+    OPhaseProgress current = this.progress;
+    if (current == null || !current.getPhase().equals(phase)) {
+      current = new OPhaseProgress(phase, now, done);
+      this.progress = current;
+    }
+    current.update(now, done, total);
+    return current;
+  }
+
   public void initialize() {
     ONeo4jImporterContext.getInstance().getStatistics().registerListener(this);
+    ONeo4jImporterContext.getInstance().setProgressMonitor(this);
   }
 }
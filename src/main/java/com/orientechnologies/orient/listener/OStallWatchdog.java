@@ -0,0 +1,272 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.listener;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.util.OFunctionsHandler;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the statistics published by the import timer and, when none of the counters and timers
+ * moves for the configured time during a phase, writes a diagnostics file with the stacks of the
+ * import threads, the timings of the import stages and the last Neo4j ids committed, and marks the
+ * stall in the statistics (stalledSinceMillis, stallDiagnostics) until the import makes progress
+ * again. A paused job is never considered stalled.
+ */
+public class OStallWatchdog implements OStatisticsListener {
+
+  /** Prefix of the names of the threads running the import. */
+  public static final String IMPORTER_THREADS_PREFIX = "neo4j-importer-worker-";
+
+  private final long timeoutMillis;
+  private final File directory;
+  private final Thread importThread;
+
+  private String phase;
+  private long lastProgress = -1;
+  private long lastProgressMillis;
+
+  /**
+   * Must be created by the thread running the import.
+   *
+   * @param timeoutSeconds time without progress after which the import is considered stalled
+   * @param directory where the diagnostics files are written, the temporary directory if null
+   */
+  public OStallWatchdog(long timeoutSeconds, String directory) {
+    this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    this.directory = new File(directory != null ? directory : System.getProperty("java.io.tmpdir"));
+    this.importThread = Thread.currentThread();
+  }
+
+  public void initialize() {
+    ONeo4jImporterContext.getInstance().getStatistics().registerListener(this);
+  }
+
+  @Override
+  public String updateOnEvent(ONeo4jImporterStatistics statistics) {
+    boolean paused = ONeo4jImporterContext.getInstance().getControl().isPaused();
+    this.check(statistics, System.currentTimeMillis(), paused);
+    return null;
+  }
+
+  /** Returns the diagnostics file written for a new stall, null otherwise. */
+  synchronized File check(ONeo4jImporterStatistics statistics, long nowMillis, boolean paused) {
+
+    long progress = progressOf(statistics.getMetrics());
+    String currentPhase = statistics.importingElements;
+
+    if (paused
+        || "nothing".equals(currentPhase)
+        || !currentPhase.equals(phase)
+        || progress != lastProgress) {
+      if (statistics.stalledSinceMillis != 0 && !paused) {
+        ONeo4jImporterContext.getInstance()
+            .getMessageHandler()
+            .info(
+                this,
+                "\nThe import made progress again after %s.\n",
+                OFunctionsHandler.getHMSFormat(nowMillis - statistics.stalledSinceMillis));
+      }
+      statistics.stalledSinceMillis = 0;
+      statistics.stallDiagnostics = null;
+      phase = currentPhase;
+      lastProgress = progress;
+      lastProgressMillis = nowMillis;
+      return null;
+    }
+
+    if (statistics.stalledSinceMillis != 0 || nowMillis - lastProgressMillis < timeoutMillis) {
+      return null;
+    }
+
+    statistics.stalledSinceMillis = lastProgressMillis;
+    File file =
+        new File(
+            directory,
+            "neo4j-importer-stall-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(nowMillis))
+                + ".txt");
+    try {
+      this.writeDiagnostics(file, statistics, nowMillis);
+      statistics.stallDiagnostics = file.getAbsolutePath();
+    } catch (IOException e) {
+      String mess = "Could not write the stall diagnostics to " + file.getAbsolutePath();
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      file = null;
+    }
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .warn(
+            this,
+            "\nNo progress importing %s for %s%s.\n",
+            phase,
+            OFunctionsHandler.getHMSFormat(nowMillis - lastProgressMillis),
+            file != null ? ", diagnostics written to " + file.getAbsolutePath() : "");
+    return file;
+  }
+
+  /** Sum of the counters and of the counts of the timers, which only grow while importing. */
+  private static long progressOf(OMetricsRegistry metrics) {
+    long progress = 0;
+    for (OMetricsRegistry.Counter counter : metrics.getCounters().values()) {
+      progress += counter.get();
+    }
+    for (OMetricsRegistry.Timer timer : metrics.getTimers().values()) {
+      progress += timer.getCount();
+    }
+    return progress;
+  }
+
+  private void writeLastCommittedIds(
+      PrintWriter out, ONeo4jImporterStatistics statistics, String gaugePrefix, String elements) {
+    for (Map.Entry<String, OMetricsRegistry.Gauge> entry :
+        statistics.getMetrics().getGauges().entrySet()) {
+      if (entry.getKey().startsWith(gaugePrefix + ".")) {
+        out.printf(
+            "  worker %s %s: %.0f%n",
+            entry.getKey().substring(gaugePrefix.length() + 1), elements, entry.getValue().get());
+      }
+    }
+  }
+
+  private void writeDiagnostics(File file, ONeo4jImporterStatistics statistics, long nowMillis)
+      throws IOException {
+
+    PrintWriter out =
+        new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    try {
+      out.printf("Importing %s, no progress since %s%n", phase, new Date(lastProgressMillis));
+      out.printf("Diagnostics taken at %s%n", new Date(nowMillis));
+
+      out.printf("%nLast committed Neo4j ids, by worker:%n");
+      this.writeLastCommittedIds(
+          out, statistics, ONeo4jImporterStatistics.NEO4J_NODES_LAST_COMMITTED_ID, "nodes");
+      this.writeLastCommittedIds(
+          out,
+          statistics,
+          ONeo4jImporterStatistics.NEO4J_RELATIONSHIPS_LAST_COMMITTED_ID,
+          "relationships");
+
+      out.printf("%nPhases (ms):%n");
+      for (Map.Entry<String, Long> entry : statistics.getPhaseDurations().entrySet()) {
+        out.printf("  %s: %d%n", entry.getKey(), entry.getValue());
+      }
+
+      out.printf("%nStages (count, p50 ms, p99 ms, max ms):%n");
+      for (Map.Entry<String, OMetricsRegistry.Timer> entry :
+          statistics.getMetrics().getTimers().entrySet()) {
+        OMetricsRegistry.Timer timer = entry.getValue();
+        out.printf(
+            "  %s: %d, %.3f, %.3f, %.3f%n",
+            entry.getKey(),
+            timer.getCount(),
+            timer.getNanosAtPercentile(50) / 1e6,
+            timer.getNanosAtPercentile(99) / 1e6,
+            timer.getMaxNanos() / 1e6);
+      }
+
+      out.printf("%nMetrics:%n");
+      for (Map.Entry<String, Object> entry : statistics.getMetrics().snapshot().entrySet()) {
+        if (!(entry.getValue() instanceof Map)) {
+          out.printf("  %s: %s%n", entry.getKey(), entry.getValue());
+        }
+      }
+
+      out.printf("%nThreads:%n");
+      for (ThreadInfo thread : this.importerThreads()) {
+        printThread(out, thread);
+      }
+    } finally {
+      out.close();
+    }
+    if (out.checkError()) {
+      throw new IOException("Error writing " + file.getAbsolutePath());
+    }
+  }
+
+  private List<ThreadInfo> importerThreads() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    List<ThreadInfo> importerThreads = new ArrayList<ThreadInfo>();
+    ThreadInfo[] all =
+        threads.getThreadInfo(
+            threads.getAllThreadIds(),
+            threads.isObjectMonitorUsageSupported(),
+            threads.isSynchronizerUsageSupported());
+    for (ThreadInfo thread : all) {
+      if (thread != null
+          && (thread.getThreadId() == importThread.getId()
+              || thread.getThreadName().startsWith(IMPORTER_THREADS_PREFIX))) {
+        importerThreads.add(thread);
+      }
+    }
+    return importerThreads;
+  }
+
+  /** Like ThreadInfo.toString(), without its limit on the number of frames. */
+  private static void printThread(PrintWriter out, ThreadInfo thread) {
+    out.printf(
+        "%n\"%s\" id=%d %s", thread.getThreadName(), thread.getThreadId(), thread.getThreadState());
+    if (thread.getLockName() != null) {
+      out.printf(" on %s", thread.getLockName());
+    }
+    if (thread.getLockOwnerName() != null) {
+      out.printf(" owned by \"%s\" id=%d", thread.getLockOwnerName(), thread.getLockOwnerId());
+    }
+    out.println();
+
+    StackTraceElement[] stack = thread.getStackTrace();
+    MonitorInfo[] monitors = thread.getLockedMonitors();
+    for (int i = 0; i < stack.length; i++) {
+      out.printf("    at %s%n", stack[i]);
+      for (MonitorInfo monitor : monitors) {
+        if (monitor.getLockedStackDepth() == i) {
+          out.printf("    - locked %s%n", monitor);
+        }
+      }
+    }
+    LockInfo[] synchronizers = thread.getLockedSynchronizers();
+    if (synchronizers.length > 0) {
+      out.printf("  Locked synchronizers:%n");
+      for (LockInfo synchronizer : synchronizers) {
+        out.printf("    - %s%n", synchronizer);
+      }
+    }
+  }
+}
@@ -26,8 +26,19 @@ import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
 import com.orientechnologies.orient.core.OConstants;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.util.OFunctionsHandler;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.io.File;
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.exceptions.Neo4jException;
 
 /**
  * The main class of the ONeo4jImporter. It is instantiated from the ONeo4jImporterCommandLineParser
@@ -37,6 +48,37 @@ import org.neo4j.driver.v1.Session;
 public class ONeo4jImporter {
 
   public static final String PROGRAM_NAME = "Neo4j to OrientDB Importer";
+
+  // counters of the phases that a resumed import runs again whole, unless they were completed
+  private static final Map<String, List<String>> RERUN_PHASES_COUNTERS =
+      new LinkedHashMap<String, List<String>>();
+
+  static {
+    RERUN_PHASES_COUNTERS.put(
+        "indices-on-vertices",
+        Arrays.asList(ONeo4jImporterStatistics.ORIENTDB_INTERNAL_VERTEX_INDICES));
+    RERUN_PHASES_COUNTERS.put(
+        "indices-on-edges", Arrays.asList(ONeo4jImporterStatistics.ORIENTDB_INTERNAL_EDGE_INDICES));
+    RERUN_PHASES_COUNTERS.put(
+        "constraints",
+        Arrays.asList(
+            ONeo4jImporterStatistics.NEO4J_TOTAL_CONSTRAINTS,
+            ONeo4jImporterStatistics.NEO4J_TOTAL_UNIQUE_CONSTRAINTS,
+            ONeo4jImporterStatistics.NEO4J_TOTAL_NODE_PROPERTY_EXISTENCE_CONSTRAINTS,
+            ONeo4jImporterStatistics.NEO4J_TOTAL_REL_PROPERTY_EXISTENCE_CONSTRAINTS,
+            ONeo4jImporterStatistics.NEO4J_CONSTRAINTS,
+            ONeo4jImporterStatistics.NEO4J_UNIQUE_CONSTRAINTS,
+            ONeo4jImporterStatistics.ORIENTDB_CONSTRAINTS,
+            ONeo4jImporterStatistics.ORIENTDB_UNIQUE_CONSTRAINTS,
+            ONeo4jImporterStatistics.ORIENTDB_NOT_UNIQUE_WORKAROUNDS));
+    RERUN_PHASES_COUNTERS.put(
+        "indices",
+        Arrays.asList(
+            ONeo4jImporterStatistics.NEO4J_INDICES,
+            ONeo4jImporterStatistics.NEO4J_NON_CONSTRAINTS_INDICES,
+            ONeo4jImporterStatistics.ORIENTDB_INDICES));
+  }
+
   private final ONeo4jImporterSettings settings;
   private String orientdbDatabasesAbsolutePath;
 
@@ -89,6 +131,10 @@ public class ONeo4jImporter {
     String orientDbProtocol = settings.getOrientDbProtocol();
     boolean overwriteOrientDBDir = settings.getOverwriteOrientDbDir();
     boolean neo4jRelIdIndex = settings.getCreateIndexOnNeo4jRelID();
+    boolean resume = settings.isResume();
+    boolean incremental = settings.isIncremental();
+    String replayFile = settings.getReplayFile();
+    boolean replay = replayFile != null;
 
     String dbName;
 
@@ -103,7 +149,27 @@ public class ONeo4jImporter {
     }
 
     if (ONeo4jImporterContext.getInstance().getOrientDBInstance().exists(dbName)) {
-      if (overwriteOrientDBDir) {
+      if (replay) {
+        logString =
+            "The '"
+                + dbName
+                + "' database already exists and a dead-letter file to replay is given. The records of '"
+                + replayFile
+                + "' will be imported again into it.\n\n";
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+      } else if (incremental) {
+        logString =
+            "The '"
+                + dbName
+                + "' database already exists and the incremental option is 'true'. The changes of the Neo4j database will be synced into it.\n\n";
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+      } else if (resume) {
+        logString =
+            "The '"
+                + dbName
+                + "' database already exists and the resume option is 'true'. The migration will continue from its checkpoint.\n\n";
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+      } else if (overwriteOrientDBDir) {
         logString =
             "The '"
                 + dbName
@@ -121,8 +187,40 @@ public class ONeo4jImporter {
         ONeo4jImporterContext.getInstance().getMessageHandler().error(this, logString);
         throw new RuntimeException(logString);
       }
+    } else if (replay) {
+      logString =
+          "The '"
+              + dbName
+              + "' database does not exist, there is no migration to replay the dead-letter file into. "
+              + "Please run the migration without the 'replay' option first. Terminating the migration.\n\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().error(this, logString);
+      throw new RuntimeException(logString);
+    } else if (incremental) {
+      logString =
+          "The '"
+              + dbName
+              + "' database does not exist, there is no migration to sync. "
+              + "Please run the migration without the 'incremental' option first. Terminating the migration.\n\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().error(this, logString);
+      throw new RuntimeException(logString);
+    } else if (resume) {
+      logString =
+          "The '"
+              + dbName
+              + "' database does not exist, there is no migration to resume. A new migration will be started.\n\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+      resume = false;
     }
 
+    // read before connecting, so that an unreadable file stops the replay right away
+    Map<String, List<Long>> replayIds =
+        replay
+            ? ONeo4jImporterDeadLetters.read(new File(replayFile))
+            : Collections.<String, List<Long>>emptyMap();
+    ONeo4jImporterDeadLetters deadLetters =
+        ONeo4jImporterDeadLetters.create(
+            settings.getDeadLetterFile(), settings.getDiagnosticsDirectory());
+
     try {
 
       //
@@ -133,10 +231,26 @@ public class ONeo4jImporter {
           new OSourceNeo4jInfo(neo4jUrl, neo4jUsername, neo4jPassword);
       ONeo4jImporterInitializer initializer =
           new ONeo4jImporterInitializer(sourceNeo4jInfo, orientDbProtocol, dbName);
-      Session neo4jSession = initializer.initConnections();
+      Session neo4jSession = initializer.initConnections(resume || incremental || replay);
       String orientVertexClass = initializer.getOrientVertexClass();
       ODatabaseDocument oDb = initializer.getoDb();
       ONeo4jImporterStatistics statistics = ONeo4jImporterContext.getInstance().getStatistics();
+      // taken before reading anything, so that the changes made during the run are synced later
+      long neo4jTimestamp = this.getNeo4jTimestamp(neo4jSession);
+      ONeo4jImporterCheckpoint checkpoint;
+      if (incremental) {
+        checkpoint = this.initSyncCheckpoint(oDb, dbName);
+      } else if (replay) {
+        checkpoint = ONeo4jImporterCheckpoint.load(oDb, statistics.getMetrics());
+        if (checkpoint == null) {
+          checkpoint = ONeo4jImporterCheckpoint.create(oDb, statistics.getMetrics());
+        }
+      } else {
+        checkpoint = this.initCheckpoint(oDb, dbName, resume, statistics);
+      }
+      if (!incremental && !replay && !checkpoint.isResumed()) {
+        checkpoint.setSyncTimestamp(oDb, neo4jTimestamp);
+      }
 
       //
       // PHASE 2 : MIGRATION OF VERTICES AND EDGES
@@ -152,17 +266,45 @@ public class ONeo4jImporter {
               oDb,
               statistics,
               relSampleOnly,
-              neo4jRelIdIndex);
-      verticesAndEdgesImporter.invoke(neo4jSession);
+              neo4jRelIdIndex,
+              settings,
+              checkpoint,
+              deadLetters);
+      if (incremental) {
+        verticesAndEdgesImporter.sync(neo4jSession, checkpoint.getSyncTimestamp());
+      } else if (replay) {
+        verticesAndEdgesImporter.replay(
+            neo4jSession,
+            this.replayIds(replayIds, ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE),
+            this.replayIds(replayIds, ONeo4jImporterVerticesAndEdgesMigrator.EDGES_PHASE));
+      } else {
+        verticesAndEdgesImporter.invoke(neo4jSession);
+      }
       keepLogString = verticesAndEdgesImporter.getKeepLogString();
 
       //
-      // PHASE 3 : SCHEMA MIGRATION
+      // PHASE 3 : SCHEMA MIGRATION (constraints and indices are migrated once, not synced)
       //
 
       ONeo4jImporterSchemaMigrator schemaMigrator =
-          new ONeo4jImporterSchemaMigrator(keepLogString, df, oDb, statistics);
-      schemaMigrator.invoke(neo4jSession);
+          new ONeo4jImporterSchemaMigrator(keepLogString, df, oDb, statistics, checkpoint);
+      if (incremental) {
+        checkpoint.setSyncTimestamp(oDb, neo4jTimestamp);
+      } else if (!replay) {
+        schemaMigrator.invoke(neo4jSession);
+      }
+
+      if (deadLetters.size() > 0) {
+        ONeo4jImporterContext.getInstance()
+            .getMessageHandler()
+            .warn(
+                this,
+                "\n%d records could not be stored in OrientDB, they were written to %s. "
+                    + "Once the data is fixed, import them again with the option -replay %s\n",
+                deadLetters.size(),
+                deadLetters.getFile().getAbsolutePath(),
+                deadLetters.getFile().getAbsolutePath());
+      }
 
       //
       // PHASE 4 : SHUTDOWN OF THE SERVERS AND SUMMARY INFO
@@ -181,12 +323,108 @@ public class ONeo4jImporter {
 
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      deadLetters.close();
     }
 
     returnCode = 0;
     return returnCode;
   }
 
+  /**
+   * Creates the checkpoint of the import, or loads the one of the import to resume, restoring its
+   * counters.
+   *
+   * @param oDb
+   * @param dbName
+   * @param resume
+   * @param statistics
+   * @return
+   */
+  private ONeo4jImporterCheckpoint initCheckpoint(
+      ODatabaseDocument oDb, String dbName, boolean resume, ONeo4jImporterStatistics statistics) {
+
+    if (!resume) {
+      return ONeo4jImporterCheckpoint.create(oDb, statistics.getMetrics());
+    }
+
+    ONeo4jImporterCheckpoint checkpoint =
+        ONeo4jImporterCheckpoint.load(oDb, statistics.getMetrics());
+    if (checkpoint == null) {
+      String logString =
+          "The '"
+              + dbName
+              + "' database has no checkpoint of a previous migration, it cannot be resumed. "
+              + "Please run the migration with the 'overwrite' option set to true. Terminating the migration.\n\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().error(this, logString);
+      throw new RuntimeException(logString);
+    }
+    // the phases not completed by the previous run start over, their counters with them
+    Set<String> rerunCounters = new HashSet<String>();
+    for (Map.Entry<String, List<String>> phase : RERUN_PHASES_COUNTERS.entrySet()) {
+      if (!checkpoint.isCompleted(phase.getKey())) {
+        rerunCounters.addAll(phase.getValue());
+      }
+    }
+    for (Map.Entry<String, Long> counter : checkpoint.getCounters().entrySet()) {
+      if (!rerunCounters.contains(counter.getKey())) {
+        statistics.add(counter.getKey(), counter.getValue());
+      }
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Loads the checkpoint of the migration to sync, which must be completed. Databases migrated
+   * without a checkpoint get a new one.
+   *
+   * @param oDb
+   * @param dbName
+   * @return
+   */
+  private ONeo4jImporterCheckpoint initSyncCheckpoint(ODatabaseDocument oDb, String dbName) {
+
+    ONeo4jImporterCheckpoint checkpoint =
+        ONeo4jImporterCheckpoint.load(
+            oDb, ONeo4jImporterContext.getInstance().getStatistics().getMetrics());
+    if (checkpoint == null) {
+      String logString =
+          "The '"
+              + dbName
+              + "' database has no checkpoint: all the Nodes and Relationships with the changed-since property will be updated.\n\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().warn(this, logString);
+      return ONeo4jImporterCheckpoint.create(
+          oDb, ONeo4jImporterContext.getInstance().getStatistics().getMetrics());
+    }
+    if (!checkpoint.isCompleted(ONeo4jImporterVerticesAndEdgesMigrator.EDGES_PHASE)) {
+      String logString =
+          "The migration into the '"
+              + dbName
+              + "' database was interrupted. Please complete it with the 'resume' option set to true before syncing it. Terminating the migration.\n\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().error(this, logString);
+      throw new RuntimeException(logString);
+    }
+    return checkpoint;
+  }
+
+  /** Returns the ids of a phase of the dead-letter file to replay, empty if none. */
+  private List<Long> replayIds(Map<String, List<Long>> replayIds, String phase) {
+    List<Long> ids = replayIds.get(phase);
+    return ids != null ? ids : Collections.<Long>emptyList();
+  }
+
+  /** Returns the current time of the Neo4j server, in milliseconds. */
+  private long getNeo4jTimestamp(Session neo4jSession) {
+    try {
+      return neo4jSession.run("RETURN timestamp() as now").single().get("now").asLong();
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
+    }
+  }
+
   private void stopServers(Session neo4jSession, ODatabaseDocument oDb) throws Exception {
 
     String logString;
@@ -203,6 +441,9 @@ public class ONeo4jImporter {
       if (neo4jSession != null) {
         neo4jSession.close();
       }
+      if (ONeo4jImporterContext.getInstance().getNeo4jConnectionManager() != null) {
+        ONeo4jImporterContext.getInstance().getNeo4jConnectionManager().close();
+      }
     } catch (Exception e) {
       String mess = "";
       ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
@@ -228,6 +469,8 @@ public class ONeo4jImporter {
     double value;
     String logString;
 
+    counters.snapshot();
+
     long stopTime = System.currentTimeMillis();
     long elapsedTime = (stopTime - startTime);
     long elapsedTimeSeconds = elapsedTime / (1000);
@@ -329,6 +572,36 @@ public class ONeo4jImporter {
           .info(this, " (" + df.format(value) + "%)");
     }
 
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n\n");
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(
+            this,
+            format,
+            "- Size of the OrientDB Vertices and Edges records",
+            ": "
+                + dfd.format(counters.orientDBRecordsSize / (1024 * 1024))
+                + "MB (before the run "
+                + dfd.format(counters.orientDBRecordsSizeBefore / (1024 * 1024))
+                + "MB, "
+                + (counters.orientDBRecordsSize >= counters.orientDBRecordsSizeBefore ? "+" : "")
+                + dfd.format(
+                    (counters.orientDBRecordsSize - counters.orientDBRecordsSizeBefore)
+                        / (1024 * 1024))
+                + "MB)");
+    value = counters.orientDBImportedVerticesCounter + counters.orientDBImportedEdgesCounter;
+    if (value > 0) {
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .info(
+              this,
+              " ("
+                  + df.format(counters.orientDBRecordsSize / value)
+                  + " bytes/record, "
+                  + (settings.isTypedProperties() ? "typed" : "schemaless")
+                  + " properties)");
+    }
+
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n\n");
     ONeo4jImporterContext.getInstance()
         .getMessageHandler()
@@ -433,7 +706,13 @@ public class ONeo4jImporter {
       value = (counters.orientDBImportedVerticesCounter / importingNodesElapsedTimeSeconds);
       ONeo4jImporterContext.getInstance()
           .getMessageHandler()
-          .info(this, " (" + dfd.format(value) + " nodes/sec)");
+          .info(
+              this,
+              " ("
+                  + dfd.format(value)
+                  + " nodes/sec in "
+                  + settings.getTransactionality()
+                  + " mode)");
     }
 
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n");
@@ -448,7 +727,13 @@ public class ONeo4jImporter {
       value = (counters.orientDBImportedEdgesCounter / importingRelsElapsedTimeSeconds);
       ONeo4jImporterContext.getInstance()
           .getMessageHandler()
-          .info(this, " (" + dfd.format(value) + " rels/sec)");
+          .info(
+              this,
+              " ("
+                  + dfd.format(value)
+                  + " rels/sec in "
+                  + settings.getTransactionality()
+                  + " mode)");
     }
 
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n");
@@ -502,6 +787,37 @@ public class ONeo4jImporter {
       ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n");
     }
 
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n");
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(this, "- Latency of the import stages (count, total, p50, p99, max):\n");
+    DecimalFormat latencyFormat = new DecimalFormat("#.###");
+    for (Map.Entry<String, OMetricsRegistry.Timer> entry :
+        counters.getMetrics().getTimers().entrySet()) {
+      OMetricsRegistry.Timer timer = entry.getValue();
+      if (timer.getCount() == 0) {
+        continue;
+      }
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .info(
+              this,
+              format,
+              "-- " + entry.getKey(),
+              ": "
+                  + df.format(timer.getCount())
+                  + ", "
+                  + OFunctionsHandler.getHMSFormat(
+                      TimeUnit.NANOSECONDS.toMillis(timer.getTotalNanos()))
+                  + ", "
+                  + latencyFormat.format(timer.getNanosAtPercentile(50) / 1e6)
+                  + "ms, "
+                  + latencyFormat.format(timer.getNanosAtPercentile(99) / 1e6)
+                  + "ms, "
+                  + latencyFormat.format(timer.getMaxNanos() / 1e6)
+                  + "ms\n");
+    }
+
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n");
     logString = PROGRAM_NAME + " - v." + OConstants.getVersion() + " - PHASE 4 completed!\n\n";
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
@@ -0,0 +1,363 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an import, stored in a document of the target database and saved after the committed
+ * batches (at most once a second) and at the end of each phase, so that an interrupted import can
+ * be resumed (resume option) without reading again what was already imported. It holds the
+ * completed phases, the counters, and the partitions of the nodes and of the relationships, each
+ * one with the highest Neo4j id up to which all its records have been imported.
+ *
+ * <p>The records of a partition are fetched in id order, in chunks registered in fetch order, and a
+ * chunk is completed once all its records have been committed. As the writers can commit chunks out
+ * of order, the id of a partition only moves past the chunks completed without gaps. Records
+ * committed beyond it before an interruption are imported again on resume, unless the migrator
+ * finds them in the database.
+ */
+class ONeo4jImporterCheckpoint {
+
+  static final String CLASS_NAME = "Neo4jImporterCheckpoint";
+
+  private static final long SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final ORID rid;
+  private final OMetricsRegistry metrics;
+  private final boolean resumed;
+  private final Set<String> completedPhases = new LinkedHashSet<String>();
+  private final Map<String, List<Partition>> partitions =
+      new LinkedHashMap<String, List<Partition>>();
+  private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+  private long syncTimestamp = -1;
+  private final AtomicLong lastSaveNanos = new AtomicLong(System.nanoTime());
+
+  private ONeo4jImporterCheckpoint(ORID rid, OMetricsRegistry metrics, boolean resumed) {
+    this.rid = rid;
+    this.metrics = metrics;
+    this.resumed = resumed;
+  }
+
+  /**
+   * Creates the checkpoint of a new import.
+   *
+   * @param db
+   * @param metrics the counters of the import, saved with the checkpoint
+   */
+  static ONeo4jImporterCheckpoint create(ODatabaseDocument db, OMetricsRegistry metrics) {
+    if (!db.getMetadata().getSchema().existsClass(CLASS_NAME)) {
+      db.getMetadata().getSchema().createClass(CLASS_NAME);
+    }
+    ODocument document = new ODocument(CLASS_NAME);
+    document.field("createdAt", new Date());
+    db.save(document);
+    ONeo4jImporterCheckpoint checkpoint =
+        new ONeo4jImporterCheckpoint(document.getIdentity(), metrics, false);
+    checkpoint.save(db);
+    return checkpoint;
+  }
+
+  /**
+   * Loads the checkpoint of the import into this database.
+   *
+   * @param db
+   * @param metrics
+   * @return null if the database has no checkpoint
+   */
+  static ONeo4jImporterCheckpoint load(ODatabaseDocument db, OMetricsRegistry metrics) {
+    if (!db.getMetadata().getSchema().existsClass(CLASS_NAME)) {
+      return null;
+    }
+    ODocument document = null;
+    for (ODocument current : db.browseClass(CLASS_NAME)) {
+      document = current;
+    }
+    if (document == null) {
+      return null;
+    }
+
+    ONeo4jImporterCheckpoint checkpoint =
+        new ONeo4jImporterCheckpoint(document.getIdentity(), metrics, true);
+    List<String> phases = document.field("completedPhases");
+    if (phases != null) {
+      checkpoint.completedPhases.addAll(phases);
+    }
+    List<ODocument> partitions = document.field("partitions");
+    if (partitions != null) {
+      for (ODocument partition : partitions) {
+        String phase = partition.field("phase");
+        List<Partition> phasePartitions = checkpoint.partitions.get(phase);
+        if (phasePartitions == null) {
+          phasePartitions = new ArrayList<Partition>();
+          checkpoint.partitions.put(phase, phasePartitions);
+        }
+        Partition restored =
+            new Partition(
+                (String) partition.field("name"),
+                ((Number) partition.field("lo")).longValue(),
+                ((Number) partition.field("hi")).longValue(),
+                true);
+        restored.committedId = ((Number) partition.field("committedId")).longValue();
+        restored.finished = Boolean.TRUE.equals(partition.field("finished"));
+        phasePartitions.add(restored);
+      }
+    }
+    Number syncTimestamp = document.field("syncTimestamp");
+    if (syncTimestamp != null) {
+      checkpoint.syncTimestamp = syncTimestamp.longValue();
+    }
+    Map<String, Object> counters = document.field("counters");
+    if (counters != null) {
+      for (Map.Entry<String, Object> counter : counters.entrySet()) {
+        checkpoint.counters.put(counter.getKey(), ((Number) counter.getValue()).longValue());
+      }
+    }
+    return checkpoint;
+  }
+
+  /** Returns whether the checkpoint was loaded from a previous run. */
+  boolean isResumed() {
+    return resumed;
+  }
+
+  /** Returns the counters of the previous runs. */
+  Map<String, Long> getCounters() {
+    return Collections.unmodifiableMap(counters);
+  }
+
+  /**
+   * Returns the Neo4j timestamp taken when the last import, or incremental sync, started: the
+   * records changed after it are synced by the next one.
+   *
+   * @return -1 if none was taken
+   */
+  synchronized long getSyncTimestamp() {
+    return syncTimestamp;
+  }
+
+  void setSyncTimestamp(ODatabaseDocument db, long syncTimestamp) {
+    synchronized (this) {
+      this.syncTimestamp = syncTimestamp;
+    }
+    this.save(db);
+  }
+
+  synchronized boolean isCompleted(String phase) {
+    return completedPhases.contains(phase);
+  }
+
+  void phaseCompleted(ODatabaseDocument db, String phase) {
+    synchronized (this) {
+      completedPhases.add(phase);
+    }
+    this.save(db);
+  }
+
+  /** Returns the partitions of the phase, null if they haven't been planned yet. */
+  synchronized List<Partition> getPartitions(String phase) {
+    return partitions.get(phase);
+  }
+
+  void setPartitions(ODatabaseDocument db, String phase, List<Partition> phasePartitions) {
+    synchronized (this) {
+      partitions.put(phase, phasePartitions);
+    }
+    this.save(db);
+  }
+
+  /**
+   * Stores the current progress, unless it was stored less than a second ago: the batches of all
+   * the workers committed meanwhile are stored by the next save. A worker finding another one
+   * saving doesn't wait for it. It must be called outside of a transaction.
+   *
+   * @param db any session on the target database, bound to the current thread
+   */
+  void saveCoalesced(ODatabaseDocument db) {
+    long last = lastSaveNanos.get();
+    long now = System.nanoTime();
+    if (now - last < SAVE_INTERVAL_NANOS || !lastSaveNanos.compareAndSet(last, now)) {
+      return;
+    }
+    this.save(db);
+  }
+
+  /**
+   * Stores the current progress. It must be called outside of a transaction.
+   *
+   * @param db any session on the target database, bound to the current thread
+   */
+  synchronized void save(ODatabaseDocument db) {
+
+    lastSaveNanos.set(System.nanoTime());
+
+    List<ODocument> savedPartitions = new ArrayList<ODocument>();
+    for (Map.Entry<String, List<Partition>> entry : partitions.entrySet()) {
+      for (Partition partition : entry.getValue()) {
+        ODocument saved = new ODocument();
+        saved.field("phase", entry.getKey());
+        saved.field("name", partition.name);
+        saved.field("lo", partition.lo);
+        saved.field("hi", partition.hi);
+        synchronized (partition) {
+          saved.field("committedId", partition.committedId);
+          saved.field("finished", partition.finished);
+        }
+        savedPartitions.add(saved);
+      }
+    }
+    Map<String, Long> savedCounters = new LinkedHashMap<String, Long>(counters);
+    for (Map.Entry<String, OMetricsRegistry.Counter> counter : metrics.getCounters().entrySet()) {
+      savedCounters.put(counter.getKey(), counter.getValue().get());
+    }
+
+    // reloaded, as it may have been saved meanwhile by the session of another worker
+    ODocument document = db.load(rid, null, true);
+    document.field("completedPhases", new ArrayList<String>(completedPhases), OType.EMBEDDEDLIST);
+    document.field("partitions", savedPartitions, OType.EMBEDDEDLIST);
+    document.field("counters", savedCounters, OType.EMBEDDEDMAP);
+    document.field("syncTimestamp", syncTimestamp);
+    document.field("updatedAt", new Date());
+    db.save(document);
+  }
+
+  /**
+   * Range of Neo4j ids of the records of a phase, [lo, hi), unbounded if lo is negative. For the
+   * relationships, restricted to a type if the name is not null.
+   */
+  static class Partition {
+
+    final String name;
+    final long lo;
+    final long hi;
+    private final boolean restored;
+
+    private long committedId = -1;
+    private boolean finished;
+    private boolean fetched;
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<Chunk>();
+    private Set<Long> imported = Collections.emptySet();
+
+    Partition(String name, long lo, long hi) {
+      this(name, lo, hi, false);
+    }
+
+    private Partition(String name, long lo, long hi, boolean restored) {
+      this.name = name;
+      this.lo = lo;
+      this.hi = hi;
+      this.restored = restored;
+    }
+
+    boolean isRange() {
+      return lo >= 0;
+    }
+
+    /** Returns whether the partition comes from a previous run. */
+    boolean isRestored() {
+      return restored;
+    }
+
+    /** Returns the highest id up to which all the records of the partition have been imported. */
+    synchronized long getCommittedId() {
+      return committedId;
+    }
+
+    synchronized boolean isFinished() {
+      return finished;
+    }
+
+    /**
+     * Records the ids beyond the committed one found in the database on resume, so that they are
+     * not imported again.
+     */
+    synchronized void setImported(Set<Long> imported) {
+      this.imported = new HashSet<Long>(imported);
+    }
+
+    synchronized boolean isImported(long id) {
+      return imported.contains(id);
+    }
+
+    /**
+     * Registers the next chunk of fetched records, in fetch order.
+     *
+     * @param lastId id of the last record of the chunk
+     */
+    synchronized Chunk newChunk(long lastId) {
+      Chunk chunk = new Chunk(this, lastId);
+      chunks.add(chunk);
+      return chunk;
+    }
+
+    /** Called when all the records of the partition have been fetched. */
+    synchronized void fetched() {
+      fetched = true;
+      this.advance();
+    }
+
+    private synchronized void completed(Chunk chunk) {
+      chunk.completed = true;
+      this.advance();
+    }
+
+    private void advance() {
+      while (!chunks.isEmpty() && chunks.peek().completed) {
+        committedId = chunks.poll().lastId;
+      }
+      finished = fetched && chunks.isEmpty();
+    }
+  }
+
+  /** Consecutive records of a partition, fetched together. */
+  static class Chunk {
+
+    private final Partition partition;
+    private final long lastId;
+    private boolean completed; // guarded by the partition
+
+    private Chunk(Partition partition, long lastId) {
+      this.partition = partition;
+      this.lastId = lastId;
+    }
+
+    /** Called when all the records of the chunk have been committed, or failed. */
+    void completed() {
+      partition.completed(this);
+    }
+  }
+}
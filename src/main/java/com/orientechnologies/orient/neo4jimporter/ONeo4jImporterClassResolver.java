@@ -0,0 +1,165 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterEvents;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves Neo4j labels and relationship types to the OrientDB classes they are imported in. The
+ * schema is read once, then the resolver is updated only when the importer itself creates a class,
+ * so that no schema access is needed for each imported record. It's shared by all the import
+ * workers: class creation is serialized, lookups are lock-free.
+ */
+class ONeo4jImporterClassResolver {
+
+  static final String MULTIPLE_LABELS_CLASS = "MultipleLabelNeo4jConversion";
+  static final String NO_LABEL_CLASS = "GenericClassNeo4jConversion";
+
+  // OrientDB class names are case insensitive: keys are lower case names
+  private final ConcurrentMap<String, String> existingClasses =
+      new ConcurrentHashMap<String, String>();
+  // the names as the records spell them, checked first not to lower case a name per record
+  private final Set<String> existingNames =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final ConcurrentMap<String, String> vertexClasses =
+      new ConcurrentHashMap<String, String>();
+  private final ConcurrentMap<String, String> edgeClassesByType =
+      new ConcurrentHashMap<String, String>();
+
+  ONeo4jImporterClassResolver(ODatabaseDocument db) {
+    for (OClass currentClass : db.getMetadata().getSchema().getClasses()) {
+      existingClasses.put(key(currentClass.getName()), currentClass.getName());
+    }
+    for (OClass currentClass : db.getMetadata().getSchema().getClass("V").getAllSubclasses()) {
+      vertexClasses.put(key(currentClass.getName()), currentClass.getName());
+    }
+  }
+
+  /**
+   * Returns the vertex class for a node with the passed labels: the label itself for nodes with a
+   * single label, a generic class for nodes with multiple labels or with no label at all.
+   *
+   * @param labels
+   * @return
+   */
+  String resolveVertexClass(List<Object> labels) {
+    switch (labels.size()) {
+      case 0:
+        return NO_LABEL_CLASS;
+      case 1:
+        return (String) labels.get(0);
+      default:
+        return MULTIPLE_LABELS_CLASS;
+    }
+  }
+
+  /**
+   * Returns the edge class for a relationship type. In neo4j we can have labels on nodes and
+   * relationship with the same name, but in OrientDB we cannot have vertex and edges classes with
+   * the same name. To handle this case, we append an E_ to the relationship name in case the
+   * relationship name is the same of a vertex class.
+   *
+   * @param relationshipType
+   * @return
+   */
+  String resolveEdgeClass(String relationshipType) {
+
+    String edgeClassName = edgeClassesByType.get(relationshipType);
+    if (edgeClassName != null) {
+      return edgeClassName;
+    }
+
+    String vertexClassName = vertexClasses.get(key(relationshipType));
+    edgeClassName = vertexClassName == null ? relationshipType : "E_" + relationshipType;
+    if (edgeClassesByType.putIfAbsent(relationshipType, edgeClassName) == null
+        && vertexClassName != null) {
+      // prints just one warning per relationship type (fix for github issue #1)
+      String logString =
+          "Found a Neo4j Relationship Type ('"
+              + relationshipType
+              + "') with same name of a Neo4j node Label ('"
+              + vertexClassName
+              + "'). Importing in OrientDB relationships of this type as 'E_"
+              + relationshipType;
+      ONeo4jImporterContext.getInstance().getMessageHandler().warn(this, logString);
+    }
+    return edgeClassName;
+  }
+
+  boolean existsClass(String className) {
+    if (existingNames.contains(className)) {
+      return true;
+    }
+    if (existingClasses.containsKey(key(className))) {
+      existingNames.add(className);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Creates the vertex class if no other worker did it in the meantime. It must be called outside
+   * of a transaction.
+   *
+   * @param db
+   * @param className
+   */
+  synchronized void createVertexClass(ODatabaseDocument db, String className) {
+    if (!this.existsClass(className)) {
+      ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+      db.createVertexClass(className);
+      event.commit(className, "create vertex class");
+      existingClasses.put(key(className), className);
+      vertexClasses.put(key(className), className);
+      // a new vertex class can change the class of relationships having the same name
+      edgeClassesByType.clear();
+    }
+  }
+
+  /**
+   * Creates the edge class if no other worker did it in the meantime. It must be called outside of
+   * a transaction.
+   *
+   * @param db
+   * @param className
+   */
+  synchronized void createEdgeClass(ODatabaseDocument db, String className) {
+    if (!this.existsClass(className)) {
+      ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+      db.createEdgeClass(className);
+      event.commit(className, "create edge class");
+      existingClasses.put(key(className), className);
+    }
+  }
+
+  private static String key(String className) {
+    return className.toLowerCase(Locale.ENGLISH);
+  }
+}
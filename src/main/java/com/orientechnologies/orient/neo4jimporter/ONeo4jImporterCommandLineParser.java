@@ -20,6 +20,7 @@
 
 package com.orientechnologies.orient.neo4jimporter;
 
+import com.orientechnologies.orient.context.ONeo4jImporterAsyncMessageHandler.OverflowPolicy;
 import com.orientechnologies.orient.context.ONeo4jImporterContext;
 import java.io.File;
 import java.util.ArrayList;
@@ -39,6 +40,23 @@ public class ONeo4jImporterCommandLineParser {
   public static final String OPTION_ORIENTDB_PATH = "odbdir";
   public static final String OPTION_OVERWRITE_ORIENTDB_DIR = "o";
   public static final String CREATE_INDEX_ON_NEO4JRELID = "i";
+  public static final String OPTION_NODE_ID_MAP_BUDGET = "idmapbudget";
+  public static final String OPTION_NODE_ID_MAP_DIR = "idmapdir";
+  public static final String OPTION_NODE_IMPORT_WORKERS = "nodeworkers";
+  public static final String OPTION_EDGE_IMPORT_WORKERS = "edgeworkers";
+  public static final String OPTION_TRANSACTIONALITY = "transactionality";
+  public static final String OPTION_TYPED_PROPERTIES = "typedproperties";
+  public static final String OPTION_PIPELINE_QUEUE_CAPACITY = "pipelinequeue";
+  public static final String OPTION_CONVERT_WORKERS = "convertworkers";
+  public static final String OPTION_LOG_OVERFLOW_POLICY = "logoverflow";
+  public static final String OPTION_STALL_TIMEOUT = "stalltimeout";
+  public static final String OPTION_DIAGNOSTICS_DIR = "diagnosticsdir";
+  public static final String OPTION_RESUME = "resume";
+  public static final String OPTION_INCREMENTAL = "incremental";
+  public static final String OPTION_CHANGED_SINCE_PROPERTY = "changedsince";
+  public static final String OPTION_NEO4J_RETRIES = "neo4jretries";
+  public static final String OPTION_DEAD_LETTER_FILE = "deadletters";
+  public static final String OPTION_REPLAY = "replay";
   public List<String> mainOptions;
 
   static final String COMMAND_LINE_PARSER_NEO4J_DBDIR_PARAM_MANDATORY =
@@ -83,6 +101,49 @@ public class ONeo4jImporterCommandLineParser {
         options.get(CREATE_INDEX_ON_NEO4JRELID) != null
             ? Boolean.parseBoolean(options.get(CREATE_INDEX_ON_NEO4JRELID))
             : false);
+    if (options.get(OPTION_NODE_ID_MAP_BUDGET) != null) {
+      settings.setNodeIdMapMemoryBudgetMB(Long.parseLong(options.get(OPTION_NODE_ID_MAP_BUDGET)));
+    }
+    settings.setNodeIdMapDirectory(options.get(OPTION_NODE_ID_MAP_DIR));
+    if (options.get(OPTION_NODE_IMPORT_WORKERS) != null) {
+      settings.setNodeImportWorkers(Integer.parseInt(options.get(OPTION_NODE_IMPORT_WORKERS)));
+    }
+    if (options.get(OPTION_EDGE_IMPORT_WORKERS) != null) {
+      settings.setEdgeImportWorkers(Integer.parseInt(options.get(OPTION_EDGE_IMPORT_WORKERS)));
+    }
+    if (options.get(OPTION_TYPED_PROPERTIES) != null) {
+      settings.setTypedProperties(Boolean.parseBoolean(options.get(OPTION_TYPED_PROPERTIES)));
+    }
+    if (options.get(OPTION_PIPELINE_QUEUE_CAPACITY) != null) {
+      settings.setPipelineQueueCapacity(
+          Integer.parseInt(options.get(OPTION_PIPELINE_QUEUE_CAPACITY)));
+    }
+    if (options.get(OPTION_CONVERT_WORKERS) != null) {
+      settings.setConvertWorkers(Integer.parseInt(options.get(OPTION_CONVERT_WORKERS)));
+    }
+    if (options.get(OPTION_LOG_OVERFLOW_POLICY) != null) {
+      settings.setLogOverflowPolicy(OverflowPolicy.parse(options.get(OPTION_LOG_OVERFLOW_POLICY)));
+    }
+    if (options.get(OPTION_STALL_TIMEOUT) != null) {
+      settings.setStallTimeoutSeconds(Long.parseLong(options.get(OPTION_STALL_TIMEOUT)));
+    }
+    settings.setDiagnosticsDirectory(options.get(OPTION_DIAGNOSTICS_DIR));
+    if (options.get(OPTION_RESUME) != null) {
+      settings.setResume(Boolean.parseBoolean(options.get(OPTION_RESUME)));
+    }
+    if (options.get(OPTION_INCREMENTAL) != null) {
+      settings.setIncremental(Boolean.parseBoolean(options.get(OPTION_INCREMENTAL)));
+    }
+    settings.setChangedSinceProperty(options.get(OPTION_CHANGED_SINCE_PROPERTY));
+    if (options.get(OPTION_NEO4J_RETRIES) != null) {
+      settings.setNeo4jMaxRetries(Integer.parseInt(options.get(OPTION_NEO4J_RETRIES)));
+    }
+    settings.setDeadLetterFile(options.get(OPTION_DEAD_LETTER_FILE));
+    settings.setReplayFile(options.get(OPTION_REPLAY));
+    if (options.get(OPTION_TRANSACTIONALITY) != null) {
+      settings.setTransactionality(
+          OrientTransactionality.parse(options.get(OPTION_TRANSACTIONALITY)));
+    }
 
     // checks on orientDbDir
     if (settings.getOrientDbPath() != null) {
@@ -0,0 +1,168 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.neo4j.driver.v1.Record;
+
+/**
+ * File of the Neo4j records that could not be stored in OrientDB, one JSON object per line with the
+ * phase of the record (vertices or edges), its Neo4j id, the error and the record itself. The file
+ * is created at the first record, so a clean import leaves no file behind. After fixing the data,
+ * the records are imported again with the replay option, which reads them from Neo4j by id.
+ */
+class ONeo4jImporterDeadLetters {
+
+  private final File file;
+  private Writer writer;
+  private long size;
+
+  ONeo4jImporterDeadLetters(File file) {
+    this.file = file;
+  }
+
+  /**
+   * @param path of the file, null for a new file in the directory given
+   * @param directory the temporary directory if null
+   */
+  static ONeo4jImporterDeadLetters create(String path, String directory) {
+    if (path != null) {
+      return new ONeo4jImporterDeadLetters(new File(path));
+    }
+    return new ONeo4jImporterDeadLetters(
+        new File(
+            directory != null ? directory : System.getProperty("java.io.tmpdir"),
+            "neo4j-importer-dead-letters-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + ".jsonl"));
+  }
+
+  /**
+   * Appends a record to the file. Errors writing the file are reported, the import goes on.
+   *
+   * @param phase ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE or EDGES_PHASE
+   * @param neo4jId
+   * @param neo4jRecord
+   * @param error
+   */
+  synchronized void add(String phase, long neo4jId, Record neo4jRecord, String error) {
+
+    size++;
+    ODocument line = new ODocument();
+    line.field("phase", phase);
+    line.field("id", neo4jId);
+    line.field("error", error);
+    line.field("record", neo4jRecord.asMap());
+    try {
+      if (writer == null) {
+        writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+      }
+      writer.write(line.toJSON(""));
+      writer.write('\n');
+      writer.flush();
+    } catch (IOException e) {
+      String mess =
+          "Could not write the "
+              + phase
+              + " record "
+              + neo4jId
+              + " to the dead-letter file "
+              + file.getAbsolutePath();
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+    }
+  }
+
+  /** Returns the number of records added. */
+  synchronized long size() {
+    return size;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  synchronized void close() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, e.getMessage());
+      }
+      writer = null;
+    }
+  }
+
+  /**
+   * Reads the ids of the records of a dead-letter file.
+   *
+   * @param file
+   * @return the ids of each phase, sorted and without duplicates
+   */
+  static Map<String, List<Long>> read(File file) throws IOException {
+
+    Map<String, TreeSet<Long>> ids = new LinkedHashMap<String, TreeSet<Long>>();
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        ODocument document = new ODocument().fromJSON(line);
+        String phase = document.field("phase");
+        TreeSet<Long> phaseIds = ids.get(phase);
+        if (phaseIds == null) {
+          phaseIds = new TreeSet<Long>();
+          ids.put(phase, phaseIds);
+        }
+        phaseIds.add(((Number) document.field("id")).longValue());
+      }
+    } finally {
+      reader.close();
+    }
+
+    Map<String, List<Long>> sorted = new LinkedHashMap<String, List<Long>>();
+    for (Map.Entry<String, TreeSet<Long>> entry : ids.entrySet()) {
+      sorted.put(entry.getKey(), new ArrayList<Long>(entry.getValue()));
+    }
+    return sorted;
+  }
+}
@@ -32,6 +32,9 @@ import org.neo4j.driver.v1.Session;
 /** Created by frank on 08/11/2016. */
 class ONeo4jImporterInitializer {
 
+  static final String ORIENTDB_USER = "admin";
+  static final String ORIENTDB_PASSWORD = "admin";
+
   private final String orientDbName;
   private final String orientDbProtocol;
   private long initializationStartTime;
@@ -81,7 +84,22 @@ class ONeo4jImporterInitializer {
     this.neo4jSession = neo4jSession;
   }
 
-  public Session initConnections() throws Exception {
+  /**
+   * Opens a new session on the target OrientDB database, bound to the current thread.
+   *
+   * @param orientDbName
+   * @return
+   */
+  static ODatabaseDocument openDatabase(String orientDbName) {
+    return ONeo4jImporterContext.getInstance()
+        .getOrientDBInstance()
+        .open(orientDbName, ORIENTDB_USER, ORIENTDB_PASSWORD);
+  }
+
+  /**
+   * @param openExisting whether the database exists already, as when resuming an import
+   */
+  public Session initConnections(boolean openExisting) throws Exception {
     String logString;
 
     this.initializationStartTime = System.currentTimeMillis();
@@ -92,6 +110,7 @@ class ONeo4jImporterInitializer {
         .info(this, "Trying connection to Neo4j...");
 
     ONeo4jConnectionManager connectionManager = new ONeo4jConnectionManager(this.sourceNeo4jInfo);
+    ONeo4jImporterContext.getInstance().setNeo4jConnectionManager(connectionManager);
     Session neo4jSession = connectionManager.getSession();
 
     logString = "Trying connection to Neo4j...Neo4j server is alive and connection succeeded.";
@@ -101,46 +120,45 @@ class ONeo4jImporterInitializer {
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\n");
     ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "Initializing OrientDB...");
 
-    // creating orientdb graph database
-    switch (this.orientDbProtocol) {
-      case "embedded":
-        ONeo4jImporterContext.getInstance()
-            .getOrientDBInstance()
-            .execute(
-                "create database "
-                    + this.orientDbName
-                    + " plocal users ( admin identified by 'admin' role admin)");
-        break;
-      case "plocal":
-        ONeo4jImporterContext.getInstance()
-            .getOrientDBInstance()
-            .execute(
-                "create database "
-                    + this.orientDbName
-                    + " plocal users ( admin identified by 'admin' role admin)");
-        break;
-      case "memory":
-        ONeo4jImporterContext.getInstance()
-            .getOrientDBInstance()
-            .execute(
-                "create database "
-                    + this.orientDbName
-                    + " memory users ( admin identified by 'admin' role admin)");
-        break;
-      case "remote":
-        String message =
-            "Cannot create a new database in remote. Try to create a new empty database and restart the migration.\nThe current job will be aborted.";
-        throw new RuntimeException(message);
-      default:
-        message = "Protocol not correct. Migration will be aborted.";
-        throw new RuntimeException(message);
+    // creating orientdb graph database, unless resuming the import into an existing one
+    if (!openExisting) {
+      switch (this.orientDbProtocol) {
+        case "embedded":
+          ONeo4jImporterContext.getInstance()
+              .getOrientDBInstance()
+              .execute(
+                  "create database "
+                      + this.orientDbName
+                      + " plocal users ( admin identified by 'admin' role admin)");
+          break;
+        case "plocal":
+          ONeo4jImporterContext.getInstance()
+              .getOrientDBInstance()
+              .execute(
+                  "create database "
+                      + this.orientDbName
+                      + " plocal users ( admin identified by 'admin' role admin)");
+          break;
+        case "memory":
+          ONeo4jImporterContext.getInstance()
+              .getOrientDBInstance()
+              .execute(
+                  "create database "
+                      + this.orientDbName
+                      + " memory users ( admin identified by 'admin' role admin)");
+          break;
+        case "remote":
+          String message =
+              "Cannot create a new database in remote. Try to create a new empty database and restart the migration.\nThe current job will be aborted.";
+          throw new RuntimeException(message);
+        default:
+          message = "Protocol not correct. Migration will be aborted.";
+          throw new RuntimeException(message);
+      }
     }
 
-    // acquiring connection to the just created database
-    oDb =
-        ONeo4jImporterContext.getInstance()
-            .getOrientDBInstance()
-            .open(this.orientDbName, "admin", "admin");
+    // acquiring connection to the database
+    oDb = openDatabase(this.orientDbName);
 
     this.orientVertexClass = "";
 
@@ -0,0 +1,95 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import java.util.Map;
+
+/**
+ * JMX view of a running import job, registered by the plugin under
+ * com.orientechnologies.orient.neo4jimporter:type=ImportJob,database=&lt;name&gt;. Counts are live
+ * values of the importer metrics; stage timings are keyed by the stage timer names (e.g.
+ * orientdb.edges.commit).
+ */
+public interface ONeo4jImporterJobMXBean {
+
+  String getDatabase();
+
+  /** Elements the importer is working on: vertices, edges, indices... */
+  String getImportingElements();
+
+  long getImportedVertices();
+
+  long getImportedEdges();
+
+  double getTotalNodes();
+
+  double getTotalRelationships();
+
+  /** Elements per second of the current phase, over the last seconds. */
+  double getCurrentRate();
+
+  /** Exponentially-weighted moving elements per second of the current phase. */
+  double getMovingRate();
+
+  /** Estimated time left of the current phase, -1 if unknown. */
+  long getEtaMillis();
+
+  double getFetchedQueueDepth();
+
+  double getConvertedQueueDepth();
+
+  double getPipelineQueueCapacity();
+
+  double getBatchRecords();
+
+  double getBatchTargetBytes();
+
+  int getNodeImportWorkers();
+
+  int getEdgeImportWorkers();
+
+  int getConvertWorkers();
+
+  Map<String, Long> getCounters();
+
+  Map<String, Long> getStageCounts();
+
+  Map<String, Double> getStageP50Millis();
+
+  Map<String, Double> getStageP99Millis();
+
+  Map<String, Double> getStageMaxMillis();
+
+  boolean isPaused();
+
+  /** Stops the writes of the job after the current batch has been committed, until resumed. */
+  void pause();
+
+  void resume();
+
+  /** Max records per second written by the job, 0 when unlimited. */
+  double getMaxRecordsPerSecond();
+
+  /**
+   * @param maxRecordsPerSecond 0 to remove the limit
+   */
+  void throttle(double maxRecordsPerSecond);
+}
@@ -0,0 +1,265 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterControl;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.listener.OPhaseProgress;
+import com.orientechnologies.orient.listener.OProgressMonitor;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * MXBean of a running import job, reading the statistics, the progress monitor and the control of
+ * the importer context the job was started with.
+ */
+public class ONeo4jImporterJobManagement implements ONeo4jImporterJobMXBean {
+
+  public static final String DOMAIN = "com.orientechnologies.orient.neo4jimporter";
+
+  private final ONeo4jImporterSettings settings;
+  private final ONeo4jImporterContext context;
+  private ObjectName name;
+
+  public ONeo4jImporterJobManagement(
+      ONeo4jImporterSettings settings, ONeo4jImporterContext context) {
+    this.settings = settings;
+    this.context = context;
+  }
+
+  /**
+   * Registers the MXBean in the platform MBean server. A failure, e.g. because another job is
+   * importing the same database, is only reported: the import goes on without JMX.
+   */
+  public void register() {
+    try {
+      ObjectName objectName =
+          new ObjectName(
+              DOMAIN + ":type=ImportJob,database=" + ObjectName.quote(this.getDatabase()));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      this.name = objectName;
+    } catch (JMException e) {
+      String mess = "The import job cannot be monitored through JMX.";
+      context.printExceptionMessage(e, mess, "warn");
+    }
+  }
+
+  public void unregister() {
+    if (name == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(name);
+    } catch (JMException e) {
+      context.printExceptionMessage(e, "", "warn");
+    }
+    name = null;
+    // a paused job must not stay blocked once nobody can resume it
+    context.getControl().resume();
+  }
+
+  @Override
+  public String getDatabase() {
+    return settings.getOrientDbPath();
+  }
+
+  @Override
+  public String getImportingElements() {
+    return this.getStatistics().importingElements;
+  }
+
+  @Override
+  public long getImportedVertices() {
+    return this.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_VERTICES).get();
+  }
+
+  @Override
+  public long getImportedEdges() {
+    return this.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_EDGES).get();
+  }
+
+  @Override
+  public double getTotalNodes() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.NEO4J_TOTAL_NODES);
+  }
+
+  @Override
+  public double getTotalRelationships() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.NEO4J_TOTAL_RELATIONSHIPS);
+  }
+
+  @Override
+  public double getCurrentRate() {
+    OPhaseProgress progress = this.getProgress();
+    return progress == null ? 0 : progress.getCurrentRate();
+  }
+
+  @Override
+  public double getMovingRate() {
+    OPhaseProgress progress = this.getProgress();
+    return progress == null ? 0 : progress.getMovingRate();
+  }
+
+  @Override
+  public long getEtaMillis() {
+    OPhaseProgress progress = this.getProgress();
+    return progress == null ? -1 : progress.getEtaMillis();
+  }
+
+  @Override
+  public double getFetchedQueueDepth() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.PIPELINE_FETCHED);
+  }
+
+  @Override
+  public double getConvertedQueueDepth() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.PIPELINE_CONVERTED);
+  }
+
+  @Override
+  public double getPipelineQueueCapacity() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.PIPELINE_QUEUE_CAPACITY);
+  }
+
+  @Override
+  public double getBatchRecords() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.BATCH_RECORDS);
+  }
+
+  @Override
+  public double getBatchTargetBytes() {
+    return this.getStatistics().get(ONeo4jImporterStatistics.BATCH_TARGET_BYTES);
+  }
+
+  @Override
+  public int getNodeImportWorkers() {
+    return settings.getNodeImportWorkers();
+  }
+
+  @Override
+  public int getEdgeImportWorkers() {
+    return settings.getEdgeImportWorkers();
+  }
+
+  @Override
+  public int getConvertWorkers() {
+    return settings.getConvertWorkers();
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    Map<String, Long> counters = new TreeMap<String, Long>();
+    for (Map.Entry<String, OMetricsRegistry.Counter> entry :
+        this.getMetrics().getCounters().entrySet()) {
+      counters.put(entry.getKey(), entry.getValue().get());
+    }
+    return counters;
+  }
+
+  @Override
+  public Map<String, Long> getStageCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, OMetricsRegistry.Timer> entry :
+        this.getMetrics().getTimers().entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().getCount());
+    }
+    return counts;
+  }
+
+  @Override
+  public Map<String, Double> getStageP50Millis() {
+    return this.getStagePercentileMillis(50);
+  }
+
+  @Override
+  public Map<String, Double> getStageP99Millis() {
+    return this.getStagePercentileMillis(99);
+  }
+
+  @Override
+  public Map<String, Double> getStageMaxMillis() {
+    return this.getStagePercentileMillis(100);
+  }
+
+  @Override
+  public boolean isPaused() {
+    return context.getControl().isPaused();
+  }
+
+  @Override
+  public void pause() {
+    context.getControl().pause();
+    context.getMessageHandler().warn(this, "\nImport paused through JMX.\n");
+  }
+
+  @Override
+  public void resume() {
+    context.getControl().resume();
+    context.getMessageHandler().warn(this, "\nImport resumed through JMX.\n");
+  }
+
+  @Override
+  public double getMaxRecordsPerSecond() {
+    return context.getControl().getMaxRecordsPerSecond();
+  }
+
+  @Override
+  public void throttle(double maxRecordsPerSecond) {
+    ONeo4jImporterControl control = context.getControl();
+    control.setMaxRecordsPerSecond(maxRecordsPerSecond);
+    context
+        .getMessageHandler()
+        .warn(
+            this,
+            "\nImport throttled through JMX to "
+                + (maxRecordsPerSecond == 0 ? "unlimited" : maxRecordsPerSecond)
+                + " records per second.\n");
+  }
+
+  private Map<String, Double> getStagePercentileMillis(double percentile) {
+    Map<String, Double> millis = new TreeMap<String, Double>();
+    for (Map.Entry<String, OMetricsRegistry.Timer> entry :
+        this.getMetrics().getTimers().entrySet()) {
+      millis.put(entry.getKey(), entry.getValue().getNanosAtPercentile(percentile) / 1e6);
+    }
+    return millis;
+  }
+
+  private OPhaseProgress getProgress() {
+    OProgressMonitor progressMonitor = context.getProgressMonitor();
+    return progressMonitor == null ? null : progressMonitor.getProgress();
+  }
+
+  private ONeo4jImporterStatistics getStatistics() {
+    return context.getStatistics();
+  }
+
+  private OMetricsRegistry getMetrics() {
+    return context.getStatistics().getMetrics();
+  }
+}
@@ -22,10 +22,12 @@ package com.orientechnologies.orient.neo4jimporter;
 
 import static com.orientechnologies.orient.neo4jimporter.ONeo4jImporter.PROGRAM_NAME;
 
+import com.orientechnologies.orient.context.ONeo4jImporterAsyncMessageHandler;
 import com.orientechnologies.orient.context.ONeo4jImporterContext;
 import com.orientechnologies.orient.context.ONeo4jImporterMessageHandler;
 import com.orientechnologies.orient.core.OConstants;
 import com.orientechnologies.orient.listener.OProgressMonitor;
+import com.orientechnologies.orient.listener.OStallWatchdog;
 import com.orientechnologies.orient.output.OPluginMessageHandler;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -43,7 +45,10 @@ public class ONeo4jImporterMain {
     // not working inside the orientdb server context: this execution is due to a script call
     ONeo4jImporterContext.newInstance(serverInitUrl);
 
-    ONeo4jImporterContext.getInstance().setMessageHandler(messageHandler);
+    // the import threads never wait for the console
+    ONeo4jImporterAsyncMessageHandler asyncMessageHandler =
+        new ONeo4jImporterAsyncMessageHandler(messageHandler, settings.getLogOverflowPolicy());
+    ONeo4jImporterContext.getInstance().setMessageHandler(asyncMessageHandler);
     ONeo4jImporterContext.getInstance().getMessageHandler().info(ONeo4jImporterMain.class, "\n");
     ONeo4jImporterContext.getInstance()
         .getMessageHandler()
@@ -62,6 +67,12 @@ public class ONeo4jImporterMain {
       OProgressMonitor progressMonitor = new OProgressMonitor();
       progressMonitor.initialize();
 
+      // Stall watchdog, dumping the import threads when the counters don't move anymore
+      if (settings.getStallTimeoutSeconds() > 0) {
+        new OStallWatchdog(settings.getStallTimeoutSeconds(), settings.getDiagnosticsDirectory())
+            .initialize();
+      }
+
       // Timer for statistics notifying
       Timer timer = new Timer();
       try {
@@ -88,6 +99,8 @@ public class ONeo4jImporterMain {
       ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
       ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
       throw new RuntimeException(e);
+    } finally {
+      asyncMessageHandler.close();
     }
     return returnValue;
   }
@@ -28,6 +28,7 @@ import com.orientechnologies.orient.core.db.OrientDB;
 import com.orientechnologies.orient.core.exception.OConfigurationException;
 import com.orientechnologies.orient.http.OServerCommandNeo4jImporter;
 import com.orientechnologies.orient.listener.OProgressMonitor;
+import com.orientechnologies.orient.listener.OStallWatchdog;
 import com.orientechnologies.orient.output.OPluginMessageHandler;
 import com.orientechnologies.orient.server.OServer;
 import com.orientechnologies.orient.server.config.OServerParameterConfiguration;
@@ -73,6 +74,17 @@ public class ONeo4jImporterPlugin extends OServerPluginAbstract {
       OProgressMonitor progressMonitor = new OProgressMonitor();
       progressMonitor.initialize();
 
+      // Stall watchdog, dumping the import threads when the counters don't move anymore
+      if (settings.getStallTimeoutSeconds() > 0) {
+        new OStallWatchdog(settings.getStallTimeoutSeconds(), settings.getDiagnosticsDirectory())
+            .initialize();
+      }
+
+      // MXBean for the monitoring and the control of the job
+      ONeo4jImporterJobManagement management =
+          new ONeo4jImporterJobManagement(settings, ONeo4jImporterContext.getInstance());
+      management.register();
+
       // Timer for statistics notifying
       Timer timer = new Timer();
       try {
@@ -91,6 +103,7 @@ public class ONeo4jImporterPlugin extends OServerPluginAbstract {
 
       } finally {
         timer.cancel();
+        management.unregister();
       }
 
     } catch (Exception e) {
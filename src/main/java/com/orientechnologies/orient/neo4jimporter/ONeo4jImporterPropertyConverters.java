@@ -0,0 +1,225 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.neo4j.driver.internal.value.BooleanValue;
+import org.neo4j.driver.internal.value.BytesValue;
+import org.neo4j.driver.internal.value.FloatValue;
+import org.neo4j.driver.internal.value.IntegerValue;
+import org.neo4j.driver.internal.value.ListValue;
+import org.neo4j.driver.internal.value.StringValue;
+import org.neo4j.driver.v1.Value;
+
+/**
+ * Table of the property converters of each Neo4j label and relationship type. It's learned from a
+ * sample of the nodes and relationships before the data load: each property key gets the converter
+ * of the type its values had in the sample, so that the load loop dispatches once per property
+ * instead of going through the type checks of the generic conversion. Properties not seen in the
+ * sample, and values of a type other than the sampled one, are converted through the generic path.
+ *
+ * <p>The table is filled before the load and only read during it, by all the import workers.
+ */
+class ONeo4jImporterPropertyConverters {
+
+  static final int SAMPLE_SIZE = 100;
+
+  /**
+   * Conversions specialized by Neo4j type, consistent with the generic one, with the OrientDB type
+   * of the properties whose values they convert.
+   */
+  enum Converter {
+    STRING(OType.STRING) {
+      @Override
+      Object convert(Value value) {
+        return value instanceof StringValue ? value.asString() : GENERIC.convert(value);
+      }
+    },
+    INTEGER(OType.LONG) {
+      @Override
+      Object convert(Value value) {
+        if (!(value instanceof IntegerValue)) {
+          return GENERIC.convert(value);
+        }
+        return ONeo4jImporterUtils.narrowInteger(value.asLong());
+      }
+    },
+    FLOAT(OType.DOUBLE) {
+      @Override
+      Object convert(Value value) {
+        if (!(value instanceof FloatValue)) {
+          return GENERIC.convert(value);
+        }
+        return ONeo4jImporterUtils.narrowFloat(value.asDouble());
+      }
+    },
+    BOOLEAN(OType.BOOLEAN) {
+      @Override
+      Object convert(Value value) {
+        return value instanceof BooleanValue ? value.asBoolean() : GENERIC.convert(value);
+      }
+    },
+    BYTES(OType.BINARY) {
+      @Override
+      Object convert(Value value) {
+        return value instanceof BytesValue ? value.asByteArray() : GENERIC.convert(value);
+      }
+    },
+    LIST(OType.EMBEDDEDLIST) {
+      @Override
+      Object convert(Value value) {
+        return value instanceof ListValue ? value.asList() : GENERIC.convert(value);
+      }
+    },
+    GENERIC(null) {
+      @Override
+      Object convert(Value value) {
+        return ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(value);
+      }
+    };
+
+    // the type of the property declared in OrientDB: Neo4j numbers are 64 bits
+    private final OType orientType;
+
+    Converter(OType orientType) {
+      this.orientType = orientType;
+    }
+
+    /** Returns the OrientDB type of the property, null if it cannot be declared. */
+    OType getOrientType() {
+      return orientType;
+    }
+
+    abstract Object convert(Value value);
+
+    static Converter forValue(Value value) {
+      if (value instanceof StringValue) {
+        return STRING;
+      } else if (value instanceof IntegerValue) {
+        return INTEGER;
+      } else if (value instanceof FloatValue) {
+        return FLOAT;
+      } else if (value instanceof BooleanValue) {
+        return BOOLEAN;
+      } else if (value instanceof BytesValue) {
+        return BYTES;
+      } else if (value instanceof ListValue) {
+        return LIST;
+      }
+      return GENERIC;
+    }
+  }
+
+  private final Map<String, Map<String, Converter>> labelConverters =
+      new HashMap<String, Map<String, Converter>>();
+  private final Map<String, Map<String, Converter>> relationshipTypeConverters =
+      new HashMap<String, Map<String, Converter>>();
+
+  /**
+   * Learns the converters of a label from the properties of one of the sampled nodes.
+   *
+   * @param label
+   * @param properties
+   */
+  void learnLabel(String label, Value properties) {
+    learn(labelConverters, label, properties);
+  }
+
+  /**
+   * Learns the converters of a relationship type from the properties of one of the sampled
+   * relationships.
+   *
+   * @param relationshipType
+   * @param properties
+   */
+  void learnRelationshipType(String relationshipType, Value properties) {
+    learn(relationshipTypeConverters, relationshipType, properties);
+  }
+
+  private static void learn(
+      Map<String, Map<String, Converter>> table, String name, Value properties) {
+    Map<String, Converter> converters = table.get(name);
+    if (converters == null) {
+      converters = new HashMap<String, Converter>();
+      table.put(name, converters);
+    }
+    for (String key : properties.keys()) {
+      Value value = properties.get(key);
+      if (value.isNull()) {
+        continue;
+      }
+      Converter converter = Converter.forValue(value);
+      Converter known = converters.get(key);
+      if (known == null) {
+        converters.put(key, converter);
+      } else if (known != converter) {
+        // mixed types in the sample: each value will be checked
+        converters.put(key, Converter.GENERIC);
+      }
+    }
+  }
+
+  /**
+   * Returns the converters of the properties of nodes with the passed (first) label. Nodes with no
+   * labels have no converters.
+   *
+   * @param label
+   * @return
+   */
+  Map<String, Converter> forLabel(String label) {
+    Map<String, Converter> converters = label == null ? null : labelConverters.get(label);
+    return converters != null ? converters : Collections.<String, Converter>emptyMap();
+  }
+
+  Map<String, Converter> forRelationshipType(String relationshipType) {
+    Map<String, Converter> converters = relationshipTypeConverters.get(relationshipType);
+    return converters != null ? converters : Collections.<String, Converter>emptyMap();
+  }
+
+  /**
+   * Converts the properties of a node or of a relationship. The returned map has room for the
+   * internal properties the importer adds.
+   *
+   * @param properties
+   * @param converters
+   * @return
+   */
+  static Map<String, Object> convertProperties(
+      Value properties, Map<String, Converter> converters) {
+
+    Map<String, Object> convertedProperties =
+        new LinkedHashMap<String, Object>((properties.size() + 2) * 4 / 3 + 1);
+    for (String key : properties.keys()) {
+      Value value = properties.get(key);
+      Converter converter = converters.get(key);
+      convertedProperties.put(
+          key,
+          converter != null
+              ? converter.convert(value)
+              : ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(value));
+    }
+    return convertedProperties;
+  }
+}
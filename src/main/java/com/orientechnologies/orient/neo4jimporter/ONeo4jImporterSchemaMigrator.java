@@ -23,6 +23,7 @@ package com.orientechnologies.orient.neo4jimporter;
 import static com.orientechnologies.orient.neo4jimporter.ONeo4jImporter.PROGRAM_NAME;
 
 import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterEvents;
 import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
 import com.orientechnologies.orient.core.OConstants;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
@@ -42,6 +43,7 @@ class ONeo4jImporterSchemaMigrator {
   private DecimalFormat df;
   private ODatabaseDocument oDb;
   private ONeo4jImporterStatistics statistics;
+  private ONeo4jImporterCheckpoint checkpoint;
   private long importingSchemaStartTime;
   private long importingSchemaStopTime;
 
@@ -49,11 +51,13 @@ class ONeo4jImporterSchemaMigrator {
       String keepLogString,
       DecimalFormat df,
       ODatabaseDocument oDb,
-      ONeo4jImporterStatistics statistics) {
+      ONeo4jImporterStatistics statistics,
+      ONeo4jImporterCheckpoint checkpoint) {
     this.keepLogString = keepLogString;
     this.df = df;
     this.oDb = oDb;
     this.statistics = statistics;
+    this.checkpoint = checkpoint;
   }
 
   public long getImportingSchemaStartTime() {
@@ -68,19 +72,25 @@ class ONeo4jImporterSchemaMigrator {
 
     try {
 
-      /** Importing constraints */
-      this.statistics.importingElements = "constraints";
-      this.importConstraints(neo4jSession);
-      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
-      this.statistics.importingElements = "nothing";
+      /** Importing constraints, unless done by the previous run of a resumed import */
+      if (!checkpoint.isCompleted("constraints")) {
+        this.statistics.startPhase("constraints");
+        this.importConstraints(neo4jSession);
+        ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+        this.statistics.endPhase();
+        checkpoint.phaseCompleted(oDb, "constraints");
+      }
 
       /** Importing indices */
-      this.statistics.importingElements = "indices";
-      this.importIndices(neo4jSession);
-      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
-      this.statistics.importingElements = "nothing";
+      if (!checkpoint.isCompleted("indices")) {
+        this.statistics.startPhase("indices");
+        this.importIndices(neo4jSession);
+        ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+        this.statistics.endPhase();
+        checkpoint.phaseCompleted(oDb, "indices");
+      }
 
       String logString =
           PROGRAM_NAME + " - v." + OConstants.getVersion() + " - PHASE 3 completed!\n";
@@ -111,7 +121,7 @@ class ONeo4jImporterSchemaMigrator {
               .run(query)
               .list(); // storing result in a list in order to avoid another similar query later.
       // List's dimension is not a problem.
-      statistics.neo4jTotalIndices = indices.size();
+      statistics.set(ONeo4jImporterStatistics.NEO4J_TOTAL_INDICES, indices.size());
     } catch (Exception e) {
       String mess = "";
       ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
@@ -123,7 +133,7 @@ class ONeo4jImporterSchemaMigrator {
 
       for (Record currentIndexDefinition : indices) {
 
-        statistics.neo4jIndicesCounter++;
+        statistics.increment(ONeo4jImporterStatistics.NEO4J_INDICES);
         String indexDescription = currentIndexDefinition.get("description").asString();
 
         // the label this index is on (Neo4j indices are allowed on nodes only)
@@ -136,7 +146,7 @@ class ONeo4jImporterSchemaMigrator {
             .getMessageHandler()
             .debug(this, "all index: on label " + neo4jLabelOfIndex);
 
-        statistics.neo4jNonConstraintsIndicesCounter++;
+        statistics.increment(ONeo4jImporterStatistics.NEO4J_NON_CONSTRAINTS_INDICES);
 
         ONeo4jImporterContext.getInstance()
             .getMessageHandler()
@@ -209,9 +219,11 @@ class ONeo4jImporterSchemaMigrator {
                       + rawProps
                       + ") notunique_hash_index";
             }
+            ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
             oDb.command(statement);
+            event.commit(orientDBClass.getName(), statement);
 
-            statistics.orientDBImportedIndicesCounter++;
+            statistics.increment(ONeo4jImporterStatistics.ORIENTDB_INDICES);
           }
         } catch (Exception e) {
           String mess =
@@ -296,15 +308,17 @@ class ONeo4jImporterSchemaMigrator {
       while (result.hasNext()) {
         Record currentRecord = result.next();
         Map<String, Object> neo4jConstraintDefinition = currentRecord.asMap();
-        statistics.neo4jTotalConstraints++;
+        statistics.increment(ONeo4jImporterStatistics.NEO4J_TOTAL_CONSTRAINTS);
         if ("UNIQUENESS".equals(neo4jConstraintDefinition.get("type"))) {
-          statistics.neo4jTotalUniqueConstraints++;
+          statistics.increment(ONeo4jImporterStatistics.NEO4J_TOTAL_UNIQUE_CONSTRAINTS);
         }
         if ("NODE_PROPERTY_EXISTENCE".equals(neo4jConstraintDefinition.get("type"))) {
-          statistics.neo4jTotalNodePropertyExistenceConstraints++;
+          statistics.increment(
+              ONeo4jImporterStatistics.NEO4J_TOTAL_NODE_PROPERTY_EXISTENCE_CONSTRAINTS);
         }
         if ("RELATIONSHIP_PROPERTY_EXISTENCE".equals(neo4jConstraintDefinition.get("type"))) {
-          statistics.neo4jTotalRelPropertyExistenceConstraints++;
+          statistics.increment(
+              ONeo4jImporterStatistics.NEO4J_TOTAL_REL_PROPERTY_EXISTENCE_CONSTRAINTS);
         }
       }
     } catch (Neo4jException e) {
@@ -328,7 +342,7 @@ class ONeo4jImporterSchemaMigrator {
       while (result.hasNext()) {
         Record currentRecord = result.next();
         Map<String, Object> neo4jConstraintDefinition = currentRecord.asMap();
-        statistics.neo4jConstraintsCounter++;
+        statistics.increment(ONeo4jImporterStatistics.NEO4J_CONSTRAINTS);
 
         // determine the type of the constraints - different actions will need to be taken according
         // to this type
@@ -414,7 +428,7 @@ class ONeo4jImporterSchemaMigrator {
           // taking actions depending on the type of the constraints
           if ("UNIQUENESS".equals(neo4jConstraintType)) {
 
-            statistics.neo4jUniqueConstraintsCounter++;
+            statistics.increment(ONeo4jImporterStatistics.NEO4J_UNIQUE_CONSTRAINTS);
 
             try {
 
@@ -441,6 +455,7 @@ class ONeo4jImporterSchemaMigrator {
                       .getSchema()
                       .getClass(orientDBIndexClass)
                       .areIndexed(neo4jPropKey)) {
+                    ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
                     orientDBIndex =
                         oDb.getMetadata()
                             .getSchema()
@@ -449,6 +464,7 @@ class ONeo4jImporterSchemaMigrator {
                             .createIndex(
                                 OClass.INDEX_TYPE.UNIQUE,
                                 new ODocument().field("ignoreNullValues", true));
+                    event.commit(orientDBIndexClass, "create unique index on " + neo4jPropKey);
                     ONeo4jImporterContext.getInstance()
                         .getMessageHandler()
                         .debug(this, "\nCreated index: " + orientDBIndex);
@@ -458,8 +474,8 @@ class ONeo4jImporterSchemaMigrator {
                       .getMessageHandler()
                       .debug(this, "\nIndex already exists: " + orientDBIndex);
 
-                  statistics.orientDBImportedUniqueConstraintsCounter++;
-                  statistics.orientDBImportedConstraintsCounter++;
+                  statistics.increment(ONeo4jImporterStatistics.ORIENTDB_UNIQUE_CONSTRAINTS);
+                  statistics.increment(ONeo4jImporterStatistics.ORIENTDB_CONSTRAINTS);
                 }
               }
             } catch (Exception e) {
@@ -480,6 +496,7 @@ class ONeo4jImporterSchemaMigrator {
                 logString = "Trying to create a NOT UNIQUE Index as workaround...";
                 ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
 
+                ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
                 OIndex orientDBIndex =
                     oDb.getMetadata()
                         .getSchema()
@@ -488,8 +505,9 @@ class ONeo4jImporterSchemaMigrator {
                         .createIndex(
                             OClass.INDEX_TYPE.NOTUNIQUE,
                             new ODocument().field("ignoreNullValues", true));
+                event.commit(orientDBIndexClass, "create not unique index on " + neo4jPropKey);
 
-                statistics.orientDBImportedNotUniqueWorkaroundCounter++;
+                statistics.increment(ONeo4jImporterStatistics.ORIENTDB_NOT_UNIQUE_WORKAROUNDS);
 
               } catch (Exception e2) {
                 String mess2 = "";
@@ -507,7 +525,13 @@ class ONeo4jImporterSchemaMigrator {
         }
 
         // print progress
-        value = 100 * (statistics.neo4jConstraintsCounter / statistics.neo4jTotalConstraints);
+        value =
+            100.0
+                * statistics.getMetrics().counter(ONeo4jImporterStatistics.NEO4J_CONSTRAINTS).get()
+                / statistics
+                    .getMetrics()
+                    .counter(ONeo4jImporterStatistics.NEO4J_TOTAL_CONSTRAINTS)
+                    .get();
 
         if ("UNIQUENESS".equals(neo4jConstraintType)) {
           //          keepLogString =
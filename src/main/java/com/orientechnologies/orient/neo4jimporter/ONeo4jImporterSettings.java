@@ -20,6 +20,8 @@
 
 package com.orientechnologies.orient.neo4jimporter;
 
+import com.orientechnologies.orient.context.ONeo4jImporterAsyncMessageHandler.OverflowPolicy;
+
 /**
  * OrientDB's Neo4j Importer - Settings Class
  *
@@ -34,6 +36,23 @@ public class ONeo4jImporterSettings {
   private String orientDbProtocol;
   private boolean overwriteOrientDbDir = false;
   private boolean createIndexOnNeo4jRelID = false;
+  private long nodeIdMapMemoryBudgetMB = 0; // 0 means a quarter of the max heap
+  private String nodeIdMapDirectory;
+  private int nodeImportWorkers = 1;
+  private int edgeImportWorkers = 1;
+  private OrientTransactionality transactionality = OrientTransactionality.TX;
+  private boolean typedProperties = false;
+  private int pipelineQueueCapacity = 10000; // records, 0 disables the pipeline
+  private int convertWorkers = 1;
+  private OverflowPolicy logOverflowPolicy = OverflowPolicy.OVERWRITE;
+  private long stallTimeoutSeconds = 300; // 0 disables the stall watchdog
+  private String diagnosticsDirectory; // null means the temporary directory
+  private boolean resume = false; // continues the import from the checkpoint in the database
+  private boolean incremental = false; // syncs the changes of Neo4j into a migrated database
+  private String changedSinceProperty; // timestamp (ms) of the last change, null if none
+  private int neo4jMaxRetries = 5; // of a query after a transient failure of Neo4j
+  private String deadLetterFile; // of the records failing to save, null for a new file
+  private String replayFile; // dead-letter file to import again into a migrated database
 
   private int logLevel;
 
@@ -113,6 +132,142 @@ public class ONeo4jImporterSettings {
     this.createIndexOnNeo4jRelID = createIndexOnNeo4jRelID;
   }
 
+  public long getNodeIdMapMemoryBudgetMB() {
+    return nodeIdMapMemoryBudgetMB;
+  }
+
+  public void setNodeIdMapMemoryBudgetMB(long nodeIdMapMemoryBudgetMB) {
+    this.nodeIdMapMemoryBudgetMB = nodeIdMapMemoryBudgetMB;
+  }
+
+  public String getNodeIdMapDirectory() {
+    return nodeIdMapDirectory;
+  }
+
+  public void setNodeIdMapDirectory(String nodeIdMapDirectory) {
+    this.nodeIdMapDirectory = nodeIdMapDirectory;
+  }
+
+  public int getNodeImportWorkers() {
+    return nodeImportWorkers;
+  }
+
+  public void setNodeImportWorkers(int nodeImportWorkers) {
+    this.nodeImportWorkers = nodeImportWorkers;
+  }
+
+  public int getEdgeImportWorkers() {
+    return edgeImportWorkers;
+  }
+
+  public void setEdgeImportWorkers(int edgeImportWorkers) {
+    this.edgeImportWorkers = edgeImportWorkers;
+  }
+
+  public boolean isTypedProperties() {
+    return typedProperties;
+  }
+
+  public void setTypedProperties(boolean typedProperties) {
+    this.typedProperties = typedProperties;
+  }
+
+  public int getPipelineQueueCapacity() {
+    return pipelineQueueCapacity;
+  }
+
+  public void setPipelineQueueCapacity(int pipelineQueueCapacity) {
+    this.pipelineQueueCapacity = pipelineQueueCapacity;
+  }
+
+  public int getConvertWorkers() {
+    return convertWorkers;
+  }
+
+  public void setConvertWorkers(int convertWorkers) {
+    this.convertWorkers = convertWorkers;
+  }
+
+  public OverflowPolicy getLogOverflowPolicy() {
+    return logOverflowPolicy;
+  }
+
+  public void setLogOverflowPolicy(OverflowPolicy logOverflowPolicy) {
+    this.logOverflowPolicy = logOverflowPolicy;
+  }
+
+  public long getStallTimeoutSeconds() {
+    return stallTimeoutSeconds;
+  }
+
+  public void setStallTimeoutSeconds(long stallTimeoutSeconds) {
+    this.stallTimeoutSeconds = stallTimeoutSeconds;
+  }
+
+  public String getDiagnosticsDirectory() {
+    return diagnosticsDirectory;
+  }
+
+  public void setDiagnosticsDirectory(String diagnosticsDirectory) {
+    this.diagnosticsDirectory = diagnosticsDirectory;
+  }
+
+  public boolean isResume() {
+    return resume;
+  }
+
+  public void setResume(boolean resume) {
+    this.resume = resume;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public String getChangedSinceProperty() {
+    return changedSinceProperty;
+  }
+
+  public void setChangedSinceProperty(String changedSinceProperty) {
+    this.changedSinceProperty = changedSinceProperty;
+  }
+
+  public int getNeo4jMaxRetries() {
+    return neo4jMaxRetries;
+  }
+
+  public void setNeo4jMaxRetries(int neo4jMaxRetries) {
+    this.neo4jMaxRetries = neo4jMaxRetries;
+  }
+
+  public String getDeadLetterFile() {
+    return deadLetterFile;
+  }
+
+  public void setDeadLetterFile(String deadLetterFile) {
+    this.deadLetterFile = deadLetterFile;
+  }
+
+  public String getReplayFile() {
+    return replayFile;
+  }
+
+  public void setReplayFile(String replayFile) {
+    this.replayFile = replayFile;
+  }
+
+  public OrientTransactionality getTransactionality() {
+    return transactionality;
+  }
+
+  public void setTransactionality(OrientTransactionality transactionality) {
+    this.transactionality = transactionality;
+  }
+
   public int getLogLevel() {
     return this.logLevel;
   }
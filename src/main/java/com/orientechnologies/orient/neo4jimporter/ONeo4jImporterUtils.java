@@ -30,10 +30,12 @@ import org.neo4j.driver.internal.value.BooleanValue;
 import org.neo4j.driver.internal.value.BytesValue;
 import org.neo4j.driver.internal.value.FloatValue;
 import org.neo4j.driver.internal.value.IntegerValue;
+import org.neo4j.driver.internal.value.ListValue;
 import org.neo4j.driver.internal.value.StringValue;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Value;
 
 /** Created by frank on 13/11/2016. */
 public class ONeo4jImporterUtils {
@@ -164,14 +166,16 @@ public class ONeo4jImporterUtils {
           // get just the first node with the specific label and
           Record currentNode = result.next();
 
-          ONeo4jImporterContext.getInstance()
-              .getMessageHandler()
-              .debug(
-                  ONeo4jImporterUtils.class,
-                  "debugCounter is: "
-                      + debugCounter
-                      + ". Working on node "
-                      + currentNode.get("id").asString());
+          if (ONeo4jImporterContext.getInstance().isDebugEnabled()) {
+            ONeo4jImporterContext.getInstance()
+                .getMessageHandler()
+                .debug(
+                    ONeo4jImporterUtils.class,
+                    "debugCounter is: "
+                        + debugCounter
+                        + ". Working on node "
+                        + currentNode.get("id").asString());
+          }
           Object propertyValue = currentNode.get("targetProp");
           if (propertyValue != null) {
 
@@ -310,6 +314,48 @@ public class ONeo4jImporterUtils {
     }
   }
 
+  /**
+   * Converts a Neo4j property value to the Java value stored in OrientDB. Neo4j integers and floats
+   * are 64 bits: they are stored as Integer and Float when they fit, as Long and Double otherwise,
+   * so no precision is lost and no exception is thrown on the way.
+   */
+  public static Object convertValueTypeFromNeo4jToJava(Value myPropertyValue) {
+
+    if (null == myPropertyValue) {
+      return null;
+    } else if (myPropertyValue instanceof StringValue) {
+      return myPropertyValue.asString();
+    } else if (myPropertyValue instanceof IntegerValue) {
+      return narrowInteger(myPropertyValue.asLong());
+    } else if (myPropertyValue instanceof BooleanValue) {
+      return myPropertyValue.asBoolean();
+    } else if (myPropertyValue instanceof BytesValue) {
+      return myPropertyValue.asByteArray();
+    } else if (myPropertyValue instanceof FloatValue) {
+      return narrowFloat(myPropertyValue.asDouble());
+    } else if (myPropertyValue instanceof ListValue) {
+      return myPropertyValue.asList();
+    }
+    return myPropertyValue.asString();
+  }
+
+  /** Returns a Neo4j integer as an Integer if it fits, as a Long otherwise. */
+  static Number narrowInteger(long longValue) {
+    if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+      return (int) longValue;
+    }
+    return longValue;
+  }
+
+  /** Returns a Neo4j float as a Float if no precision is lost, as a Double otherwise. */
+  static Number narrowFloat(double doubleValue) {
+    float floatValue = (float) doubleValue;
+    if (floatValue == doubleValue || Double.isNaN(doubleValue)) {
+      return floatValue;
+    }
+    return doubleValue;
+  }
+
   public static String getNeo4jPropType(final Object myPropertyValue) {
 
     String myNeo4jPropType;
@@ -317,7 +363,8 @@ public class ONeo4jImporterUtils {
     if (null == myPropertyValue || myPropertyValue instanceof StringValue) {
       myNeo4jPropType = "String";
     } else if (myPropertyValue instanceof IntegerValue) {
-      myNeo4jPropType = "Integer";
+      // Neo4j integers are 64 bits: other nodes may have values that don't fit in an Integer
+      myNeo4jPropType = "Long";
       //    } else if (myPropertyValue instanceof LongValue) {
       //      myNeo4jPropType = "Long";
     } else if (myPropertyValue instanceof BooleanValue) {
@@ -325,7 +372,7 @@ public class ONeo4jImporterUtils {
     } else if (myPropertyValue instanceof BytesValue) {
       myNeo4jPropType = "Byte";
     } else if (myPropertyValue instanceof FloatValue) {
-      myNeo4jPropType = "Float";
+      myNeo4jPropType = "Double";
       //    } else if (myPropertyValue instanceof DoubleValue) {
       //      myNeo4jPropType = "Double";
       //    } else if (myPropertyValue instanceof CharValue) {
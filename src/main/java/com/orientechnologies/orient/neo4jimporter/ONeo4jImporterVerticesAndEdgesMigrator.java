@@ -22,24 +22,58 @@ package com.orientechnologies.orient.neo4jimporter;
 
 import static com.orientechnologies.orient.neo4jimporter.ONeo4jImporter.PROGRAM_NAME;
 
+import com.orientechnologies.common.concur.ONeedRetryException;
+import com.orientechnologies.common.util.ORawPair;
 import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterControl;
+import com.orientechnologies.orient.context.ONeo4jImporterEvents;
 import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
 import com.orientechnologies.orient.core.OConstants;
+import com.orientechnologies.orient.core.db.ODatabaseDocumentInternal;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
-import com.orientechnologies.orient.core.exception.OValidationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.OEdge;
 import com.orientechnologies.orient.core.record.OElement;
 import com.orientechnologies.orient.core.record.OVertex;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.listener.OStallWatchdog;
+import com.orientechnologies.orient.util.OBatchSizeController;
 import com.orientechnologies.orient.util.OGraphCommands;
+import com.orientechnologies.orient.util.OInHeapNeo4jNodeIdMap;
+import com.orientechnologies.orient.util.OMappedNeo4jNodeIdMap;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import com.orientechnologies.orient.util.ONeo4jIdSet;
+import com.orientechnologies.orient.util.ONeo4jNodeIdMap;
+import com.orientechnologies.orient.util.OPipelineQueue;
+import java.io.File;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import org.neo4j.driver.internal.value.*;
 import org.neo4j.driver.v1.*;
 import org.neo4j.driver.v1.Value;
 import org.neo4j.driver.v1.exceptions.Neo4jException;
-import org.neo4j.driver.v1.exceptions.value.LossyCoercion;
+import org.neo4j.driver.v1.exceptions.ServiceUnavailableException;
+import org.neo4j.driver.v1.exceptions.SessionExpiredException;
+import org.neo4j.driver.v1.exceptions.TransientException;
 import org.neo4j.driver.v1.types.Type;
 
 /** Created by frank on 08/11/2016. */
@@ -49,14 +83,74 @@ class ONeo4jImporterVerticesAndEdgesMigrator {
   private final boolean migrateNodes;
   private final boolean relSampleOnly;
   private final boolean neo4jRelIdIndex;
+  private final ONeo4jImporterSettings settings;
   private String keepLogString;
   private String orientVertexClass;
   private ODatabaseDocument oDb;
   private ONeo4jImporterStatistics statistics;
   private long importingRelsStartTime;
   private long importingRelsStopTime;
-  private static final int VERTICES_BATCH_SIZE = 1000;
-  private static final int EDGES_BATCH_SIZE = 300;
+  // transaction batches are sized by payload, between a minimum and a maximum number of records
+  private static final int VERTICES_BATCH_MIN_SIZE = 100;
+  private static final int VERTICES_BATCH_MAX_SIZE = 50000;
+  private static final int EDGES_BATCH_MIN_SIZE = 30;
+  private static final int EDGES_BATCH_MAX_SIZE = 20000;
+  private static final long INITIAL_BATCH_BYTES = 256 * 1024;
+  private static final long EDGE_OVERHEAD_BYTES = 256; // edge record and endpoints ridbags
+
+  private static final int RANGES_PER_WORKER = 4;
+  private static final int MAX_COMMIT_RETRIES = 10;
+  private static final int NOTX_SYNC_INTERVAL = 100; // batches
+
+  // records handed over between stages, and tracked together by the checkpoint
+  private static final int PIPELINE_CHUNK_SIZE = 100;
+
+  // named, so that the stall diagnostics can tell the import threads
+  private static final ThreadFactory WORKER_THREADS =
+      new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          return new Thread(
+              runnable, OStallWatchdog.IMPORTER_THREADS_PREFIX + counter.incrementAndGet());
+        }
+      };
+
+  // records are returned in id order, which the checkpoint of each partition relies on
+  private static final String NODES_RETURN =
+      " RETURN properties(node) as properties, ID(node) as id, labels(node) as labels "
+          + "ORDER BY id";
+  private static final String NODES_RANGE_QUERY =
+      "MATCH (node) WHERE ID(node) >= $lo AND ID(node) < $hi AND ID(node) > $after" + NODES_RETURN;
+  private static final String RELATIONSHIPS_RETURN =
+      " RETURN ID(a) as outVertexID, ID(b) as inVertexID, ID(r) as relationshipId, "
+          + "properties(r) as relationshipProps, type(r) as relationshipType "
+          + "ORDER BY relationshipId";
+
+  // phases with partitions in the checkpoint
+  static final String VERTICES_PHASE = "vertices";
+  static final String EDGES_PHASE = "edges";
+
+  private static final int SYNC_IDS_PER_QUERY = 1000; // of the records missing from OrientDB
+  private static final int DELETES_PER_BATCH = 1000; // of the records removed from Neo4j
+
+  // wait before retrying a query after a transient failure of Neo4j, doubled at each attempt
+  private static final long NEO4J_RETRY_FIRST_WAIT_MILLIS = 1000;
+  private static final long NEO4J_RETRY_MAX_WAIT_MILLIS = 60000;
+
+  // Neo4j node id -> OrientDB vertex RID, filled as vertices are committed
+  private ONeo4jNodeIdMap nodeIdMap;
+  private ONeo4jImporterClassResolver classResolver;
+  private ONeo4jImporterPropertyConverters propertyConverters;
+  private final ONeo4jImporterCheckpoint checkpoint;
+  private final ONeo4jImporterDeadLetters deadLetters;
+  // index of the next writer of the running import, for its own gauges
+  private final AtomicInteger writers = new AtomicInteger();
+
+  // incremental sync: records found in OrientDB are updated instead of created
+  private boolean incremental;
+  private Map<Long, ORID> changedEdges = Collections.emptyMap(); // RIDs by neo4jRelID
 
   public ONeo4jImporterVerticesAndEdgesMigrator(
       String keepLogString,
@@ -67,16 +161,22 @@ class ONeo4jImporterVerticesAndEdgesMigrator {
       ODatabaseDocument oDb,
       ONeo4jImporterStatistics statistics,
       boolean relSampleOnly,
-      boolean neo4jRelIdIndex) {
+      boolean neo4jRelIdIndex,
+      ONeo4jImporterSettings settings,
+      ONeo4jImporterCheckpoint checkpoint,
+      ONeo4jImporterDeadLetters deadLetters) {
 
     this.keepLogString = keepLogString;
     this.migrateRels = migrateRels;
     this.migrateNodes = migrateNodes;
     this.relSampleOnly = relSampleOnly;
     this.neo4jRelIdIndex = neo4jRelIdIndex;
+    this.settings = settings;
     this.orientVertexClass = orientVertexClass;
     this.oDb = oDb;
     this.statistics = statistics;
+    this.checkpoint = checkpoint;
+    this.deadLetters = deadLetters;
   }
 
   public String getKeepLogString() {
@@ -102,42 +202,76 @@ class ONeo4jImporterVerticesAndEdgesMigrator {
 
     try {
 
-      /** Importing nodes with all properties and labels into OrientDB */
-      this.statistics.importingElements = "vertices";
-      this.importVertices(neo4jSession);
-      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
-      this.statistics.importingElements = "nothing";
+      this.classResolver = new ONeo4jImporterClassResolver(oDb);
+      this.propertyConverters = new ONeo4jImporterPropertyConverters();
+      this.statistics.set(
+          ONeo4jImporterStatistics.ORIENTDB_RECORDS_SIZE_BEFORE, this.getRecordsSize());
+
+      /** Creating all the vertex and edge classes, so that the schema never changes during load */
+      this.statistics.startPhase("classes");
+      this.createClasses(neo4jSession);
+      this.statistics.endPhase();
+
+      /**
+       * Importing nodes with all properties and labels into OrientDB. The phases completed by a
+       * previous run are skipped when resuming.
+       */
+      if (!checkpoint.isCompleted(VERTICES_PHASE)) {
+        this.statistics.startPhase(VERTICES_PHASE);
+        this.importVertices(neo4jSession);
+        ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+        this.statistics.endPhase();
+        checkpoint.phaseCompleted(oDb, VERTICES_PHASE);
+      }
 
       /**
        * Building Indices on Vertex classes: - an index on each OrientDB Vertex class on property
        * neo4jNodeID and neo4jLabelList
        */
-      this.statistics.importingElements = "indices-on-vertices";
-      this.importIndicesOnVertices();
-      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
-      this.statistics.importingElements = "nothing";
+      if (!checkpoint.isCompleted("indices-on-vertices")) {
+        this.statistics.startPhase("indices-on-vertices");
+        this.importIndicesOnVertices();
+        ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+        this.statistics.endPhase();
+        checkpoint.phaseCompleted(oDb, "indices-on-vertices");
+      }
 
       /** Importing all relationships from Neo4j and creates the corresponding Edges in OrientDB */
-      this.statistics.importingElements = "edges";
-      this.importEdges(neo4jSession);
-      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
-      this.statistics.importingElements = "nothing";
+      if (!checkpoint.isCompleted(EDGES_PHASE)) {
+        this.statistics.set(
+            ONeo4jImporterStatistics.BATCH_RECORDS, 0); // the batch sizing starts over for edges
+        this.statistics.startPhase(EDGES_PHASE);
+        this.importEdges(neo4jSession);
+        ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+        this.statistics.endPhase();
+        checkpoint.phaseCompleted(oDb, EDGES_PHASE);
+      }
 
       /**
        * Building Indices on Edge classes: - an index on each OrientDB Edge class on property
        * neo4jRelID (it will help querying by original Neo4j Rel IDs)
        */
-      this.statistics.importingElements = "indices-on-edges";
-      this.buildIndicesOnEdges();
-      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
-      this.statistics.importingElements = "nothing";
+      if (!checkpoint.isCompleted("indices-on-edges")) {
+        this.statistics.startPhase("indices-on-edges");
+        this.buildIndicesOnEdges();
+        ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+        this.statistics.endPhase();
+        checkpoint.phaseCompleted(oDb, "indices-on-edges");
+      }
+
+      // of all the records, whichever phases ran, as resumed runs skip the completed ones
+      this.statistics.set(ONeo4jImporterStatistics.ORIENTDB_RECORDS_SIZE, this.getRecordsSize());
 
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      if (nodeIdMap != null) {
+        nodeIdMap.close();
+      }
     }
 
     logString = PROGRAM_NAME + " - v." + OConstants.getVersion() + " - PHASE 2 completed!\n\n";
@@ -145,461 +279,831 @@ class ONeo4jImporterVerticesAndEdgesMigrator {
   }
 
   /**
-   * Imports nodes and builds indices.
+   * Brings a database migrated before up to date with Neo4j, through the same stages of the full
+   * import. Records are matched by their Neo4j ids (neo4jNodeID and neo4jRelID): the ids of the
+   * whole graph are diffed with the ones in the OrientDB indices to delete the records removed from
+   * Neo4j and to import the ones missing, the records beyond the highest id imported (the
+   * high-water mark) are new, and the ones whose changed-since property is greater than the passed
+   * timestamp are updated.
    *
-   * @param session
+   * @param neo4jSession
+   * @param changedSince Neo4j timestamp of the start of the previous import or sync
    */
-  private void importVertices(Session session) throws Exception {
+  public void sync(Session neo4jSession, long changedSince) throws Exception {
 
-    String logString;
-    boolean hasMultipleLabels;
-    double value;
+    this.incremental = true;
+    try {
 
-    if (migrateNodes) {
+      this.classResolver = new ONeo4jImporterClassResolver(oDb);
+      this.propertyConverters = new ONeo4jImporterPropertyConverters();
+      this.statistics.set(
+          ONeo4jImporterStatistics.ORIENTDB_RECORDS_SIZE_BEFORE, this.getRecordsSize());
 
-      logString =
-          "Getting all Nodes from Neo4j and creating corresponding Vertices in OrientDB...\n";
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+      /** Creating the classes of the labels and types added in Neo4j meanwhile */
+      this.statistics.startPhase("classes");
+      this.createClasses(neo4jSession);
+      this.statistics.endPhase();
 
-      /** Counting Neo4j Nodes so that we can show a % on OrientDB vertices creation */
-      try {
-        String query = "MATCH (node) RETURN count(node) as count";
-        StatementResult result = session.run(query);
-        Record record = result.next();
-        statistics.neo4jTotalNodes = record.get("count").asDouble();
-      } catch (Neo4jException e) {
-        String mess = "";
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-        throw new RuntimeException(e);
-      } catch (Exception e) {
-        String mess = "";
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-      }
+      this.statistics.startPhase("sync-vertices");
+      this.syncVertices(neo4jSession, changedSince);
+      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+      this.statistics.endPhase();
 
-      statistics.importingNodesStartTime = System.currentTimeMillis();
+      this.statistics.startPhase("indices-on-vertices");
+      this.importIndicesOnVertices();
+      this.statistics.endPhase();
 
-      try {
-        String query =
-            "MATCH (node) RETURN properties(node) as properties, ID(node) as id, labels(node) as labels";
-        StatementResult result = session.run(query);
+      this.statistics.set(ONeo4jImporterStatistics.BATCH_RECORDS, 0);
+      this.statistics.startPhase("sync-edges");
+      this.syncEdges(neo4jSession, changedSince);
+      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, "\nDone\n\n");
+      this.statistics.endPhase();
 
-        oDb.begin();
-        int cont = 1;
-        while (result.hasNext()) {
+      this.statistics.startPhase("indices-on-edges");
+      this.buildIndicesOnEdges();
+      this.statistics.endPhase();
 
-          Record currentRecord = result.next();
-          statistics.neo4jNodeCounter++;
-          List<Object> nodeLabels = currentRecord.get("labels").asList();
+      this.statistics.set(ONeo4jImporterStatistics.ORIENTDB_RECORDS_SIZE, this.getRecordsSize());
 
-          int i = 0;
-          for (Object myLabel : nodeLabels) {
-            i++;
-          }
-          String[] multipleLabelsArray;
-          multipleLabelsArray = new String[i];
-
-          // determines the class to use in OrientDB, starting from the original Neo4j label. First
-          // thing we check if this node has multiple labels
-          int numberOfLabels = 0;
-          String multipleLabelClass = "MultipleLabelNeo4jConversion";
-          for (Object myLabel : nodeLabels) {
-            numberOfLabels++;
-            if (numberOfLabels == 1) {
-              orientVertexClass = (String) myLabel;
-            }
-            multipleLabelsArray[numberOfLabels - 1] = (String) myLabel;
-          }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (nodeIdMap != null) {
+        nodeIdMap.close();
+      }
+    }
 
-          if (numberOfLabels >= 2) {
-            hasMultipleLabels = true;
-            orientVertexClass = multipleLabelClass;
-            statistics.neo4jNodeMultipleLabelsCounter++;
-            logString =
-                "Found node ('"
-                    + currentRecord
-                    + "') with multiple labels. Only the first ("
-                    + orientVertexClass
-                    + ") will be used as Class when importing this node in OrientDB";
-            ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, logString);
-          }
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(
+            this,
+            "Vertices: %d stored, of which %d updated, %d deleted. Edges: %d stored, of which %d updated, %d deleted.\n\n",
+            statistics.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_VERTICES).get(),
+            statistics
+                .getMetrics()
+                .counter(ONeo4jImporterStatistics.ORIENTDB_VERTICES_UPDATED)
+                .get(),
+            statistics
+                .getMetrics()
+                .counter(ONeo4jImporterStatistics.ORIENTDB_VERTICES_DELETED)
+                .get(),
+            statistics.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_EDGES).get(),
+            statistics.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_EDGES_UPDATED).get(),
+            statistics.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_EDGES_DELETED).get());
+    String logString =
+        PROGRAM_NAME + " - v." + OConstants.getVersion() + " - PHASE 2 (sync) completed!\n\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+  }
 
-          // if numberOfLabels=0 the neo4j node has no label
-          if (numberOfLabels == 0) {
-            statistics.neo4jNodeNoLabelCounter++;
-            // set generic class for OrientDB
-            orientVertexClass = "GenericClassNeo4jConversion";
-            logString =
-                "Found node ('"
-                    + currentRecord
-                    + "') with no labels. Class 'GenericClassNeo4jConversion' will be used when importing this node in OrientDB";
-            ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, logString);
-          }
+  /**
+   * Imports again the records of a dead-letter file into a migrated database, through the same
+   * stages of the sync: the records are read from Neo4j by id, and the ones found in OrientDB are
+   * updated. The vertices come first, so that the edges skipped because of them find their
+   * endpoints. Records failing again are written to the dead-letter file of this run.
+   *
+   * @param neo4jSession
+   * @param nodeIds
+   * @param relationshipIds
+   */
+  public void replay(Session neo4jSession, List<Long> nodeIds, List<Long> relationshipIds)
+      throws Exception {
 
-          // gets the node properties
-          Map<String, Object> nodeProperties = new LinkedHashMap<String, Object>();
+    this.incremental = true;
+    try {
 
-          Value properties = currentRecord.get("properties");
-          for (String property : properties.keys()) {
-            Value currValue = properties.get(property);
-            Object convertedValue = this.convertValueTypeFromNeo4jToJava(currValue);
-            nodeProperties.put(property, convertedValue);
-          }
+      this.classResolver = new ONeo4jImporterClassResolver(oDb);
+      this.propertyConverters = new ONeo4jImporterPropertyConverters();
+      this.statistics.set(
+          ONeo4jImporterStatistics.ORIENTDB_RECORDS_SIZE_BEFORE, this.getRecordsSize());
 
-          // stores also the original neo4j nodeId in the property map - we will use it when
-          // creating the corresponding OrientDB vertex
-          nodeProperties.put(
-              "neo4jNodeID",
-              currentRecord.get("id").asLong()); // neo4jNodeID always stored as a Long
+      /** Creating the classes of the labels and types added in Neo4j meanwhile */
+      this.statistics.startPhase("classes");
+      this.createClasses(neo4jSession);
+      this.statistics.endPhase();
 
-          // store also the original labels
-          nodeProperties.put("neo4jLabelList", multipleLabelsArray);
+      nodeIdMap = this.createNodeIdMap(oDb.countClass("V") + nodeIds.size());
+      this.loadNodeIdMap();
 
-          try {
+      statistics.set(ONeo4jImporterStatistics.NEO4J_SYNC_NODES, nodeIds.size());
+      this.statistics.startPhase("replay-vertices");
+      statistics.importingNodesStartTime = System.currentTimeMillis();
+      this.importQueries(
+          settings.getNodeImportWorkers(),
+          this.idsQueries("MATCH (node) WHERE ", "node", "", NODES_RETURN, nodeIds, 0),
+          this.nodesStages());
+      statistics.importingNodesStopTime = System.currentTimeMillis();
+      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+      this.statistics.endPhase();
 
-            // store the vertex on OrientDB
-            OVertex myVertex = this.addVertexToGraph(oDb, orientVertexClass, nodeProperties);
-            ONeo4jImporterContext.getInstance()
-                .getMessageHandler()
-                .debug(this, myVertex.toString());
-            statistics.orientDBImportedVerticesCounter++;
-
-            if (cont % VERTICES_BATCH_SIZE == 0) {
-              oDb.commit();
-              oDb.getLocalCache().clear();
-              oDb.begin();
-            }
-            cont++;
-          } catch (Exception e) {
-            oDb.rollback();
-            String mess =
-                "Found an error when trying to store node ('"
-                    + currentRecord
-                    + "') to OrientDB: "
-                    + e.getMessage();
-            ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-            ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-          }
-        }
+      this.statistics.set(ONeo4jImporterStatistics.BATCH_RECORDS, 0);
+      statistics.set(ONeo4jImporterStatistics.NEO4J_SYNC_RELATIONSHIPS, relationshipIds.size());
+      this.statistics.startPhase("replay-edges");
+      importingRelsStartTime = System.currentTimeMillis();
+      this.importQueries(
+          settings.getEdgeImportWorkers(),
+          this.idsQueries(
+              "MATCH (a)-[r]->(b) WHERE ", "r", "", RELATIONSHIPS_RETURN, relationshipIds, 0),
+          this.relationshipsStages());
+      importingRelsStopTime = System.currentTimeMillis();
+      ONeo4jImporterContext.getInstance().getStatistics().notifyListeners();
+      this.statistics.endPhase();
 
-        // committing last batch
-        oDb.commit();
-        oDb.getLocalCache().clear();
+      this.statistics.set(ONeo4jImporterStatistics.ORIENTDB_RECORDS_SIZE, this.getRecordsSize());
 
-      } catch (Neo4jException e) {
-        oDb.rollback();
-        String mess = "";
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-        throw new RuntimeException(e);
-      } catch (Exception e) {
-        String mess = "";
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (nodeIdMap != null) {
+        nodeIdMap.close();
       }
-
-      statistics.importingNodesStopTime = System.currentTimeMillis();
     }
+
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(
+            this,
+            "\nReplayed %d Nodes and %d Relationships: %d Vertices and %d Edges stored, %d records failed again.\n\n",
+            nodeIds.size(),
+            relationshipIds.size(),
+            statistics.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_VERTICES).get(),
+            statistics.getMetrics().counter(ONeo4jImporterStatistics.ORIENTDB_EDGES).get(),
+            deadLetters.size());
   }
 
-  private Object convertValueTypeFromNeo4jToJava(Value myPropertyValue) {
+  /**
+   * Deletes the vertices of the nodes removed from Neo4j, with their edges, then imports the new
+   * nodes and updates the changed ones. The nodes whose labels resolve to another class than the
+   * one of their vertex are imported again too: their labels changed, or Neo4j reused the id of a
+   * deleted node.
+   */
+  private void syncVertices(Session session, long changedSince) throws Exception {
+
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(this, "Comparing the ids of the Neo4j Nodes with the OrientDB Vertices...\n");
+    nodeIdMap = this.createNodeIdMap(oDb.countClass("V"));
+    final ONeo4jIdSet storedIds = new ONeo4jIdSet();
+    long highWaterMark =
+        this.visitStoredElements(
+            "V",
+            "neo4jNodeID",
+            new StoredElementVisitor() {
+              @Override
+              public void visit(long neo4jId, ORID rid) {
+                nodeIdMap.put(neo4jId, rid);
+                storedIds.add(neo4jId);
+              }
+            });
 
-    Object convertedValue = null;
+    ONeo4jIdSet neo4jIds = new ONeo4jIdSet();
+    ONeo4jIdSet changedIds = new ONeo4jIdSet();
+    boolean changedProperty = settings.getChangedSinceProperty() != null;
+    List<Long> reused = new ArrayList<Long>();
+    OSchema schema = oDb.getMetadata().getSchema();
+    try {
+      StatementResult result =
+          session.run(
+              "MATCH (node) RETURN ID(node) as id, labels(node) as labels"
+                  + (changedProperty ? ", " + this.changedCondition("node") + " as changed" : ""),
+              Values.parameters("since", changedSince));
+      while (result.hasNext()) {
+        Record record = result.next();
+        long id = record.get("id").asLong();
+        neo4jIds.add(id);
+        if (changedProperty && record.get("changed").asBoolean()) {
+          changedIds.add(id);
+        }
+        ORID rid = nodeIdMap.get(id);
+        if (rid != null) {
+          // the class is known from the cluster of the vertex, without loading it
+          OClass vertexClass = schema.getClassByClusterId(rid.getClusterId());
+          String labelsClass = classResolver.resolveVertexClass(record.get("labels").asList());
+          if (vertexClass == null || !vertexClass.getName().equalsIgnoreCase(labelsClass)) {
+            reused.add(id);
+          }
+        }
+      }
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
+    }
+    statistics.set(ONeo4jImporterStatistics.NEO4J_TOTAL_NODES, neo4jIds.size());
 
-    if (null == myPropertyValue || myPropertyValue instanceof StringValue) {
-      convertedValue = myPropertyValue.asString();
-    } else if (myPropertyValue instanceof IntegerValue) {
-      try {
-        convertedValue = myPropertyValue.asInt();
-      } catch (LossyCoercion e) {
-        // DO NOTHING: we accept losing precision
-      }
-    } else if (myPropertyValue instanceof BooleanValue) {
-      convertedValue = myPropertyValue.asBoolean();
-    } else if (myPropertyValue instanceof BytesValue) {
-      convertedValue = myPropertyValue.asByteArray();
-    } else if (myPropertyValue instanceof FloatValue) {
-      try {
-        convertedValue = myPropertyValue.asFloat();
-      } catch (LossyCoercion e) {
-        // DO NOTHING: we accept losing precision
+    // the RIDs of the deleted nodes are in the node id map: the index is not read again
+    List<ORID> deleted = new ArrayList<ORID>();
+    for (long id = storedIds.next(0); id >= 0; id = storedIds.next(id + 1)) {
+      if (!neo4jIds.contains(id)) {
+        deleted.add(nodeIdMap.get(id));
       }
-    } else if (myPropertyValue instanceof ListValue) {
-      convertedValue = myPropertyValue.asList();
-    } else {
-      convertedValue = myPropertyValue.asString();
     }
+    this.deleteElements(deleted, ONeo4jImporterStatistics.ORIENTDB_VERTICES_DELETED);
 
-    return convertedValue;
+    // ids up to the high-water mark can be missing too, if Neo4j reused the ids of deleted nodes
+    List<Long> missing = new ArrayList<Long>();
+    for (long id = neo4jIds.next(0); id >= 0 && id <= highWaterMark; id = neo4jIds.next(id + 1)) {
+      if (nodeIdMap.get(id) == null) {
+        missing.add(id);
+      }
+    }
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(
+            this,
+            "Found %d deleted, %d missing and %d reused or relabeled Nodes up to the id %d\n",
+            deleted.size(),
+            missing.size(),
+            reused.size(),
+            highWaterMark);
+    // the vertices of the reused ids are found in the node id map, so they are stored again
+    missing.addAll(reused);
+    statistics.set(
+        ONeo4jImporterStatistics.NEO4J_SYNC_NODES,
+        this.syncedRecords(neo4jIds, changedIds, highWaterMark, missing));
+
+    statistics.importingNodesStartTime = System.currentTimeMillis();
+    this.importQueries(
+        settings.getNodeImportWorkers(),
+        this.syncQueries(
+            "MATCH (node) WHERE ", "node", NODES_RETURN, highWaterMark, changedSince, missing),
+        this.nodesStages());
+    statistics.importingNodesStopTime = System.currentTimeMillis();
   }
 
-  private void importIndicesOnVertices() {
-
-    String logString;
-    double value;
+  /**
+   * Deletes the edges of the relationships removed from Neo4j, then imports the new relationships
+   * and updates the changed ones.
+   */
+  private void syncEdges(Session session, long changedSince) throws Exception {
+
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(this, "Comparing the ids of the Neo4j Relationships with the OrientDB Edges...\n");
+    final ONeo4jIdSet neo4jIds =
+        this.fetchIds(session, "MATCH ()-[r]->() RETURN ID(r) as id", null);
+    statistics.set(ONeo4jImporterStatistics.NEO4J_TOTAL_RELATIONSHIPS, neo4jIds.size());
+    final ONeo4jIdSet changedIds =
+        settings.getChangedSinceProperty() == null
+            ? new ONeo4jIdSet()
+            : this.fetchIds(
+                session,
+                "MATCH ()-[r]->() WHERE " + this.changedCondition("r") + " RETURN ID(r) as id",
+                Values.parameters("since", changedSince));
+
+    final List<ORID> deleted = new ArrayList<ORID>();
+    final ONeo4jIdSet importedIds = new ONeo4jIdSet();
+    final Map<Long, ORID> changed = new HashMap<Long, ORID>();
+    long highWaterMark =
+        this.visitStoredElements(
+            "E",
+            "neo4jRelID",
+            new StoredElementVisitor() {
+              @Override
+              public void visit(long neo4jId, ORID rid) {
+                if (!neo4jIds.contains(neo4jId)) {
+                  deleted.add(rid);
+                  return;
+                }
+                importedIds.add(neo4jId);
+                if (changedIds.contains(neo4jId)) {
+                  changed.put(neo4jId, rid);
+                }
+              }
+            });
+    this.changedEdges = changed;
+    this.deleteElements(deleted, ONeo4jImporterStatistics.ORIENTDB_EDGES_DELETED);
+
+    List<Long> missing = new ArrayList<Long>();
+    for (long id = neo4jIds.next(0); id >= 0 && id <= highWaterMark; id = neo4jIds.next(id + 1)) {
+      if (!importedIds.contains(id)) {
+        missing.add(id);
+      }
+    }
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(
+            this,
+            "Found %d deleted and %d missing Relationships up to the id %d\n",
+            deleted.size(),
+            missing.size(),
+            highWaterMark);
+    statistics.set(
+        ONeo4jImporterStatistics.NEO4J_SYNC_RELATIONSHIPS,
+        this.syncedRecords(neo4jIds, changedIds, highWaterMark, missing));
+
+    importingRelsStartTime = System.currentTimeMillis();
+    this.importQueries(
+        settings.getEdgeImportWorkers(),
+        this.syncQueries(
+            "MATCH (a)-[r]->(b) WHERE ",
+            "r",
+            RELATIONSHIPS_RETURN,
+            highWaterMark,
+            changedSince,
+            missing),
+        this.relationshipsStages());
+    importingRelsStopTime = System.currentTimeMillis();
+  }
 
-    /**
-     * Building Indices on Vertex classes: - two indices on each OrientDB vertex class on properties
-     * neo4jNodeID & neo4jLabelList - index on neo4jNodeID: it will help in speeding up vertices
-     * lookup during relationships creation - index on neo4jLabelList: it will help querying by
-     * original Neo4j Label
-     */
-    statistics.internalVertexIndicesStartTime = System.currentTimeMillis();
-    logString =
-        "Creating internal Indices on properties 'neo4jNodeID' & 'neo4jLabelList' on all OrientDB Vertices Classes...\n";
-    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+  /**
+   * Returns the number of records a sync writes, for its progress: the ones beyond the high-water
+   * mark and the changed ones, then the missing ones which did not change.
+   *
+   * @param neo4jIds of all the records in Neo4j
+   * @param changedIds of the records changed since the previous run
+   * @param highWaterMark
+   * @param missing from OrientDB, up to the high-water mark
+   */
+  private long syncedRecords(
+      ONeo4jIdSet neo4jIds, ONeo4jIdSet changedIds, long highWaterMark, List<Long> missing) {
+    long records = 0;
+    for (long id = neo4jIds.next(0); id >= 0; id = neo4jIds.next(id + 1)) {
+      if (id > highWaterMark || changedIds.contains(id)) {
+        records++;
+      }
+    }
+    for (long id : missing) {
+      if (!changedIds.contains(id)) {
+        records++;
+      }
+    }
+    return records;
+  }
 
-    Collection<OClass> vertexClasses =
-        oDb.getMetadata().getSchema().getClass("V").getAllSubclasses();
-    statistics.orientDBVerticesClassCount = (double) vertexClasses.size();
+  /** Receives the Neo4j id and the RID of each vertex or edge stored by the previous runs. */
+  private interface StoredElementVisitor {
+    void visit(long neo4jId, ORID rid);
+  }
 
-    for (OClass currentClass : vertexClasses) {
+  /**
+   * Visits the vertices or the edges stored by the previous runs, reading the index of their Neo4j
+   * id property, so that the records are not loaded. Only the classes without the index are read
+   * record by record.
+   *
+   * @param baseClass V or E
+   * @param idProperty neo4jNodeID or neo4jRelID
+   * @param visitor
+   * @return the highest Neo4j id visited, -1 if none
+   */
+  private long visitStoredElements(
+      String baseClass, String idProperty, StoredElementVisitor visitor) {
+
+    long highest = -1;
+    for (OClass elementClass :
+        oDb.getMetadata().getSchema().getClass(baseClass).getAllSubclasses()) {
+
+      Set<OIndex> indexes = elementClass.getClassInvolvedIndexes(idProperty);
+      if (indexes.isEmpty()) {
+        for (ODocument element : oDb.browseClass(elementClass.getName(), false)) {
+          Object neo4jId = element.field(idProperty);
+          if (neo4jId instanceof Number) {
+            long id = ((Number) neo4jId).longValue();
+            highest = Math.max(highest, id);
+            visitor.visit(id, element.getIdentity());
+          }
+        }
+        continue;
+      }
 
-      // index on property neo4jNodeID
+      // the index holds the records of the subclasses too: they are visited with their class
+      Set<Integer> clusters = new HashSet<Integer>();
+      for (int cluster : elementClass.getClusterIds()) {
+        clusters.add(cluster);
+      }
+      Stream<ORawPair<Object, ORID>> entries = indexes.iterator().next().getInternal().stream();
       try {
+        Iterator<ORawPair<Object, ORID>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+          ORawPair<Object, ORID> entry = iterator.next();
+          if (entry.first instanceof Number && clusters.contains(entry.second.getClusterId())) {
+            long id = ((Number) entry.first).longValue();
+            highest = Math.max(highest, id);
+            visitor.visit(id, entry.second);
+          }
+        }
+      } finally {
+        entries.close();
+      }
+    }
+    return highest;
+  }
 
-        // first create the property
-        currentClass.createProperty(
-            "neo4jNodeID", OType.LONG); // neo4jNodeID always stored as a Long
+  /**
+   * Returns the queries of a sync: the records beyond the high-water mark or changed since the
+   * timestamp, and the records up to the high-water mark missing from OrientDB, in groups. The
+   * changed records are excluded from the latter, so that no record is returned twice. The
+   * high-water mark is kept apart from {@code $after}, which a reconnecting cursor moves past the
+   * last record read: the changed records below it are then not returned again.
+   */
+  private Queue<ImportQuery> syncQueries(
+      String match,
+      String variable,
+      String returns,
+      long highWaterMark,
+      long changedSince,
+      List<Long> missing) {
+
+    boolean changedProperty = settings.getChangedSinceProperty() != null;
+    Queue<ImportQuery> queries = new ConcurrentLinkedQueue<ImportQuery>();
+    queries.add(
+        changedProperty
+            ? new ImportQuery(
+                match
+                    + "ID("
+                    + variable
+                    + ") > $after AND (ID("
+                    + variable
+                    + ") > $highWaterMark OR "
+                    + this.changedCondition(variable)
+                    + ")"
+                    + returns,
+                Values.parameters(
+                    "after", -1, "highWaterMark", highWaterMark, "since", changedSince),
+                new ONeo4jImporterCheckpoint.Partition(null, -1, -1))
+            : new ImportQuery(
+                match + "ID(" + variable + ") > $after" + returns,
+                Values.parameters("after", highWaterMark, "since", changedSince),
+                new ONeo4jImporterCheckpoint.Partition(null, -1, -1)));
+    queries.addAll(
+        this.idsQueries(
+            match,
+            variable,
+            changedProperty ? " AND NOT " + this.changedCondition(variable) : "",
+            returns,
+            missing,
+            changedSince));
+    return queries;
+  }
 
-        // creates the index if the property creation was successful
-        try {
+  /**
+   * Returns the queries of the records with the given ids, in groups.
+   *
+   * @param condition added to the match of the ids, empty if none
+   */
+  private Queue<ImportQuery> idsQueries(
+      String match,
+      String variable,
+      String condition,
+      String returns,
+      List<Long> ids,
+      long changedSince) {
+
+    Queue<ImportQuery> queries = new ConcurrentLinkedQueue<ImportQuery>();
+    for (int from = 0; from < ids.size(); from += SYNC_IDS_PER_QUERY) {
+      List<Long> group = ids.subList(from, Math.min(from + SYNC_IDS_PER_QUERY, ids.size()));
+      queries.add(
+          new ImportQuery(
+              match
+                  + "ID("
+                  + variable
+                  + ") IN $ids AND ID("
+                  + variable
+                  + ") > $after"
+                  + condition
+                  + returns,
+              Values.parameters(
+                  "ids", new ArrayList<Long>(group), "after", -1, "since", changedSince),
+              new ONeo4jImporterCheckpoint.Partition(null, -1, -1)));
+    }
+    return queries;
+  }
 
-          currentClass.getProperty("neo4jNodeID").createIndex(OClass.INDEX_TYPE.UNIQUE_HASH_INDEX);
-          statistics.neo4jInternalVertexIndicesCounter++;
-        } catch (Exception e) {
-          String mess =
-              "Found an error when trying to create a UNIQUE Index in OrientDB on the 'neo4jNodeID' Property of the vertex Class '"
-                  + currentClass.getName()
-                  + "': "
-                  + e.getMessage();
-          ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-          ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-        }
-      } catch (Exception e) {
-        String mess =
-            "Found an error when trying to create the 'neo4jNodeID' Property in OrientDB on the vertex Class '"
-                + currentClass.getName()
-                + "': "
-                + e.getMessage();
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+  /** Returns the condition matching the records changed since the timestamp parameter. */
+  private String changedCondition(String variable) {
+    return "coalesce("
+        + variable
+        + "."
+        + escapeIdentifier(settings.getChangedSinceProperty())
+        + " > $since, false)";
+  }
+
+  /**
+   * Returns the ids returned by a query, in the "id" column.
+   *
+   * @param session
+   * @param query
+   * @param parameters null if none
+   */
+  private ONeo4jIdSet fetchIds(Session session, String query, Value parameters) {
+    ONeo4jIdSet ids = new ONeo4jIdSet();
+    try {
+      StatementResult result =
+          parameters == null ? session.run(query) : session.run(query, parameters);
+      while (result.hasNext()) {
+        ids.add(result.next().get("id").asLong());
       }
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
+    }
+    return ids;
+  }
 
-      // index on property neo4jLabelList
+  /**
+   * Deletes the vertices or the edges of the records removed from Neo4j, in transactions of
+   * DELETES_PER_BATCH records. The records of a failing transaction are deleted one by one, so that
+   * only the failing ones are left.
+   */
+  private void deleteElements(List<ORID> rids, String counter) {
+    for (int from = 0; from < rids.size(); from += DELETES_PER_BATCH) {
+      List<ORID> batch = rids.subList(from, Math.min(from + DELETES_PER_BATCH, rids.size()));
       try {
+        statistics.add(counter, this.deleteBatch(batch));
+      } catch (Exception e) {
+        for (ORID rid : batch) {
+          this.deleteElement(rid, counter);
+        }
+      }
+    }
+  }
 
-        // first create the property
-        currentClass.createProperty("neo4jLabelList", OType.EMBEDDEDLIST, OType.STRING);
-
-        // creates the index if the property creation was successful
-        try {
-
-          currentClass
-              .getProperty("neo4jLabelList")
-              .createIndex(OClass.INDEX_TYPE.NOTUNIQUE_HASH_INDEX);
-          statistics.neo4jInternalVertexIndicesCounter++;
-        } catch (Exception e) {
-          String mess =
-              "Found an error when trying to create a NOT UNIQUE Index in OrientDB on the 'neo4jLabelList' Property of the vertex Class '"
-                  + currentClass.getName()
-                  + "': "
-                  + e.getMessage();
-          ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-          ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+  /**
+   * Deletes the records in a single transaction.
+   *
+   * @return the number of records deleted, the ones not found are skipped
+   */
+  private int deleteBatch(List<ORID> rids) {
+    oDb.begin();
+    try {
+      int deleted = 0;
+      for (ORID rid : rids) {
+        OElement element = oDb.load(rid);
+        if (element != null) {
+          element.delete(); // a vertex takes its edges with it
+          deleted++;
         }
-      } catch (Exception e) {
-        String mess =
-            "Found an error when trying to create the 'neo4jLabelList' Property in OrientDB on the vertex Class '"
-                + currentClass.getName()
-                + "': "
-                + e.getMessage();
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
       }
+      oDb.commit();
+      return deleted;
+    } catch (RuntimeException e) {
+      oDb.rollback();
+      throw e;
+    } finally {
+      oDb.getLocalCache().clear();
     }
+  }
 
-    statistics.internalVertexIndicesStopTime = System.currentTimeMillis();
+  private void deleteElement(ORID rid, String counter) {
+    try {
+      statistics.add(counter, this.deleteBatch(Collections.singletonList(rid)));
+    } catch (Exception e) {
+      String mess =
+          "Found an error when trying to delete the record '"
+              + rid
+              + "' of a Neo4j record deleted: "
+              + e.getMessage();
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+    }
   }
 
   /**
-   * Imports all the relationships present in the source neo4j graph database.
+   * Plans the schema before loading any data, creating all the classes the vertices and edges will
+   * be imported in. Vertex classes are derived from the histogram of the label combinations: a
+   * class for each label used alone on some node, plus the fallback classes for nodes with multiple
+   * labels or with no label, only if such nodes exist. Labels used only in combination with others
+   * get no class here, as their constraints and indices are moved on the fallback class in PHASE 3.
+   * Edge classes are created for all relationship types, once the vertex classes are known, as
+   * types with the same name of a vertex class are renamed.
+   *
+   * <p>Each label and relationship type is also sampled, to learn the converters of its properties.
+   * With the typed properties option, the properties are then declared on the classes, so that
+   * records are stored with typed fields instead of schemaless ones.
    *
    * @param session
    */
-  private void importEdges(Session session) throws Exception {
+  private void createClasses(Session session) {
 
-    String logString;
-    double value;
-    importingRelsStartTime = 0L;
-    importingRelsStopTime = 0L;
+    if (!migrateNodes && !migrateRels) {
+      return;
+    }
 
-    if (migrateRels) {
+    String logString = "Creating OrientDB classes for Neo4j labels and relationship types...\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
 
-      logString =
-          "Getting all Relationships from Neo4j and creating corresponding Edges in OrientDB...\n";
+    int labelsCount = 0;
+    int combinationsCount = 0;
+    int relationshipTypesCount = 0;
+    Set<String> vertexClassNames = new LinkedHashSet<String>();
+    Map<String, String> edgeClassNames = new LinkedHashMap<String, String>();
+    try {
+      if (migrateNodes) {
+        List<String> labels = new ArrayList<String>();
+        StatementResult result = session.run("CALL db.labels()");
+        while (result.hasNext()) {
+          labels.add(result.next().get("label").asString());
+          labelsCount++;
+        }
+        for (String label : labels) {
+          result =
+              session.run(
+                  "MATCH (node:"
+                      + escapeIdentifier(label)
+                      + ") WITH node LIMIT "
+                      + ONeo4jImporterPropertyConverters.SAMPLE_SIZE
+                      + " RETURN properties(node) as properties");
+          while (result.hasNext()) {
+            propertyConverters.learnLabel(label, result.next().get("properties"));
+          }
+        }
 
-      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+        result = session.run("MATCH (node) RETURN DISTINCT labels(node) as labels");
+        while (result.hasNext()) {
+          List<Object> labelCombination = result.next().get("labels").asList();
+          combinationsCount++;
+          String vertexClassName = classResolver.resolveVertexClass(labelCombination);
+          this.createVertexClass(vertexClassName);
+          vertexClassNames.add(vertexClassName);
+        }
+      }
 
-      // counting Neo4j Relationships so that we can show a % on OrientDB Edges creation
-      try {
-        String query = "MATCH ()-[r]->() RETURN count(r) as count";
-        StatementResult result = session.run(query);
-        Record record = result.next();
-        statistics.neo4jTotalRels = record.get("count").asDouble();
-      } catch (Neo4jException e) {
-        String mess = "";
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-        throw new RuntimeException(e);
-      } catch (Exception e) {
-        String mess = "";
-        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      if (migrateRels) {
+        List<String> relationshipTypes = new ArrayList<String>();
+        StatementResult result = session.run("CALL db.relationshipTypes()");
+        while (result.hasNext()) {
+          String relationshipType = result.next().get("relationshipType").asString();
+          relationshipTypesCount++;
+          String edgeClassName = classResolver.resolveEdgeClass(relationshipType);
+          if (!classResolver.existsClass(edgeClassName)) {
+            classResolver.createEdgeClass(oDb, edgeClassName);
+          }
+          relationshipTypes.add(relationshipType);
+          edgeClassNames.put(relationshipType, edgeClassName);
+        }
+        for (String relationshipType : relationshipTypes) {
+          result =
+              session.run(
+                  "MATCH ()-[r:"
+                      + escapeIdentifier(relationshipType)
+                      + "]->() WITH r LIMIT "
+                      + ONeo4jImporterPropertyConverters.SAMPLE_SIZE
+                      + " RETURN properties(r) as properties");
+          while (result.hasNext()) {
+            propertyConverters.learnRelationshipType(
+                relationshipType, result.next().get("properties"));
+          }
+        }
       }
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
+    }
 
-      importingRelsStartTime = System.currentTimeMillis();
+    logString =
+        "Found "
+            + labelsCount
+            + " labels in "
+            + combinationsCount
+            + " combinations and "
+            + relationshipTypesCount
+            + " relationship types\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
 
-      try {
+    if (settings.isTypedProperties()) {
+      this.declareProperties(vertexClassNames, edgeClassNames);
+    }
 
-        String query =
-            "MATCH (a)-[r]->(b) RETURN ID(a) as outVertexID, r as relationship, ID(b) as inVertexID, ID(r) as relationshipId, "
-                + "labels(a) as outVertexLabels, labels(b) as inVertexLabels, properties(r) as relationshipProps, type(r) as relationshipType";
-        StatementResult result = session.run(query);
+    // published while the classes phase is still running, so that the monitor reports it
+    statistics.set(ONeo4jImporterStatistics.ORIENTDB_VERTEX_CLASSES, vertexClassNames.size());
+    statistics.set(
+        ONeo4jImporterStatistics.ORIENTDB_EDGE_CLASSES,
+        new HashSet<String>(edgeClassNames.values()).size());
+    statistics.notifyListeners();
+  }
 
-        oDb.begin();
-        int cont = 1;
+  /**
+   * Declares the properties learned from the samples on the classes where they will be stored,
+   * together with the internal ones. Nodes with multiple labels share a class, so only the internal
+   * properties are declared on it. Properties whose sampled values have mixed types are left
+   * schemaless.
+   *
+   * @param vertexClassNames
+   * @param edgeClassNames relationship type -> edge class
+   */
+  private void declareProperties(Set<String> vertexClassNames, Map<String, String> edgeClassNames) {
 
-        while (result.hasNext()) {
+    String logString = "Declaring typed properties on OrientDB classes...\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
 
-          Record currentRecord = result.next();
-          statistics.neo4jRelCounter++;
+    OSchema schema = oDb.getMetadata().getSchema();
+    int propertiesCount = 0;
+    for (String vertexClassName : vertexClassNames) {
+      OClass vertexClass = schema.getClass(vertexClassName);
+      this.declareProperty(vertexClass, "neo4jNodeID", OType.LONG, null);
+      this.declareProperty(vertexClass, "neo4jLabelList", OType.EMBEDDEDLIST, OType.STRING);
+      if (!vertexClassName.equals(ONeo4jImporterClassResolver.MULTIPLE_LABELS_CLASS)
+          && !vertexClassName.equals(ONeo4jImporterClassResolver.NO_LABEL_CLASS)) {
+        propertiesCount +=
+            this.declareProperties(vertexClass, propertyConverters.forLabel(vertexClassName));
+      }
+    }
+    for (Map.Entry<String, String> edgeClassName : edgeClassNames.entrySet()) {
+      OClass edgeClass = schema.getClass(edgeClassName.getValue());
+      this.declareProperty(edgeClass, "neo4jRelID", OType.LONG, null);
+      propertiesCount +=
+          this.declareProperties(
+              edgeClass, propertyConverters.forRelationshipType(edgeClassName.getKey()));
+    }
 
-          String currentRelationshipType = currentRecord.get("relationshipType").asString();
-          ONeo4jImporterContext.getInstance()
-              .getMessageHandler()
-              .debug(this, "Current relationship type: " + currentRelationshipType);
+    logString = "Declared " + propertiesCount + " typed properties\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+  }
 
-          // get the relationship properties
-          Map<String, Object> resultMap = currentRecord.get("relationshipProps").asMap();
-          Map<String, Object> relationshipProperties = new LinkedHashMap<String, Object>();
-          relationshipProperties.putAll(resultMap);
+  private int declareProperties(
+      OClass orientClass, Map<String, ONeo4jImporterPropertyConverters.Converter> converters) {
+    int propertiesCount = 0;
+    for (Map.Entry<String, ONeo4jImporterPropertyConverters.Converter> converter :
+        converters.entrySet()) {
+      OType orientType = converter.getValue().getOrientType();
+      if (orientType != null
+          && this.declareProperty(orientClass, converter.getKey(), orientType, null)) {
+        propertiesCount++;
+      }
+    }
+    return propertiesCount;
+  }
 
-          // store also the original neo4j relationship id
-          relationshipProperties.put("neo4jRelID", currentRecord.get("relationshipId").asLong());
+  private boolean declareProperty(
+      OClass orientClass, String propertyName, OType orientType, OType linkedType) {
+    if (orientClass.existsProperty(propertyName)) {
+      return false;
+    }
+    try {
+      ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+      if (linkedType != null) {
+        orientClass.createProperty(propertyName, orientType, linkedType);
+      } else {
+        orientClass.createProperty(propertyName, orientType);
+      }
+      event.commit(orientClass.getName(), "create property " + propertyName);
+      return true;
+    } catch (Exception e) {
+      // e.g. names not allowed in OrientDB: the property stays schemaless
+      String logString =
+          "Cannot declare the Property '"
+              + propertyName
+              + "' on the Class '"
+              + orientClass.getName()
+              + "': "
+              + e.getMessage();
+      ONeo4jImporterContext.getInstance().getMessageHandler().warn(this, logString);
+      return false;
+    }
+  }
 
-          ONeo4jImporterContext.getInstance()
-              .getMessageHandler()
-              .debug(
-                  this,
-                  "Neo:"
-                      + currentRecord.get("outVertexID")
-                      + "-"
-                      + currentRelationshipType
-                      + "->"
-                      + currentRecord.get("inVertexID"));
-
-          // lookup the corresponding outVertex in OrientDB
-          List<Object> outVertexLabels = currentRecord.get("outVertexLabels").asList();
-          String outVertexClass;
-          if (outVertexLabels.size() > 1) {
-            outVertexClass = "MultipleLabelNeo4jConversion";
-          } else {
-            outVertexClass = (String) outVertexLabels.get(0);
-          }
-          String[] propertyOfKey = {"neo4jNodeID"};
-          Object[] valueOfKey = new Object[] {currentRecord.get("outVertexID").asObject()};
-          OVertex outVertex =
-              OGraphCommands.getVertex(oDb, outVertexClass, propertyOfKey[0], valueOfKey[0]);
-
-          // lookup the corresponding inVertex in OrientDB
-          List<Object> inVertexLabels = currentRecord.get("inVertexLabels").asList();
-          String inVertexClass;
-          if (inVertexLabels.size() > 1) {
-            inVertexClass = "MultipleLabelNeo4jConversion";
-          } else {
-            inVertexClass = (String) inVertexLabels.get(0);
-          }
-          valueOfKey[0] = currentRecord.get("inVertexID").asObject();
-          OVertex inVertex =
-              OGraphCommands.getVertex(oDb, inVertexClass, propertyOfKey[0], valueOfKey[0]);
+  private void createVertexClass(String className) {
+    if (!classResolver.existsClass(className)) {
+      classResolver.createVertexClass(oDb, className);
+    }
+  }
 
-          String orientEdgeClassName = currentRelationshipType;
+  /** Returns the size of the imported vertex and edge records, without indices. */
+  private long getRecordsSize() {
+    long size = 0;
+    OSchema schema = oDb.getMetadata().getSchema();
+    for (OClass currentClass : schema.getClass("V").getAllSubclasses()) {
+      for (int clusterId : currentClass.getClusterIds()) {
+        size += oDb.getClusterRecordSizeById(clusterId);
+      }
+    }
+    for (OClass currentClass : schema.getClass("E").getAllSubclasses()) {
+      for (int clusterId : currentClass.getClusterIds()) {
+        size += oDb.getClusterRecordSizeById(clusterId);
+      }
+    }
+    return size;
+  }
 
-          ONeo4jImporterContext.getInstance()
-              .getMessageHandler()
-              .debug(this, "\nOrientDb Edge class name: " + orientEdgeClassName);
-
-          /*
-           * In neo4j we can have labels on nodes and relationship with the same name, but in OrientDB we cannot have vertex and edges classes with the same name.
-           * To handle this case, we append an E_ to the relationship name in case the relationship name is the same of a vertex class.
-           */
-
-          Collection<OClass> vertexClasses =
-              oDb.getMetadata().getSchema().getClass("V").getAllSubclasses();
-          for (OClass currentClass : vertexClasses) {
-
-            if (orientEdgeClassName.equalsIgnoreCase(currentClass.getName())) {
-              // we have already a label on a vertex with the same name, changes the edge class by
-              // adding an "E_" prefix
-
-              // prints just one warning per relationship type (fix for github issue #1)
-              if (!oDb.getMetadata().getSchema().existsClass("E_" + orientEdgeClassName)) {
-
-                logString =
-                    "Found a Neo4j Relationship Type ('"
-                        + orientEdgeClassName
-                        + "') with same name of a Neo4j node Label ('"
-                        + currentClass.getName()
-                        + "'). Importing in OrientDB relationships of this type as 'E_"
-                        + orientEdgeClassName;
-                ONeo4jImporterContext.getInstance().getMessageHandler().warn(this, logString);
-              }
-              orientEdgeClassName = "E_" + orientEdgeClassName;
-            }
-          }
+  /**
+   * Imports nodes and builds indices.
+   *
+   * @param session
+   */
+  private void importVertices(Session session) throws Exception {
 
-          try {
-            OEdge currentEdge =
-                this.addEdgeToGraph(
-                    oDb, outVertex, inVertex, orientEdgeClassName, relationshipProperties);
-            statistics.orientDBImportedEdgesCounter++;
-            ONeo4jImporterContext.getInstance()
-                .getMessageHandler()
-                .debug(
-                    this,
-                    "Orient:"
-                        + outVertex.getProperty("@rid")
-                        + "-"
-                        + currentRelationshipType
-                        + "->"
-                        + inVertex.getProperty("@rid"));
-
-            if (cont % EDGES_BATCH_SIZE == 0) {
-              oDb.commit();
-              oDb.getLocalCache().clear();
-              oDb.begin();
-            }
-            cont++;
-          } catch (Exception e) {
-            oDb.rollback();
-            String mess =
-                "Found an error when trying to create an Edge in OrientDB. Corresponding Relationship in Neo4j is '"
-                    + currentRecord
-                    + "': "
-                    + e.getMessage();
-            ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-            ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-          }
-        }
+    String logString;
+    double value;
 
-        // committing last batch
-        oDb.commit();
-        oDb.getLocalCache().clear();
+    if (migrateNodes) {
 
+      logString =
+          "Getting all Nodes from Neo4j and creating corresponding Vertices in OrientDB...\n";
+      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+
+      /** Counting Neo4j Nodes so that we can show a % on OrientDB vertices creation */
+      try {
+        String query = "MATCH (node) RETURN count(node) as count";
+        StatementResult result = session.run(query);
+        Record record = result.next();
+        statistics.set(ONeo4jImporterStatistics.NEO4J_TOTAL_NODES, record.get("count").asDouble());
       } catch (Neo4jException e) {
-        oDb.rollback();
         String mess = "";
         ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
         ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
@@ -609,160 +1113,2205 @@ class ONeo4jImporterVerticesAndEdgesMigrator {
         ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
         ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
       }
-      importingRelsStopTime = System.currentTimeMillis();
-    }
-  }
 
-  private Object getNeo4jRecordValue(Record currentRecord, String key, Session session) {
-
-    Type type = currentRecord.get(key).type();
-    Object value = null;
+      nodeIdMap =
+          this.createNodeIdMap((long) statistics.get(ONeo4jImporterStatistics.NEO4J_TOTAL_NODES));
 
-    if (type.equals(session.typeSystem().INTEGER())) {
-      value = currentRecord.get(key).asInt();
-    } else if (type.equals(session.typeSystem().BOOLEAN())) {
-      value = currentRecord.get(key).asBoolean();
+      statistics.importingNodesStartTime = System.currentTimeMillis();
 
-    } else if (type.equals(session.typeSystem().FLOAT())) {
-      value = currentRecord.get(key).asFloat();
+      int workers = settings.getNodeImportWorkers();
+      List<ONeo4jImporterCheckpoint.Partition> partitions =
+          checkpoint.getPartitions(VERTICES_PHASE);
+      if (partitions == null) {
+        partitions = this.splitNodes(session, workers);
+        checkpoint.setPartitions(oDb, VERTICES_PHASE, partitions);
+      } else {
+        // resuming: the vertices found in the map are not imported again
+        this.loadNodeIdMap();
+      }
 
-    } else if (type.equals(session.typeSystem().NUMBER())) {
-      value = currentRecord.get(key).asNumber();
+      Queue<ImportQuery> queries = new ConcurrentLinkedQueue<ImportQuery>();
+      for (ONeo4jImporterCheckpoint.Partition partition : partitions) {
+        if (!partition.isFinished()) {
+          queries.add(
+              new ImportQuery(
+                  NODES_RANGE_QUERY,
+                  Values.parameters(
+                      "lo", partition.lo, "hi", partition.hi, "after", partition.getCommittedId()),
+                  partition));
+        }
+      }
+      this.importQueries(workers, queries, this.nodesStages());
 
-    } else if (type.equals(session.typeSystem().STRING())) {
-      value = currentRecord.get(key).asString();
+      statistics.importingNodesStopTime = System.currentTimeMillis();
     }
-
-    return value;
   }
 
-  /** */
-  private void buildIndicesOnEdges() {
+  /** Stages importing the Neo4j nodes as vertices. */
+  private ImportStages<PendingVertex> nodesStages() {
+    return new ImportStages<PendingVertex>(
+        ONeo4jImporterStatistics.NEO4J_NODES_FETCH, ONeo4jImporterStatistics.NEO4J_NODES_CONVERT) {
+      @Override
+      public PendingVertex convert(Record record) {
+        return convertNode(record);
+      }
 
-    String logString;
-    double value;
+      @Override
+      public long idOf(Record record) {
+        return record.get("id").asLong();
+      }
 
-    if (neo4jRelIdIndex) {
+      @Override
+      public boolean isImported(ONeo4jImporterCheckpoint.Partition partition, long id) {
+        return nodeIdMap.get(id) != null;
+      }
 
-      statistics.internalEdgeIndicesStartTime = System.currentTimeMillis();
+      @Override
+      public ImportWorker<PendingVertex> createWriter(ODatabaseDocument db) {
+        return new NodesImportWorker(db);
+      }
 
-      if (migrateRels) {
+      @Override
+      void deadLetter(Record record, String error) {
+        deadLetters.add(VERTICES_PHASE, this.idOf(record), record, error);
+        statistics.increment(ONeo4jImporterStatistics.ORIENTDB_VERTICES_FAILED);
+      }
+    };
+  }
 
-        logString =
-            "Creating internal Indices on properties 'neo4jRelID' on all OrientDB Edge Classes...\n";
-        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+  /**
+   * Writes the passed nodes through a writer of its own on the passed database, in chunks tracked
+   * by the partition, as the writers of the vertices phase do. It lets the tests import without a
+   * Neo4j instance to fetch the nodes from.
+   *
+   * @param db
+   * @param partition
+   * @param records
+   */
+  void writeNodes(
+      ODatabaseDocument db, ONeo4jImporterCheckpoint.Partition partition, List<Record> records)
+      throws InterruptedException {
+
+    if (nodeIdMap == null) {
+      this.classResolver = new ONeo4jImporterClassResolver(oDb);
+      this.propertyConverters = new ONeo4jImporterPropertyConverters();
+      this.nodeIdMap = this.createNodeIdMap(records.size());
+    }
+    ImportStages<PendingVertex> stages = this.nodesStages();
+    OPipelineQueue<PendingVertex> converted =
+        new OPipelineQueue<PendingVertex>(
+            records.size() + 2 * PIPELINE_CHUNK_SIZE, PIPELINE_CHUNK_SIZE, 1);
+    for (int from = 0; from < records.size(); from += PIPELINE_CHUNK_SIZE) {
+      List<Record> chunkRecords =
+          records.subList(from, Math.min(from + PIPELINE_CHUNK_SIZE, records.size()));
+      ImportChunk<PendingVertex> elements =
+          new ImportChunk<PendingVertex>(
+              chunkRecords.size(),
+              partition.newChunk(stages.idOf(chunkRecords.get(chunkRecords.size() - 1))));
+      for (Record record : chunkRecords) {
+        elements.add(stages.convert(record));
+      }
+      converted.put(elements);
+    }
+    partition.fetched();
+    converted.producerDone();
+    stages.createWriter(db).importQueue(converted);
+  }
 
-        Collection<OClass> edgeClasses =
-            oDb.getMetadata().getSchema().getClass("E").getAllSubclasses();
-        statistics.orientDBEdgeClassesCount = (double) edgeClasses.size();
+  /**
+   * Splits the Neo4j node id space in ranges, so that they can be imported concurrently, and
+   * resumed independently.
+   *
+   * @param session
+   * @param workers
+   * @return
+   */
+  private List<ONeo4jImporterCheckpoint.Partition> splitNodes(Session session, int workers) {
 
-        for (OClass currentEdgeClass : edgeClasses) {
+    List<ONeo4jImporterCheckpoint.Partition> ranges =
+        new ArrayList<ONeo4jImporterCheckpoint.Partition>();
+    long minId;
+    long maxId;
+    try {
+      String query = "MATCH (node) RETURN min(ID(node)) as minId, max(ID(node)) as maxId";
+      Record record = session.run(query).next();
+      if (record.get("minId").isNull()) {
+        return ranges; // no nodes
+      }
+      minId = record.get("minId").asLong();
+      maxId = record.get("maxId").asLong();
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
+    }
 
-          // index on property neo4jRelID
-          try {
+    long rangesCount = (long) workers * RANGES_PER_WORKER;
+    long rangeSize = Math.max(1, (maxId - minId + 1 + rangesCount - 1) / rangesCount);
+    for (long lo = minId; lo <= maxId; lo += rangeSize) {
+      ranges.add(
+          new ONeo4jImporterCheckpoint.Partition(null, lo, Math.min(lo + rangeSize, maxId + 1)));
+    }
+
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .debug(
+            this,
+            "Importing nodes with ids in ["
+                + minId
+                + ", "
+                + maxId
+                + "] in "
+                + ranges.size()
+                + " ranges by "
+                + workers
+                + " workers");
+    return ranges;
+  }
 
-            // first create the property
-            currentEdgeClass.createProperty("neo4jRelID", OType.LONG);
+  /**
+   * Imports the records returned by the queries. With the pipeline enabled, fetching, conversion
+   * and writing run in separate threads connected by bounded queues; otherwise each worker runs the
+   * three steps one after the other on its own queries.
+   *
+   * @param workers
+   * @param queries
+   * @param stages
+   */
+  private <C> void importQueries(int workers, Queue<ImportQuery> queries, ImportStages<C> stages)
+      throws Exception {
 
-            // creates the index if the property creation was successful
-            try {
-              currentEdgeClass
-                  .getProperty("neo4jRelID")
-                  .createIndex(OClass.INDEX_TYPE.UNIQUE_HASH_INDEX);
-              statistics.neo4jInternalEdgeIndicesCounter++;
-            } catch (Exception e) {
-              String mess =
-                  "Found an error when trying to create a UNIQUE Index in OrientDB on the 'neo4jRelID' Property of the edge Class '"
-                      + currentEdgeClass.getName()
-                      + "': "
-                      + e.getMessage();
-              ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-              ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-            }
-          } catch (Exception e) {
-            String mess =
-                "Found an error when trying to create the 'neo4jRelID' Property in OrientDB on the edge Class '"
-                    + currentEdgeClass.getName()
-                    + "': "
-                    + e.getMessage();
-            ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
-            ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
-          }
+    if (queries.isEmpty()) {
+      return;
+    }
+    writers.set(0);
+    if (settings.getPipelineQueueCapacity() > 0) {
+      this.importPipelined(workers, queries, stages);
+    } else if (workers > 1) {
+      this.importInParallel(workers, queries, stages);
+    } else {
+      // not the main session: it's replaced if the connection fails
+      Session workerSession =
+          ONeo4jImporterContext.getInstance().getNeo4jConnectionManager().getSession();
+      try {
+        ImportWorker<C> worker = stages.createWriter(oDb);
+        ImportQuery query;
+        while ((query = queries.poll()) != null) {
+          workerSession = worker.importQuery(workerSession, query, stages);
         }
-
-        statistics.internalEdgeIndicesStopTime = System.currentTimeMillis();
+      } finally {
+        workerSession.close();
       }
     }
+    // the last batches may have been committed within a second of the previous save
+    checkpoint.save(oDb);
   }
 
-  private OVertex addVertexToGraph(
-      ODatabaseDocument orientGraph, String classAndClusterName, Map<String, Object> properties) {
+  /**
+   * Runs the passed number of workers, each one with its own Neo4j session and its own OrientDB
+   * database session, which keep polling queries until all of them have been imported. The first
+   * failure stops the other workers and is rethrown.
+   *
+   * @param workers
+   * @param queries
+   * @param stages
+   */
+  private <C> void importInParallel(
+      int workers, final Queue<ImportQuery> queries, final ImportStages<C> stages)
+      throws Exception {
+
+    final String dbName = oDb.getName();
+    final AtomicBoolean aborted = new AtomicBoolean(false);
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < workers; i++) {
+      tasks.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              Session workerSession =
+                  ONeo4jImporterContext.getInstance().getNeo4jConnectionManager().getSession();
+              ODatabaseDocument workerDb = ONeo4jImporterInitializer.openDatabase(dbName);
+              try {
+                ImportWorker<C> worker = stages.createWriter(workerDb);
+                ImportQuery query;
+                while (!aborted.get() && (query = queries.poll()) != null) {
+                  workerSession = worker.importQuery(workerSession, query, stages);
+                }
+              } catch (Exception e) {
+                aborted.set(true);
+                throw e;
+              } finally {
+                workerDb.close();
+                workerSession.close();
+              }
+              return null;
+            }
+          });
+    }
+    this.runTasks(tasks, null);
+  }
+
+  /**
+   * Imports the records returned by the queries through a pipeline of three stages, each one with
+   * its own threads: readers stream the records from Neo4j, converters build the elements to store,
+   * writers store them in OrientDB in batches. Stages are connected by bounded queues, so a slow
+   * stage makes the previous ones wait instead of filling the heap, and Neo4j keeps streaming while
+   * OrientDB commits. There is a reader and a writer for each worker, each one with its own
+   * session. The first failure aborts all the stages and is rethrown.
+   *
+   * @param workers
+   * @param queries
+   * @param stages
+   */
+  private <C> void importPipelined(
+      int workers, final Queue<ImportQuery> queries, final ImportStages<C> stages)
+      throws Exception {
+
+    final String dbName = oDb.getName();
+    int capacity = settings.getPipelineQueueCapacity();
+    int readers = Math.min(workers, queries.size());
+    int converters = Math.max(1, settings.getConvertWorkers());
+    final OPipelineQueue<Record> fetched =
+        new OPipelineQueue<Record>(capacity, PIPELINE_CHUNK_SIZE, readers);
+    final OPipelineQueue<C> converted =
+        new OPipelineQueue<C>(capacity, PIPELINE_CHUNK_SIZE, converters);
+    statistics.set(ONeo4jImporterStatistics.PIPELINE_QUEUE_CAPACITY, capacity);
+
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .debug(
+            this,
+            "Importing through a pipeline of "
+                + readers
+                + " readers, "
+                + converters
+                + " converters and "
+                + workers
+                + " writers");
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < readers; i++) {
+      tasks.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              Session readerSession =
+                  ONeo4jImporterContext.getInstance().getNeo4jConnectionManager().getSession();
+              try {
+                ImportQuery query;
+                while (!fetched.isAborted() && (query = queries.poll()) != null) {
+                  readerSession = fetch(readerSession, query, stages, fetched);
+                }
+                fetched.producerDone();
+              } finally {
+                readerSession.close();
+              }
+              return null;
+            }
+          });
+    }
+    for (int i = 0; i < converters; i++) {
+      tasks.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              List<Record> records;
+              while ((records = fetched.take()) != null) {
+                statistics.set(ONeo4jImporterStatistics.PIPELINE_FETCHED, fetched.size());
+                ImportChunk<C> elements =
+                    new ImportChunk<C>(records.size(), ((ImportChunk<Record>) records).checkpoint);
+                for (Record record : records) {
+                  C element = stages.convertOrDeadLetter(record);
+                  if (element != null) {
+                    elements.add(element);
+                  }
+                }
+                if (elements.isEmpty()) {
+                  // nothing left to write: queues never hand over empty chunks
+                  elements.checkpoint.completed();
+                  continue;
+                }
+                if (!converted.put(elements)) {
+                  return null;
+                }
+                statistics.set(ONeo4jImporterStatistics.PIPELINE_CONVERTED, converted.size());
+              }
+              converted.producerDone();
+              return null;
+            }
+          });
+    }
+    for (int i = 0; i < workers; i++) {
+      tasks.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              ODatabaseDocument writerDb = ONeo4jImporterInitializer.openDatabase(dbName);
+              try {
+                stages.createWriter(writerDb).importQueue(converted);
+              } finally {
+                writerDb.close();
+              }
+              return null;
+            }
+          });
+    }
+
+    try {
+      this.runTasks(
+          tasks,
+          new Runnable() {
+            @Override
+            public void run() {
+              fetched.abort();
+              converted.abort();
+            }
+          });
+    } finally {
+      statistics.set(ONeo4jImporterStatistics.PIPELINE_QUEUE_CAPACITY, 0);
+      statistics.set(ONeo4jImporterStatistics.PIPELINE_FETCHED, 0);
+      statistics.set(ONeo4jImporterStatistics.PIPELINE_CONVERTED, 0);
+    }
+  }
 
-    OVertex vertex = null;
-    boolean alreadySaved = false;
+  /**
+   * Streams the records returned by a query into the queue, in chunks. Each chunk is registered in
+   * the checkpoint of the partition before being handed over, in the order of the ids.
+   *
+   * @return the session to use for the next queries, replaced if the connection failed
+   */
+  private Session fetch(
+      Session session, ImportQuery query, ImportStages<?> stages, OPipelineQueue<Record> fetched)
+      throws InterruptedException {
+    ImportCursor cursor = new ImportCursor(session, query, stages);
     try {
-      if (classAndClusterName != null) {
-        if (!oDb.getMetadata().getSchema().existsClass(classAndClusterName)) {
-          oDb.commit();
-          oDb.createVertexClass(classAndClusterName);
-          oDb.begin();
+      ImportChunk<Record> records = new ImportChunk<Record>(PIPELINE_CHUNK_SIZE, null);
+      Record record;
+      while ((record = cursor.next()) != null) {
+        records.add(record);
+        if (records.size() == PIPELINE_CHUNK_SIZE) {
+          records.checkpoint = query.partition.newChunk(stages.idOf(record));
+          if (!fetched.put(records)) {
+            return cursor.getSession();
+          }
+          statistics.set(ONeo4jImporterStatistics.PIPELINE_FETCHED, fetched.size());
+          records = new ImportChunk<Record>(PIPELINE_CHUNK_SIZE, null);
         }
-        vertex = orientGraph.newVertex(classAndClusterName);
-        if (properties != null) {
-          this.setElementProperties(vertex, properties);
-          alreadySaved = true;
+      }
+      if (!records.isEmpty()) {
+        records.checkpoint = query.partition.newChunk(stages.idOf(records.get(records.size() - 1)));
+        if (!fetched.put(records)) {
+          return cursor.getSession();
         }
       }
-    } catch (OValidationException e) {
-      ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, e.getMessage());
-    }
-    if (!alreadySaved) {
-      vertex.save();
+      query.partition.fetched();
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
     }
-    return vertex;
+    return cursor.getSession();
   }
 
-  private OEdge addEdgeToGraph(
-      ODatabaseDocument orientGraph,
-      OVertex currentOutVertex,
-      OVertex currentInVertex,
-      String edgeType,
-      Map<String, Object> properties) {
+  /**
+   * Runs the tasks in their own threads and waits for all of them. The first failure is rethrown,
+   * after running the passed abort action, if any, to stop the other tasks.
+   *
+   * @param tasks
+   * @param abort
+   */
+  private void runTasks(List<Callable<Void>> tasks, Runnable abort) throws Exception {
 
-    OEdge edge = null;
-    boolean alreadySaved = false;
+    ExecutorService pool = Executors.newFixedThreadPool(tasks.size(), WORKER_THREADS);
+    CompletionService<Void> completionService = new ExecutorCompletionService<Void>(pool);
     try {
-      if (!oDb.getMetadata().getSchema().existsClass(edgeType)) {
-        oDb.commit();
-        oDb.createEdgeClass(edgeType);
-        oDb.begin();
+      for (Callable<Void> task : tasks) {
+        completionService.submit(task);
+      }
+      // in completion order, so that a failure is seen while the other tasks are still waiting
+      for (int i = 0; i < tasks.size(); i++) {
+        try {
+          completionService.take().get();
+        } catch (ExecutionException e) {
+          if (abort != null) {
+            abort.run();
+          }
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw e;
+        }
       }
-      edge = orientGraph.newEdge(currentOutVertex, currentInVertex, edgeType);
-      if (properties != null) {
-        this.setElementProperties(edge, properties);
-        alreadySaved = true;
+    } finally {
+      if (abort != null) {
+        abort.run();
       }
-    } catch (OValidationException e) {
-      ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, e.getMessage());
-    }
-    if (!alreadySaved) {
-      edge.save();
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      oDb.activateOnCurrentThread();
     }
-    return edge;
   }
 
-  private void setElementProperties(OElement element, Map<String, Object> properties) {
+  /**
+   * Chooses where to keep the Neo4j node id -> RID map: in heap if it fits the configured memory
+   * budget (a quarter of the max heap by default), in memory-mapped files otherwise.
+   *
+   * @param expectedNodes
+   * @return
+   */
+  private ONeo4jNodeIdMap createNodeIdMap(long expectedNodes) {
 
-    try {
+    long budget = settings.getNodeIdMapMemoryBudgetMB() * 1024 * 1024;
+    if (budget <= 0) {
+      budget = Runtime.getRuntime().maxMemory() / 4;
+    }
 
-      for (String property : properties.keySet()) {
-        Object value = properties.get(property);
-        element.setProperty(property, value);
-      }
-      element.save();
+    long requiredMemory = OInHeapNeo4jNodeIdMap.estimateMemory(expectedNodes);
+    if (requiredMemory >= 0 && requiredMemory <= budget) {
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .debug(
+              this,
+              "Keeping the Neo4j node ids map in heap (" + requiredMemory / (1024 * 1024) + "MB)");
+      return new OInHeapNeo4jNodeIdMap(expectedNodes);
+    }
+
+    File directory;
+    if (settings.getNodeIdMapDirectory() != null) {
+      directory = new File(settings.getNodeIdMapDirectory());
+    } else {
+      directory =
+          new File(
+              System.getProperty("java.io.tmpdir"),
+              "neo4j-importer-ids-" + System.currentTimeMillis());
+    }
+    String logString =
+        "The Neo4j node ids map does not fit the memory budget of "
+            + budget / (1024 * 1024)
+            + "MB: it will be kept in memory-mapped files in '"
+            + directory.getAbsolutePath()
+            + "'\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+    return new OMappedNeo4jNodeIdMap(directory);
+  }
 
-    } catch (OValidationException e) {
-      ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, e.getMessage());
+  private void importIndicesOnVertices() {
+
+    String logString;
+    double value;
+
+    /**
+     * Building Indices on Vertex classes: - two indices on each OrientDB vertex class on properties
+     * neo4jNodeID & neo4jLabelList - index on neo4jNodeID: it will help in speeding up vertices
+     * lookup during relationships creation - index on neo4jLabelList: it will help querying by
+     * original Neo4j Label
+     */
+    statistics.internalVertexIndicesStartTime = System.currentTimeMillis();
+    logString =
+        "Creating internal Indices on properties 'neo4jNodeID' & 'neo4jLabelList' on all OrientDB Vertices Classes...\n";
+    ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+
+    Collection<OClass> vertexClasses =
+        oDb.getMetadata().getSchema().getClass("V").getAllSubclasses();
+    statistics.set(ONeo4jImporterStatistics.ORIENTDB_VERTEX_CLASSES, vertexClasses.size());
+
+    for (OClass currentClass : vertexClasses) {
+
+      // index on property neo4jNodeID
+      try {
+
+        // first create the property, if not declared before the load
+        if (!currentClass.existsProperty("neo4jNodeID")) {
+          ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+          currentClass.createProperty(
+              "neo4jNodeID", OType.LONG); // neo4jNodeID always stored as a Long
+          event.commit(currentClass.getName(), "create property neo4jNodeID");
+        }
+
+        // creates the index if the property creation was successful, unless the interrupted run of
+        // a resumed import created it
+        try {
+
+          if (!currentClass.areIndexed("neo4jNodeID")) {
+            ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+            currentClass
+                .getProperty("neo4jNodeID")
+                .createIndex(OClass.INDEX_TYPE.UNIQUE_HASH_INDEX);
+            event.commit(currentClass.getName(), "create unique hash index on neo4jNodeID");
+          }
+          statistics.increment(ONeo4jImporterStatistics.ORIENTDB_INTERNAL_VERTEX_INDICES);
+        } catch (Exception e) {
+          String mess =
+              "Found an error when trying to create a UNIQUE Index in OrientDB on the 'neo4jNodeID' Property of the vertex Class '"
+                  + currentClass.getName()
+                  + "': "
+                  + e.getMessage();
+          ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+          ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+        }
+      } catch (Exception e) {
+        String mess =
+            "Found an error when trying to create the 'neo4jNodeID' Property in OrientDB on the vertex Class '"
+                + currentClass.getName()
+                + "': "
+                + e.getMessage();
+        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      }
+
+      // index on property neo4jLabelList
+      try {
+
+        // first create the property, if not declared before the load
+        if (!currentClass.existsProperty("neo4jLabelList")) {
+          ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+          currentClass.createProperty("neo4jLabelList", OType.EMBEDDEDLIST, OType.STRING);
+          event.commit(currentClass.getName(), "create property neo4jLabelList");
+        }
+
+        // creates the index if the property creation was successful, unless already there
+        try {
+
+          if (!currentClass.areIndexed("neo4jLabelList")) {
+            ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+            currentClass
+                .getProperty("neo4jLabelList")
+                .createIndex(OClass.INDEX_TYPE.NOTUNIQUE_HASH_INDEX);
+            event.commit(currentClass.getName(), "create not unique hash index on neo4jLabelList");
+          }
+          statistics.increment(ONeo4jImporterStatistics.ORIENTDB_INTERNAL_VERTEX_INDICES);
+        } catch (Exception e) {
+          String mess =
+              "Found an error when trying to create a NOT UNIQUE Index in OrientDB on the 'neo4jLabelList' Property of the vertex Class '"
+                  + currentClass.getName()
+                  + "': "
+                  + e.getMessage();
+          ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+          ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+        }
+      } catch (Exception e) {
+        String mess =
+            "Found an error when trying to create the 'neo4jLabelList' Property in OrientDB on the vertex Class '"
+                + currentClass.getName()
+                + "': "
+                + e.getMessage();
+        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      }
+    }
+
+    statistics.internalVertexIndicesStopTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Imports all the relationships present in the source neo4j graph database.
+   *
+   * @param session
+   */
+  private void importEdges(Session session) throws Exception {
+
+    String logString;
+    double value;
+    importingRelsStartTime = 0L;
+    importingRelsStopTime = 0L;
+
+    if (migrateRels) {
+
+      logString =
+          "Getting all Relationships from Neo4j and creating corresponding Edges in OrientDB...\n";
+
+      ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+
+      // counting Neo4j Relationships so that we can show a % on OrientDB Edges creation
+      try {
+        String query = "MATCH ()-[r]->() RETURN count(r) as count";
+        StatementResult result = session.run(query);
+        Record record = result.next();
+        statistics.set(
+            ONeo4jImporterStatistics.NEO4J_TOTAL_RELATIONSHIPS, record.get("count").asDouble());
+      } catch (Neo4jException e) {
+        String mess = "";
+        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+        throw new RuntimeException(e);
+      } catch (Exception e) {
+        String mess = "";
+        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      }
+
+      importingRelsStartTime = System.currentTimeMillis();
+
+      if (nodeIdMap == null) {
+        // the vertices were imported by a previous run
+        nodeIdMap = this.createNodeIdMap(oDb.countClass("V"));
+        this.loadNodeIdMap();
+      }
+
+      int workers = settings.getEdgeImportWorkers();
+      List<ONeo4jImporterCheckpoint.Partition> partitions = checkpoint.getPartitions(EDGES_PHASE);
+      if (partitions == null) {
+        partitions = this.splitRelationships(session, workers);
+        checkpoint.setPartitions(oDb, EDGES_PHASE, partitions);
+      } else {
+        this.loadImportedRelationships(partitions);
+      }
+
+      Queue<ImportQuery> queries = new ConcurrentLinkedQueue<ImportQuery>();
+      for (ONeo4jImporterCheckpoint.Partition partition : partitions) {
+        if (!partition.isFinished()) {
+          queries.add(this.relationshipsQuery(partition));
+        }
+      }
+      this.importQueries(workers, queries, this.relationshipsStages());
+
+      importingRelsStopTime = System.currentTimeMillis();
+    }
+  }
+
+  /** Stages importing the Neo4j relationships as edges. */
+  private ImportStages<PendingEdge> relationshipsStages() {
+    return new ImportStages<PendingEdge>(
+        ONeo4jImporterStatistics.NEO4J_RELATIONSHIPS_FETCH,
+        ONeo4jImporterStatistics.NEO4J_RELATIONSHIPS_CONVERT) {
+      @Override
+      public PendingEdge convert(Record record) {
+        return convertRelationship(record);
+      }
+
+      @Override
+      public long idOf(Record record) {
+        return record.get("relationshipId").asLong();
+      }
+
+      @Override
+      public ImportWorker<PendingEdge> createWriter(ODatabaseDocument db) {
+        return new EdgesImportWorker(db);
+      }
+
+      @Override
+      void deadLetter(Record record, String error) {
+        deadLetters.add(EDGES_PHASE, this.idOf(record), record, error);
+        statistics.increment(ONeo4jImporterStatistics.ORIENTDB_EDGES_FAILED);
+      }
+    };
+  }
+
+  /**
+   * Splits the relationships by type, so that they can be imported concurrently and resumed
+   * independently: types are enumerated through db.relationshipTypes(), and the types bigger than a
+   * fair share of the relationships are further split in ID(r) ranges. Partitions are returned
+   * largest first, so that the small ones balance the load at the end.
+   *
+   * @param session
+   * @param workers
+   * @return
+   */
+  private List<ONeo4jImporterCheckpoint.Partition> splitRelationships(
+      Session session, int workers) {
+
+    List<RelationshipsPartition> partitions = new ArrayList<RelationshipsPartition>();
+    long partitionSize =
+        Math.max(
+            1,
+            (long) statistics.get(ONeo4jImporterStatistics.NEO4J_TOTAL_RELATIONSHIPS)
+                / ((long) workers * RANGES_PER_WORKER));
+
+    try {
+      List<String> relationshipTypes = new ArrayList<String>();
+      StatementResult result = session.run("CALL db.relationshipTypes()");
+      while (result.hasNext()) {
+        relationshipTypes.add(result.next().get("relationshipType").asString());
+      }
+
+      for (String relationshipType : relationshipTypes) {
+        String pattern = "MATCH ()-[r:" + escapeIdentifier(relationshipType) + "]->()";
+        long count =
+            session.run(pattern + " RETURN count(r) as count").next().get("count").asLong();
+        if (count == 0) {
+          continue;
+        }
+        if (count <= partitionSize) {
+          partitions.add(new RelationshipsPartition(relationshipType, -1, -1, count));
+          continue;
+        }
+
+        Record record =
+            session.run(pattern + " RETURN min(ID(r)) as minId, max(ID(r)) as maxId").next();
+        long minId = record.get("minId").asLong();
+        long maxId = record.get("maxId").asLong();
+        long rangesCount = (count + partitionSize - 1) / partitionSize;
+        long rangeSize = Math.max(1, (maxId - minId + rangesCount) / rangesCount);
+        for (long lo = minId; lo <= maxId; lo += rangeSize) {
+          partitions.add(
+              new RelationshipsPartition(
+                  relationshipType, lo, Math.min(lo + rangeSize, maxId + 1), count / rangesCount));
+        }
+      }
+    } catch (Neo4jException e) {
+      String mess = "";
+      ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+      throw new RuntimeException(e);
+    }
+
+    Collections.sort(
+        partitions,
+        new Comparator<RelationshipsPartition>() {
+          @Override
+          public int compare(RelationshipsPartition p1, RelationshipsPartition p2) {
+            return Long.compare(p2.estimatedSize, p1.estimatedSize);
+          }
+        });
+
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .debug(
+            this,
+            "Importing relationships in "
+                + partitions.size()
+                + " partitions by "
+                + workers
+                + " workers");
+
+    List<ONeo4jImporterCheckpoint.Partition> checkpointPartitions =
+        new ArrayList<ONeo4jImporterCheckpoint.Partition>();
+    for (RelationshipsPartition partition : partitions) {
+      checkpointPartitions.add(
+          new ONeo4jImporterCheckpoint.Partition(
+              partition.relationshipType, partition.lo, partition.hi));
+    }
+    return checkpointPartitions;
+  }
+
+  /** Returns the query of the relationships of the partition not imported yet. */
+  private ImportQuery relationshipsQuery(ONeo4jImporterCheckpoint.Partition partition) {
+    String query =
+        "MATCH (a)-[r:" + escapeIdentifier(partition.name) + "]->(b) WHERE ID(r) > $after";
+    if (partition.isRange()) {
+      return new ImportQuery(
+          query + " AND ID(r) >= $lo AND ID(r) < $hi" + RELATIONSHIPS_RETURN,
+          Values.parameters(
+              "after", partition.getCommittedId(), "lo", partition.lo, "hi", partition.hi),
+          partition);
+    }
+    return new ImportQuery(
+        query + RELATIONSHIPS_RETURN,
+        Values.parameters("after", partition.getCommittedId()),
+        partition);
+  }
+
+  /**
+   * Fills the node id map with the vertices imported by a previous run, reading the neo4jNodeID
+   * property of all the vertices.
+   */
+  private void loadNodeIdMap() {
+    this.visitStoredElements(
+        "V",
+        "neo4jNodeID",
+        new StoredElementVisitor() {
+          @Override
+          public void visit(long neo4jId, ORID rid) {
+            nodeIdMap.put(neo4jId, rid);
+          }
+        });
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(this, "Found " + nodeIdMap.size() + " vertices imported by the previous run\n");
+  }
+
+  /**
+   * Finds the edges imported by a previous run beyond the committed id of the unfinished
+   * partitions, so that they are not imported again. Each edge class is read once.
+   *
+   * @param partitions
+   */
+  private void loadImportedRelationships(List<ONeo4jImporterCheckpoint.Partition> partitions) {
+
+    Map<String, List<ONeo4jImporterCheckpoint.Partition>> partitionsByClass =
+        new HashMap<String, List<ONeo4jImporterCheckpoint.Partition>>();
+    for (ONeo4jImporterCheckpoint.Partition partition : partitions) {
+      if (partition.isFinished()) {
+        continue;
+      }
+      String edgeClassName = classResolver.resolveEdgeClass(partition.name);
+      List<ONeo4jImporterCheckpoint.Partition> classPartitions =
+          partitionsByClass.get(edgeClassName);
+      if (classPartitions == null) {
+        classPartitions = new ArrayList<ONeo4jImporterCheckpoint.Partition>();
+        partitionsByClass.put(edgeClassName, classPartitions);
+      }
+      classPartitions.add(partition);
+    }
+
+    long found = 0;
+    for (Map.Entry<String, List<ONeo4jImporterCheckpoint.Partition>> entry :
+        partitionsByClass.entrySet()) {
+      if (!oDb.getMetadata().getSchema().existsClass(entry.getKey())) {
+        continue;
+      }
+      Map<ONeo4jImporterCheckpoint.Partition, Set<Long>> imported =
+          new HashMap<ONeo4jImporterCheckpoint.Partition, Set<Long>>();
+      for (ODocument edge : oDb.browseClass(entry.getKey(), false)) {
+        Object neo4jRelId = edge.field("neo4jRelID");
+        if (!(neo4jRelId instanceof Number)) {
+          continue;
+        }
+        long id = ((Number) neo4jRelId).longValue();
+        for (ONeo4jImporterCheckpoint.Partition partition : entry.getValue()) {
+          if (id > partition.getCommittedId()
+              && (!partition.isRange() || (id >= partition.lo && id < partition.hi))) {
+            Set<Long> ids = imported.get(partition);
+            if (ids == null) {
+              ids = new HashSet<Long>();
+              imported.put(partition, ids);
+            }
+            ids.add(id);
+            found++;
+          }
+        }
+      }
+      for (Map.Entry<ONeo4jImporterCheckpoint.Partition, Set<Long>> ids : imported.entrySet()) {
+        ids.getKey().setImported(ids.getValue());
+      }
+    }
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .info(
+            this, "Found " + found + " edges imported by the previous run after its checkpoint\n");
+  }
+
+  private static String escapeIdentifier(String identifier) {
+    return "`" + identifier.replace("`", "``") + "`";
+  }
+
+  private Object getNeo4jRecordValue(Record currentRecord, String key, Session session) {
+
+    Type type = currentRecord.get(key).type();
+    Object value = null;
+
+    if (type.equals(session.typeSystem().INTEGER())) {
+      value = currentRecord.get(key).asInt();
+    } else if (type.equals(session.typeSystem().BOOLEAN())) {
+      value = currentRecord.get(key).asBoolean();
+
+    } else if (type.equals(session.typeSystem().FLOAT())) {
+      value = currentRecord.get(key).asFloat();
+
+    } else if (type.equals(session.typeSystem().NUMBER())) {
+      value = currentRecord.get(key).asNumber();
+
+    } else if (type.equals(session.typeSystem().STRING())) {
+      value = currentRecord.get(key).asString();
+    }
+
+    return value;
+  }
+
+  /** */
+  private void buildIndicesOnEdges() {
+
+    String logString;
+    double value;
+
+    if (neo4jRelIdIndex) {
+
+      statistics.internalEdgeIndicesStartTime = System.currentTimeMillis();
+
+      if (migrateRels) {
+
+        logString =
+            "Creating internal Indices on properties 'neo4jRelID' on all OrientDB Edge Classes...\n";
+        ONeo4jImporterContext.getInstance().getMessageHandler().info(this, logString);
+
+        Collection<OClass> edgeClasses =
+            oDb.getMetadata().getSchema().getClass("E").getAllSubclasses();
+        statistics.set(ONeo4jImporterStatistics.ORIENTDB_EDGE_CLASSES, edgeClasses.size());
+
+        for (OClass currentEdgeClass : edgeClasses) {
+
+          // index on property neo4jRelID
+          try {
+
+            // first create the property, if not declared before the load
+            if (!currentEdgeClass.existsProperty("neo4jRelID")) {
+              ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+              currentEdgeClass.createProperty("neo4jRelID", OType.LONG);
+              event.commit(currentEdgeClass.getName(), "create property neo4jRelID");
+            }
+
+            // creates the index if the property creation was successful, unless already there
+            try {
+              if (!currentEdgeClass.areIndexed("neo4jRelID")) {
+                ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.SCHEMA_CHANGE.begin();
+                currentEdgeClass
+                    .getProperty("neo4jRelID")
+                    .createIndex(OClass.INDEX_TYPE.UNIQUE_HASH_INDEX);
+                event.commit(currentEdgeClass.getName(), "create unique hash index on neo4jRelID");
+              }
+              statistics.increment(ONeo4jImporterStatistics.ORIENTDB_INTERNAL_EDGE_INDICES);
+            } catch (Exception e) {
+              String mess =
+                  "Found an error when trying to create a UNIQUE Index in OrientDB on the 'neo4jRelID' Property of the edge Class '"
+                      + currentEdgeClass.getName()
+                      + "': "
+                      + e.getMessage();
+              ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+              ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+            }
+          } catch (Exception e) {
+            String mess =
+                "Found an error when trying to create the 'neo4jRelID' Property in OrientDB on the edge Class '"
+                    + currentEdgeClass.getName()
+                    + "': "
+                    + e.getMessage();
+            ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+            ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+          }
+        }
+
+        statistics.internalEdgeIndicesStopTime = System.currentTimeMillis();
+      }
+    }
+  }
+
+  private OVertex addVertexToGraph(
+      ODatabaseDocument orientGraph, String classAndClusterName, Map<String, Object> properties) {
+
+    // validation errors reach the worker, which dead-letters the record
+    OVertex vertex = orientGraph.newVertex(classAndClusterName);
+    if (properties != null) {
+      this.setElementProperties(vertex, properties);
+    } else {
+      vertex.save();
+    }
+    return vertex;
+  }
+
+  private OEdge addEdgeToGraph(
+      ODatabaseDocument orientGraph,
+      OVertex currentOutVertex,
+      OVertex currentInVertex,
+      String edgeType,
+      Map<String, Object> properties) {
+
+    OEdge edge = orientGraph.newEdge(currentOutVertex, currentInVertex, edgeType);
+    if (properties != null) {
+      this.setElementProperties(edge, properties);
+    } else {
+      edge.save();
+    }
+    return edge;
+  }
+
+  /**
+   * Replaces the properties of a vertex or an edge stored by a previous run with the current ones
+   * of its Neo4j node or relationship. The class, and the links of the graph, are kept. If the
+   * element is not in the class of its current labels or type, because they changed or Neo4j reused
+   * the id of a deleted record, it's deleted instead, with its edges, to be stored again.
+   *
+   * @param db
+   * @param rid
+   * @param className resolved from the current labels or type
+   * @param properties
+   * @return null if the element doesn't exist anymore, or has been deleted
+   */
+  private <T extends OElement> T updateElement(
+      ODatabaseDocument db, ORID rid, String className, Map<String, Object> properties) {
+
+    T element = db.load(rid);
+    if (element == null) {
+      return null;
+    }
+    OClass elementClass = element.getSchemaType().orElse(null);
+    if (elementClass == null || !elementClass.getName().equalsIgnoreCase(className)) {
+      element.delete();
+      return null;
+    }
+    for (String property : element.getPropertyNames()) {
+      boolean link =
+          element.isEdge()
+              ? property.equals("out") || property.equals("in")
+              : property.startsWith("out_") || property.startsWith("in_");
+      if (!link && !properties.containsKey(property)) {
+        element.removeProperty(property);
+      }
+    }
+    this.setElementProperties(element, properties);
+    return element;
+  }
+
+  private void setElementProperties(OElement element, Map<String, Object> properties) {
+
+    for (String property : properties.keySet()) {
+      Object value = properties.get(property);
+      element.setProperty(property, value);
+    }
+    element.save();
+  }
+
+  /**
+   * Builds the vertex to store for a Neo4j node. It only reads the state of the migrator, so it can
+   * be called by several converter threads.
+   *
+   * @param currentRecord
+   * @return
+   */
+  private PendingVertex convertNode(Record currentRecord) {
+
+    List<Object> nodeLabels = currentRecord.get("labels").asList();
+    String[] multipleLabelsArray = new String[nodeLabels.size()];
+    for (int i = 0; i < multipleLabelsArray.length; i++) {
+      multipleLabelsArray[i] = (String) nodeLabels.get(i);
+    }
+
+    // determines the class to use in OrientDB, starting from the original Neo4j labels
+    String orientVertexClass = classResolver.resolveVertexClass(nodeLabels);
+
+    // gets the node properties, converted as learned from the nodes with the same label
+    Map<String, Object> nodeProperties =
+        ONeo4jImporterPropertyConverters.convertProperties(
+            currentRecord.get("properties"),
+            propertyConverters.forLabel(nodeLabels.isEmpty() ? null : (String) nodeLabels.get(0)));
+
+    // stores also the original neo4j nodeId in the property map - we will use it when
+    // creating the corresponding OrientDB vertex
+    long neo4jNodeId = currentRecord.get("id").asLong();
+    nodeProperties.put("neo4jNodeID", neo4jNodeId); // neo4jNodeID always stored as a Long
+
+    // store also the original labels
+    nodeProperties.put("neo4jLabelList", multipleLabelsArray);
+
+    return new PendingVertex(
+        currentRecord,
+        neo4jNodeId,
+        incremental ? nodeIdMap.get(neo4jNodeId) : null,
+        orientVertexClass,
+        nodeLabels.size(),
+        nodeProperties,
+        OBatchSizeController.estimateSize(nodeProperties));
+  }
+
+  /**
+   * Builds the edge to store for a Neo4j relationship, resolving the RIDs of its endpoints. The
+   * RIDs are null if the endpoints were not imported. It only reads the state of the migrator, so
+   * it can be called by several converter threads.
+   *
+   * @param currentRecord
+   * @return
+   */
+  private PendingEdge convertRelationship(Record currentRecord) {
+
+    // debug messages are built only if printed: this runs for each relationship
+    boolean debugEnabled = ONeo4jImporterContext.getInstance().isDebugEnabled();
+
+    String currentRelationshipType = currentRecord.get("relationshipType").asString();
+    if (debugEnabled) {
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .debug(this, "Current relationship type: " + currentRelationshipType);
+    }
+
+    // get the relationship properties, converted as the node ones
+    Map<String, Object> relationshipProperties =
+        ONeo4jImporterPropertyConverters.convertProperties(
+            currentRecord.get("relationshipProps"),
+            propertyConverters.forRelationshipType(currentRelationshipType));
+
+    // store also the original neo4j relationship id
+    long neo4jRelId = currentRecord.get("relationshipId").asLong();
+    relationshipProperties.put("neo4jRelID", neo4jRelId);
+
+    if (debugEnabled) {
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .debug(
+              this,
+              "Neo:"
+                  + currentRecord.get("outVertexID")
+                  + "-"
+                  + currentRelationshipType
+                  + "->"
+                  + currentRecord.get("inVertexID"));
+    }
+
+    String orientEdgeClassName = classResolver.resolveEdgeClass(currentRelationshipType);
+
+    if (debugEnabled) {
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .debug(this, "\nOrientDb Edge class name: " + orientEdgeClassName);
+    }
+
+    return new PendingEdge(
+        currentRecord,
+        incremental ? changedEdges.get(neo4jRelId) : null,
+        currentRecord.get("outVertexID").asLong(),
+        currentRecord.get("inVertexID").asLong(),
+        orientEdgeClassName,
+        relationshipProperties,
+        EDGE_OVERHEAD_BYTES + OBatchSizeController.estimateSize(relationshipProperties));
+  }
+
+  /**
+   * Base of the import workers: it owns the OrientDB database session of the worker and applies the
+   * transactionality mode. In TX mode the records of a batch are saved in a single transaction; in
+   * NoTX mode each record is saved on its own under the massive insert intent, and the storage is
+   * flushed to disk every NOTX_SYNC_INTERVAL batches.
+   *
+   * <p>A record failing to save doesn't lose the rest of its batch: in TX mode the batch is rolled
+   * back and its other records are saved again, and a batch failing on commit is split in halves,
+   * recursively, until the failing records are isolated. The failing records are written to the
+   * dead-letter file.
+   */
+  private abstract class ImportWorker<C> {
+
+    protected final ODatabaseDocument db;
+    protected final boolean transactional;
+    protected final OBatchSizeController batchSizeController;
+    protected final OMetricsRegistry.Timer saveTimer;
+    private final OMetricsRegistry.Timer commitTimer;
+    // a gauge of its own: the gauges shared by the workers hold the last value written by any
+    protected final OMetricsRegistry.Gauge lastCommittedId;
+    private final ONeo4jImporterControl control = ONeo4jImporterContext.getInstance().getControl();
+    private int batchesSinceSync;
+    private int recordsSinceAcquire; // written since the import was last paused or throttled
+    private boolean batchOpen; // begun by the first write after the last commit or rollback
+    private String batchClassName; // of the records in the current batch, for the JFR events
+    // chunks whose records have all been written in the current batch, or in the previous ones
+    private final List<ONeo4jImporterCheckpoint.Chunk> batchChunks =
+        new ArrayList<ONeo4jImporterCheckpoint.Chunk>();
+    // saved in the current batch, in order, to save them again if the batch fails
+    protected final List<C> batchElements = new ArrayList<C>();
+
+    ImportWorker(
+        ODatabaseDocument db,
+        int minBatchSize,
+        int maxBatchSize,
+        String saveTimer,
+        String commitTimer,
+        String lastCommittedIdGauge) {
+      this.db = db;
+      this.saveTimer = statistics.getMetrics().timer(saveTimer);
+      this.commitTimer = statistics.getMetrics().timer(commitTimer);
+      this.lastCommittedId =
+          statistics.getMetrics().gauge(lastCommittedIdGauge + "." + writers.getAndIncrement());
+      this.transactional = settings.getTransactionality() == OrientTransactionality.TX;
+      this.batchSizeController =
+          new OBatchSizeController(minBatchSize, maxBatchSize, INITIAL_BATCH_BYTES);
+    }
+
+    /**
+     * Adds the element to the current batch, committing the batch when it's full. Errors are
+     * handled for each element: the failing elements are dead-lettered and the import goes on.
+     */
+    protected abstract void write(C element);
+
+    /** Saves the element in the current batch, adding it to the batch elements if successful. */
+    protected abstract void store(C element);
+
+    /** Writes the element to the dead-letter file. */
+    protected abstract void deadLetter(C element, String error);
+
+    protected abstract void commitBatch();
+
+    protected abstract void rollbackBatch();
+
+    /**
+     * Fetches, converts and writes the records returned by the query, one after the other.
+     *
+     * @param session
+     * @param query
+     * @param stages
+     */
+    Session importQuery(Session session, ImportQuery query, ImportStages<C> stages) {
+
+      ImportCursor cursor = new ImportCursor(session, query, stages);
+      this.startImport();
+      try {
+        Record record;
+        int chunkRecords = 0;
+        long lastId = -1;
+        while ((record = cursor.next()) != null) {
+          C element = stages.convertOrDeadLetter(record);
+          if (element != null) {
+            this.write(element);
+          }
+          lastId = stages.idOf(record);
+          if (++chunkRecords == PIPELINE_CHUNK_SIZE) {
+            this.chunkWritten(query.partition.newChunk(lastId));
+            chunkRecords = 0;
+          }
+          this.acquireBetweenBatches();
+        }
+        if (chunkRecords > 0) {
+          this.chunkWritten(query.partition.newChunk(lastId));
+        }
+        query.partition.fetched();
+
+        // committing last batch
+        this.commitBatchOrBisect();
+
+      } catch (Exception e) {
+        // the partition is not completed: the batch is dropped and the import stops, so that the
+        // checkpoint never moves past records that were not stored
+        this.rollbackBatch();
+        String mess = "";
+        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+        throw new RuntimeException(e);
+      } finally {
+        this.endImport();
+      }
+      return cursor.getSession();
+    }
+
+    /**
+     * Writes the elements converted by the previous stages of the pipeline, until the queue ends.
+     * If the pipeline is aborted, the current batch is rolled back.
+     *
+     * @param converted
+     */
+    void importQueue(OPipelineQueue<C> converted) throws InterruptedException {
+
+      this.startImport();
+      try {
+        List<C> elements;
+        while ((elements = converted.take()) != null) {
+          statistics.set(ONeo4jImporterStatistics.PIPELINE_CONVERTED, converted.size());
+          for (C element : elements) {
+            this.write(element);
+            this.acquireBetweenBatches();
+          }
+          this.chunkWritten(((ImportChunk<C>) elements).checkpoint);
+        }
+
+        if (converted.isAborted()) {
+          this.rollbackBatch();
+        } else {
+          // committing last batch
+          this.commitBatchOrBisect();
+        }
+      } finally {
+        this.endImport();
+      }
+    }
+
+    /**
+     * Counts the record just written, and waits while the import is paused or throttled if no batch
+     * is open, i.e. after the last one has been committed: batches are begun by the next write, so
+     * no transaction is held while waiting, and the checkpoint is saved outside of it.
+     */
+    private void acquireBetweenBatches() throws InterruptedException {
+      recordsSinceAcquire++;
+      if (batchOpen) {
+        return;
+      }
+      if (control.isPaused()) {
+        // the progress is saved as it is, the import may be stopped while paused
+        this.completeChunks();
+        checkpoint.save(db);
+      }
+      control.acquire(recordsSinceAcquire);
+      recordsSinceAcquire = 0;
+    }
+
+    protected void startImport() {
+      if (!transactional) {
+        db.declareIntent(new OIntentMassiveInsert());
+      }
+    }
+
+    protected void endImport() {
+      if (!transactional) {
+        this.synch();
+        db.declareIntent(null);
+      }
+    }
+
+    /** Opens the batch the next record is stored in, unless it's already open. */
+    protected void beginBatch() {
+      if (batchOpen) {
+        return;
+      }
+      if (transactional) {
+        db.begin();
+      }
+      batchOpen = true;
+    }
+
+    /**
+     * Closes the current batch, whether the commit succeeds or not: it's rolled back if it fails.
+     */
+    protected void commitTransaction() {
+      boolean open = batchOpen;
+      batchOpen = false;
+      if (transactional) {
+        if (open) {
+          db.commit();
+        }
+      } else if (++batchesSinceSync >= NOTX_SYNC_INTERVAL) {
+        this.synch();
+      }
+    }
+
+    protected void rollbackTransaction() {
+      batchOpen = false;
+      if (transactional) {
+        // no-op if the transaction was already closed by a failed commit
+        db.rollback();
+      }
+      batchSizeController.batchRolledBack();
+      batchClassName = null;
+      batchElements.clear();
+      // not completed: the partitions checkpoints stay before them, they are imported on resume
+      batchChunks.clear();
+    }
+
+    /**
+     * Commits the current batch. If the commit fails in TX mode, the records of the batch are saved
+     * again in halves, so that only the failing ones are dead-lettered. No batch is open
+     * afterwards.
+     */
+    protected void commitBatchOrBisect() {
+      if (!transactional) {
+        this.commitBatch();
+        return;
+      }
+      List<C> elements = new ArrayList<C>(batchElements);
+      List<ONeo4jImporterCheckpoint.Chunk> chunks =
+          new ArrayList<ONeo4jImporterCheckpoint.Chunk>(batchChunks);
+      try {
+        this.commitBatch();
+      } catch (RuntimeException e) {
+        this.rollbackBatch();
+        ONeo4jImporterContext.getInstance()
+            .getMessageHandler()
+            .warn(
+                this,
+                "\nThe commit of a batch of %d records failed (%s), splitting it to find the failing records\n",
+                elements.size(),
+                e.getMessage());
+        this.bisect(elements, e);
+        this.recovered(chunks);
+      }
+    }
+
+    /**
+     * Handles the failure of an element to save, or of the creation of its class: the element is
+     * dead-lettered, and the current batch goes on with the records saved so far, saved again in TX
+     * mode after the rollback.
+     */
+    protected void writeFailed(C element, Exception error, String message) {
+
+      ONeo4jImporterContext.getInstance().printExceptionMessage(error, message, "error");
+      ONeo4jImporterContext.getInstance().printExceptionStackTrace(error, "error");
+      if (!transactional) {
+        // elements saved before the failure are stored anyway
+        this.rollbackBatch();
+        this.deadLetter(element, error.toString());
+        return;
+      }
+
+      List<C> elements = new ArrayList<C>(batchElements);
+      List<ONeo4jImporterCheckpoint.Chunk> chunks =
+          new ArrayList<ONeo4jImporterCheckpoint.Chunk>(batchChunks);
+      this.rollbackBatch();
+      this.deadLetter(element, error.toString());
+      this.saveOrBisect(elements);
+      this.recovered(chunks);
+    }
+
+    /**
+     * Saves the elements in a batch of their own. If it fails, the two halves are saved the same
+     * way, down to the single elements, which are dead-lettered.
+     */
+    private void saveOrBisect(List<C> elements) {
+      if (elements.isEmpty()) {
+        return;
+      }
+      try {
+        this.save(elements);
+      } catch (RuntimeException e) {
+        this.bisect(elements, e);
+      }
+    }
+
+    /** Saves the halves of the elements of a failed batch, or dead-letters the single element. */
+    private void bisect(List<C> elements, RuntimeException error) {
+      if (elements.size() == 1) {
+        this.deadLetter(elements.get(0), error.toString());
+        return;
+      }
+      int half = elements.size() / 2;
+      this.saveOrBisect(elements.subList(0, half));
+      this.saveOrBisect(elements.subList(half, elements.size()));
+    }
+
+    private void save(List<C> elements) {
+      this.beginBatch();
+      try {
+        for (C element : elements) {
+          this.store(element);
+        }
+        this.commitBatch();
+      } catch (RuntimeException e) {
+        this.rollbackBatch();
+        throw e;
+      }
+    }
+
+    /**
+     * Completes the chunks of a failed batch, once all its records have been stored or
+     * dead-lettered.
+     */
+    private void recovered(List<ONeo4jImporterCheckpoint.Chunk> chunks) {
+      batchChunks.addAll(chunks);
+      this.saveCheckpoint();
+    }
+
+    protected void chunkWritten(ONeo4jImporterCheckpoint.Chunk chunk) {
+      batchChunks.add(chunk);
+    }
+
+    /**
+     * Completes the chunks stored by the committed batch and saves the checkpoint, unless it was
+     * saved less than a second ago. It runs after the commit, so the checkpoint never gets ahead of
+     * the stored records.
+     */
+    protected void saveCheckpoint() {
+      this.completeChunks();
+      checkpoint.saveCoalesced(db);
+    }
+
+    private void completeChunks() {
+      for (ONeo4jImporterCheckpoint.Chunk chunk : batchChunks) {
+        chunk.completed();
+      }
+      batchChunks.clear();
+    }
+
+    protected void recordAdded(String className, long estimatedSize) {
+      batchSizeController.recordAdded(estimatedSize);
+      if (batchClassName == null) {
+        batchClassName = className;
+      } else if (!batchClassName.equals(className)) {
+        batchClassName = ONeo4jImporterEvents.MULTIPLE_CLASSES;
+      }
+    }
+
+    /**
+     * Adjusts the size of the next batches and publishes the decision to the progress monitor.
+     *
+     * @param commitEvent begun before the commit
+     * @param commitNanos
+     */
+    protected void batchCommitted(ONeo4jImporterEvents.Event commitEvent, long commitNanos) {
+      batchSizeController.batchCommitted(commitNanos);
+      commitEvent.commit(
+          batchClassName,
+          batchSizeController.getLastBatchRecords(),
+          batchSizeController.getLastBatchBytes());
+      batchClassName = null;
+      commitTimer.record(commitNanos);
+      statistics.set(
+          ONeo4jImporterStatistics.BATCH_RECORDS, batchSizeController.getLastBatchRecords());
+      statistics.set(
+          ONeo4jImporterStatistics.BATCH_TARGET_BYTES, batchSizeController.getTargetBytes());
+      statistics.batchSizing = batchSizeController.getLastDecision();
+    }
+
+    /** Durability point of the NoTX mode. */
+    private void synch() {
+      batchesSinceSync = 0;
+      try {
+        ((ODatabaseDocumentInternal) db).getStorage().synch();
+      } catch (Exception e) {
+        // remote storages are flushed by the server
+        ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, e.getMessage());
+      }
+    }
+
+    /**
+     * Waits a random time, growing with the attempt, before retrying an operation that failed
+     * because of a concurrent update.
+     */
+    protected void backoff(int attempt, RuntimeException cause) {
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextInt(1, 10 << Math.min(attempt, 6)));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw cause;
+      }
+    }
+  }
+
+  /**
+   * Stores vertices into OrientDB through its own database session. It keeps the state of the
+   * current transaction batch, so that several workers can run concurrently.
+   */
+  private class NodesImportWorker extends ImportWorker<PendingVertex> {
+
+    private final List<OVertex> batchVertices = new ArrayList<OVertex>();
+    private long[] batchNodeIds = new long[VERTICES_BATCH_MIN_SIZE];
+
+    // counters of the current batch, published to the statistics on commit
+    private long nodeCounter;
+    private long multipleLabelsCounter;
+    private long noLabelCounter;
+    private long updatedCounter;
+
+    NodesImportWorker(ODatabaseDocument db) {
+      super(
+          db,
+          VERTICES_BATCH_MIN_SIZE,
+          VERTICES_BATCH_MAX_SIZE,
+          ONeo4jImporterStatistics.ORIENTDB_VERTICES_SAVE,
+          ONeo4jImporterStatistics.ORIENTDB_VERTICES_COMMIT,
+          ONeo4jImporterStatistics.NEO4J_NODES_LAST_COMMITTED_ID);
+    }
+
+    @Override
+    protected void write(PendingVertex pendingVertex) {
+
+      String logString;
+      boolean debugEnabled = ONeo4jImporterContext.getInstance().isDebugEnabled();
+      nodeCounter++;
+
+      if (pendingVertex.labelsCount >= 2) {
+        multipleLabelsCounter++;
+      }
+      if (pendingVertex.labelsCount >= 2 && debugEnabled) {
+        logString =
+            "Found node ('"
+                + pendingVertex.neo4jRecord
+                + "') with multiple labels. Only the first ("
+                + pendingVertex.className
+                + ") will be used as Class when importing this node in OrientDB";
+        ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, logString);
+      }
+
+      // the neo4j node has no label
+      if (pendingVertex.labelsCount == 0) {
+        noLabelCounter++;
+      }
+      if (pendingVertex.labelsCount == 0 && debugEnabled) {
+        logString =
+            "Found node ('"
+                + pendingVertex.neo4jRecord
+                + "') with no labels. Class 'GenericClassNeo4jConversion' will be used when importing this node in OrientDB";
+        ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, logString);
+      }
+
+      try {
+        // classes are created up front, this happens only if labels were added meanwhile
+        if (!classResolver.existsClass(pendingVertex.className)) {
+          this.commitBatchOrBisect();
+          classResolver.createVertexClass(db, pendingVertex.className);
+        }
+
+        this.beginBatch();
+        this.store(pendingVertex);
+      } catch (Exception e) {
+        String mess =
+            "Found an error when trying to store node ('"
+                + pendingVertex.neo4jRecord
+                + "') to OrientDB: "
+                + e.getMessage();
+        this.writeFailed(pendingVertex, e, mess);
+        return;
+      }
+
+      if (batchSizeController.isBatchFull()) {
+        this.commitBatchOrBisect();
+      }
+    }
+
+    /** Stores the vertex on OrientDB, or updates the one stored by a previous run. */
+    @Override
+    protected void store(PendingVertex pendingVertex) {
+      long start = System.nanoTime();
+      OVertex myVertex = null;
+      if (pendingVertex.existingRid != null) {
+        myVertex =
+            updateElement(
+                db, pendingVertex.existingRid, pendingVertex.className, pendingVertex.properties);
+        if (myVertex != null) {
+          updatedCounter++;
+        }
+      }
+      if (myVertex == null) {
+        myVertex = addVertexToGraph(db, pendingVertex.className, pendingVertex.properties);
+      }
+      saveTimer.record(System.nanoTime() - start);
+      if (ONeo4jImporterContext.getInstance().isDebugEnabled()) {
+        ONeo4jImporterContext.getInstance().getMessageHandler().debug(this, myVertex.toString());
+      }
+      if (batchVertices.size() == batchNodeIds.length) {
+        batchNodeIds = Arrays.copyOf(batchNodeIds, batchNodeIds.length * 2);
+      }
+      batchNodeIds[batchVertices.size()] = pendingVertex.neo4jNodeId;
+      batchVertices.add(myVertex);
+      batchElements.add(pendingVertex);
+      this.recordAdded(pendingVertex.className, pendingVertex.estimatedSize);
+    }
+
+    @Override
+    protected void deadLetter(PendingVertex pendingVertex, String error) {
+      deadLetters.add(VERTICES_PHASE, pendingVertex.neo4jNodeId, pendingVertex.neo4jRecord, error);
+      statistics.increment(ONeo4jImporterStatistics.ORIENTDB_VERTICES_FAILED);
+    }
+
+    /**
+     * Commits the current vertices batch and records the RIDs the vertices got on commit, so that
+     * the relationships migration can resolve the edge endpoints directly. In NoTX mode the
+     * vertices are already stored and their RIDs are final.
+     */
+    @Override
+    protected void commitBatch() {
+      ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.BATCH.begin();
+      long start = System.nanoTime();
+      this.commitTransaction();
+      this.batchCommitted(event, System.nanoTime() - start);
+      for (int i = 0; i < batchVertices.size(); i++) {
+        nodeIdMap.put(batchNodeIds[i], batchVertices.get(i).getIdentity());
+      }
+      if (!batchVertices.isEmpty()) {
+        lastCommittedId.set(batchNodeIds[batchVertices.size() - 1]);
+      }
+      this.publishCounters(batchVertices.size());
+      batchVertices.clear();
+      batchElements.clear();
+      db.getLocalCache().clear();
+      this.saveCheckpoint();
+    }
+
+    @Override
+    protected void rollbackBatch() {
+      if (!transactional) {
+        // vertices saved before the failure are stored anyway
+        this.commitBatch();
+        return;
+      }
+      this.rollbackTransaction();
+      this.publishCounters(0);
+      batchVertices.clear();
+    }
+
+    private void publishCounters(long importedVertices) {
+      statistics.add(ONeo4jImporterStatistics.NEO4J_NODES, nodeCounter);
+      statistics.add(ONeo4jImporterStatistics.NEO4J_NODES_MULTIPLE_LABELS, multipleLabelsCounter);
+      statistics.add(ONeo4jImporterStatistics.NEO4J_NODES_NO_LABEL, noLabelCounter);
+      statistics.add(ONeo4jImporterStatistics.ORIENTDB_VERTICES, importedVertices);
+      if (importedVertices > 0) {
+        statistics.add(ONeo4jImporterStatistics.ORIENTDB_VERTICES_UPDATED, updatedCounter);
+      }
+      nodeCounter = 0;
+      multipleLabelsCounter = 0;
+      noLabelCounter = 0;
+      updatedCounter = 0;
+    }
+  }
+
+  /**
+   * A query returning the records of a partition not imported yet, with its parameters (null if
+   * none).
+   */
+  private static class ImportQuery {
+
+    private final String query;
+    private final Value parameters;
+    private final ONeo4jImporterCheckpoint.Partition partition;
+
+    ImportQuery(String query, Value parameters, ONeo4jImporterCheckpoint.Partition partition) {
+      this.query = query;
+      this.parameters = parameters;
+      this.partition = partition;
+    }
+
+    StatementResult run(Session session) {
+      return parameters == null ? session.run(query) : session.run(query, parameters);
+    }
+
+    /** Returns the same query, restricted to the records with an id greater than the one given. */
+    ImportQuery after(long id) {
+      Map<String, Object> values = new HashMap<String, Object>(parameters.asMap());
+      values.put("after", id);
+      return new ImportQuery(query, Values.value(values), partition);
+    }
+  }
+
+  /**
+   * Iterates over the records returned by a query. When the connection to Neo4j fails, or Neo4j
+   * reports a transient error, the query is run again through a new session, after a wait doubled
+   * at each attempt, and the records are returned from the one following the last returned, in the
+   * order of the ids.
+   */
+  private class ImportCursor {
+
+    private final ImportQuery query;
+    private final ImportStages<?> stages;
+    private Session session;
+    private StatementResult result;
+    private long lastId = -1;
+
+    ImportCursor(Session session, ImportQuery query, ImportStages<?> stages) {
+      this.session = session;
+      this.query = query;
+      this.stages = stages;
+    }
+
+    /** Returns the next record, null at the end of the query. */
+    Record next() {
+      for (int attempt = 1; ; attempt++) {
+        try {
+          if (result == null) {
+            result = (lastId < 0 ? query : query.after(lastId)).run(session);
+          }
+          Record record = stages.fetchNext(result, query.partition);
+          if (record != null) {
+            lastId = stages.idOf(record);
+          }
+          return record;
+        } catch (ServiceUnavailableException | SessionExpiredException | TransientException e) {
+          if (attempt > settings.getNeo4jMaxRetries()) {
+            throw e;
+          }
+          this.reconnect(attempt, e);
+        }
+      }
+    }
+
+    /** Returns the session in use, the one given or the last one opened. */
+    Session getSession() {
+      return session;
+    }
+
+    private void reconnect(int attempt, Neo4jException cause) {
+
+      statistics.increment(ONeo4jImporterStatistics.NEO4J_RETRIES);
+      long waitMillis =
+          Math.min(
+              NEO4J_RETRY_MAX_WAIT_MILLIS,
+              NEO4J_RETRY_FIRST_WAIT_MILLIS << Math.min(attempt - 1, 20));
+      ONeo4jImporterContext.getInstance()
+          .getMessageHandler()
+          .warn(
+              this,
+              "\nNeo4j query failed (%s), retrying in %d ms from the id %d (attempt %d of %d)\n",
+              cause.getMessage(),
+              waitMillis,
+              lastId,
+              attempt,
+              settings.getNeo4jMaxRetries());
+      try {
+        Thread.sleep(waitMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw cause;
+      }
+
+      try {
+        session.close();
+      } catch (RuntimeException e) {
+        // the connection is already broken
+      }
+      try {
+        session = ONeo4jImporterContext.getInstance().getNeo4jConnectionManager().getSession();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      result = null;
+    }
+  }
+
+  /**
+   * Conversion of the records of an import phase, and creation of the workers storing them. The
+   * time spent to fetch each record from Neo4j and to convert it is recorded in the stage timers.
+   */
+  private abstract class ImportStages<C> {
+
+    private final OMetricsRegistry.Timer fetchTimer;
+    private final OMetricsRegistry.Timer convertTimer;
+
+    ImportStages(String fetchTimer, String convertTimer) {
+      this.fetchTimer = statistics.getMetrics().timer(fetchTimer);
+      this.convertTimer = statistics.getMetrics().timer(convertTimer);
+    }
+
+    abstract C convert(Record record);
+
+    /** Returns the Neo4j id of the record, the checkpoints are kept on. */
+    abstract long idOf(Record record);
+
+    abstract ImportWorker<C> createWriter(ODatabaseDocument db);
+
+    /** Writes a record that could not be converted to the dead-letter file. */
+    abstract void deadLetter(Record record, String error);
+
+    /**
+     * Converts the record. If the conversion fails, the record is dead-lettered and skipped.
+     *
+     * @return null if the conversion failed
+     */
+    C convertOrDeadLetter(Record record) {
+      try {
+        return this.timedConvert(record);
+      } catch (Exception e) {
+        String mess =
+            "Found an error when trying to convert the Neo4j record ('"
+                + record
+                + "'). It will be written to the dead-letter file: "
+                + e.getMessage();
+        ONeo4jImporterContext.getInstance().printExceptionMessage(e, mess, "error");
+        ONeo4jImporterContext.getInstance().printExceptionStackTrace(e, "error");
+        this.deadLetter(record, e.toString());
+        return null;
+      }
+    }
+
+    /**
+     * Tells whether the record was imported by a previous run after the checkpoint of its
+     * partition.
+     */
+    boolean isImported(ONeo4jImporterCheckpoint.Partition partition, long id) {
+      return partition.isImported(id);
+    }
+
+    /**
+     * Returns the next record of the result, waiting for Neo4j to stream it if needed. When
+     * resuming, the records already imported are skipped.
+     *
+     * @param result
+     * @param partition
+     * @return null at the end of the result
+     */
+    Record fetchNext(StatementResult result, ONeo4jImporterCheckpoint.Partition partition) {
+      while (true) {
+        long start = System.nanoTime();
+        if (!result.hasNext()) {
+          return null;
+        }
+        Record record = result.next();
+        fetchTimer.record(System.nanoTime() - start);
+        if (!partition.isRestored() || !this.isImported(partition, this.idOf(record))) {
+          return record;
+        }
+      }
+    }
+
+    C timedConvert(Record record) {
+      long start = System.nanoTime();
+      C element = this.convert(record);
+      convertTimer.record(System.nanoTime() - start);
+      return element;
+    }
+  }
+
+  /** The relationships of a type, optionally restricted to a [lo, hi) range of their ids. */
+  private static class RelationshipsPartition {
+
+    private final String relationshipType;
+    private final long lo;
+    private final long hi;
+    private final long estimatedSize;
+
+    RelationshipsPartition(String relationshipType, long lo, long hi, long estimatedSize) {
+      this.relationshipType = relationshipType;
+      this.lo = lo;
+      this.hi = hi;
+      this.estimatedSize = estimatedSize;
+    }
+  }
+
+  /** The records, or elements, of a chunk handed over between the stages of the pipeline. */
+  private static class ImportChunk<T> extends ArrayList<T> {
+
+    private ONeo4jImporterCheckpoint.Chunk checkpoint;
+
+    ImportChunk(int capacity, ONeo4jImporterCheckpoint.Chunk checkpoint) {
+      super(capacity);
+      this.checkpoint = checkpoint;
+    }
+  }
+
+  /** A vertex converted from a Neo4j node, ready to be stored. */
+  private static class PendingVertex {
+
+    private final Record neo4jRecord;
+    private final long neo4jNodeId;
+    private final ORID existingRid; // of the vertex to update, when syncing
+    private final String className;
+    private final int labelsCount;
+    private final Map<String, Object> properties;
+    private final long estimatedSize;
+
+    PendingVertex(
+        Record neo4jRecord,
+        long neo4jNodeId,
+        ORID existingRid,
+        String className,
+        int labelsCount,
+        Map<String, Object> properties,
+        long estimatedSize) {
+      this.neo4jRecord = neo4jRecord;
+      this.neo4jNodeId = neo4jNodeId;
+      this.existingRid = existingRid;
+      this.className = className;
+      this.labelsCount = labelsCount;
+      this.properties = properties;
+      this.estimatedSize = estimatedSize;
+    }
+  }
+
+  /**
+   * An edge converted from a Neo4j relationship, ready to be stored. It's kept in the current batch
+   * to recreate it if the batch commit must be retried.
+   */
+  private static class PendingEdge {
+
+    private final Record neo4jRecord;
+    private final ORID existingRid; // of the edge to update, when syncing
+    // resolved to RIDs by the writer, when the edge is stored
+    private final long outVertexId;
+    private final long inVertexId;
+    private final String edgeClassName;
+    private final Map<String, Object> properties;
+    private final long estimatedSize;
+
+    PendingEdge(
+        Record neo4jRecord,
+        ORID existingRid,
+        long outVertexId,
+        long inVertexId,
+        String edgeClassName,
+        Map<String, Object> properties,
+        long estimatedSize) {
+      this.neo4jRecord = neo4jRecord;
+      this.existingRid = existingRid;
+      this.outVertexId = outVertexId;
+      this.inVertexId = inVertexId;
+      this.edgeClassName = edgeClassName;
+      this.properties = properties;
+      this.estimatedSize = estimatedSize;
+    }
+  }
+
+  /**
+   * Stores edges into OrientDB through its own database session. Workers storing different
+   * relationship types write to different edge clusters, but they still update the ridbags of
+   * shared endpoint vertices: a batch failing on commit because of a concurrent update is recreated
+   * and committed again.
+   */
+  private class EdgesImportWorker extends ImportWorker<PendingEdge> {
+
+    private final OMetricsRegistry.Timer lookupTimer;
+    // of the endpoints of the edge being stored, reused not to allocate them for each edge
+    private final ORecordId outVertexRid = new ORecordId();
+    private final ORecordId inVertexRid = new ORecordId();
+
+    // counters of the current batch, published to the statistics on commit
+    private long relCounter;
+    private long updatedCounter;
+
+    EdgesImportWorker(ODatabaseDocument db) {
+      super(
+          db,
+          EDGES_BATCH_MIN_SIZE,
+          EDGES_BATCH_MAX_SIZE,
+          ONeo4jImporterStatistics.ORIENTDB_EDGES_SAVE,
+          ONeo4jImporterStatistics.ORIENTDB_EDGES_COMMIT,
+          ONeo4jImporterStatistics.NEO4J_RELATIONSHIPS_LAST_COMMITTED_ID);
+      this.lookupTimer =
+          statistics.getMetrics().timer(ONeo4jImporterStatistics.ORIENTDB_EDGES_LOOKUP);
+    }
+
+    @Override
+    protected void write(PendingEdge pendingEdge) {
+
+      relCounter++;
+
+      if (pendingEdge.existingRid == null && !this.resolveEndpoints(pendingEdge)) {
+        String logString =
+            "Found a Neo4j Relationship ('"
+                + pendingEdge.neo4jRecord
+                + "') whose endpoints were not imported in OrientDB. The relationship will be skipped.";
+        ONeo4jImporterContext.getInstance().getMessageHandler().error(this, logString);
+        // it can be replayed once its endpoints are imported
+        this.deadLetter(pendingEdge, "endpoints not imported");
+        return;
+      }
+
+      try {
+        // classes are created up front, this happens only if types were added meanwhile
+        if (!classResolver.existsClass(pendingEdge.edgeClassName)) {
+          this.commitBatchOrBisect();
+          classResolver.createEdgeClass(db, pendingEdge.edgeClassName);
+        }
+
+        this.beginBatch();
+        this.store(pendingEdge);
+      } catch (Exception e) {
+        String mess =
+            "Found an error when trying to create an Edge in OrientDB. Corresponding Relationship in Neo4j is '"
+                + pendingEdge.neo4jRecord
+                + "': "
+                + e.getMessage();
+        this.writeFailed(pendingEdge, e, mess);
+        return;
+      }
+
+      if (batchSizeController.isBatchFull()) {
+        this.commitBatchOrBisect();
+      }
+    }
+
+    @Override
+    protected void store(PendingEdge pendingEdge) {
+      this.createEdge(pendingEdge);
+      batchElements.add(pendingEdge);
+      this.recordAdded(pendingEdge.edgeClassName, pendingEdge.estimatedSize);
+      if (ONeo4jImporterContext.getInstance().isDebugEnabled()) {
+        ONeo4jImporterContext.getInstance()
+            .getMessageHandler()
+            .debug(
+                this,
+                "Orient:" + outVertexRid + "-" + pendingEdge.edgeClassName + "->" + inVertexRid);
+      }
+    }
+
+    @Override
+    protected void deadLetter(PendingEdge pendingEdge, String error) {
+      deadLetters.add(
+          EDGES_PHASE,
+          pendingEdge.neo4jRecord.get("relationshipId").asLong(),
+          pendingEdge.neo4jRecord,
+          error);
+      statistics.increment(ONeo4jImporterStatistics.ORIENTDB_EDGES_FAILED);
+    }
+
+    /**
+     * Creates the edge. In NoTX mode the endpoint vertices are updated right away, so a concurrent
+     * update of their ridbags makes the edge fail alone: it's recreated on fresh copies of the
+     * vertices.
+     */
+    private void createEdge(PendingEdge pendingEdge) {
+      for (int attempt = 1; ; attempt++) {
+        try {
+          this.doCreateEdge(pendingEdge);
+          return;
+        } catch (ONeedRetryException e) {
+          if (transactional || attempt >= MAX_COMMIT_RETRIES) {
+            throw e;
+          }
+          db.getLocalCache().clear();
+          this.backoff(attempt, e);
+        }
+      }
+    }
+
+    private void doCreateEdge(PendingEdge pendingEdge) {
+      long start = System.nanoTime();
+      boolean endpointsImported = this.resolveEndpoints(pendingEdge);
+      if (pendingEdge.existingRid != null) {
+        // stored by a previous run: updated, unless Neo4j reused its id for another type
+        if (updateElement(
+                db, pendingEdge.existingRid, pendingEdge.edgeClassName, pendingEdge.properties)
+            != null) {
+          updatedCounter++;
+          saveTimer.record(System.nanoTime() - start);
+          return;
+        }
+        if (!endpointsImported) {
+          throw new IllegalStateException("The endpoints of the edge were not imported");
+        }
+      }
+      // the loaded vertices copy the RIDs, which can be reused for the next edge
+      OVertex outVertex = OGraphCommands.getVertex(db, outVertexRid);
+      OVertex inVertex = OGraphCommands.getVertex(db, inVertexRid);
+      long looked = System.nanoTime();
+      lookupTimer.record(looked - start);
+      addEdgeToGraph(db, outVertex, inVertex, pendingEdge.edgeClassName, pendingEdge.properties);
+      saveTimer.record(System.nanoTime() - looked);
+    }
+
+    /**
+     * Sets the RIDs of the endpoints of the edge, returning false if any of them was not imported.
+     */
+    private boolean resolveEndpoints(PendingEdge pendingEdge) {
+      return nodeIdMap.get(pendingEdge.outVertexId, outVertexRid)
+          && nodeIdMap.get(pendingEdge.inVertexId, inVertexRid);
+    }
+
+    /**
+     * Commits the current edges batch. If the commit fails because another worker updated one of
+     * the endpoint vertices in the meantime, the batch is recreated on fresh copies of the vertices
+     * and committed again, backing off a bit more at each attempt.
+     */
+    @Override
+    protected void commitBatch() {
+      ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.BATCH.begin();
+      long start = System.nanoTime();
+      for (int attempt = 1; ; attempt++) {
+        try {
+          this.commitTransaction();
+          break;
+        } catch (ONeedRetryException e) {
+          db.rollback(); // keeps the batch size accounting, the batch is recreated
+          db.getLocalCache().clear();
+          if (attempt >= MAX_COMMIT_RETRIES) {
+            throw e;
+          }
+          ONeo4jImporterContext.getInstance()
+              .getMessageHandler()
+              .debug(
+                  this,
+                  "Concurrent update of the endpoint vertices of "
+                      + batchElements.size()
+                      + " edges, retrying the commit (attempt "
+                      + (attempt + 1)
+                      + ")");
+          this.backoff(attempt, e);
+          this.beginBatch();
+          updatedCounter = 0;
+          for (PendingEdge pendingEdge : batchElements) {
+            this.createEdge(pendingEdge);
+          }
+        }
+      }
+      this.batchCommitted(event, System.nanoTime() - start);
+      if (!batchElements.isEmpty()) {
+        PendingEdge lastEdge = batchElements.get(batchElements.size() - 1);
+        lastCommittedId.set(lastEdge.neo4jRecord.get("relationshipId").asLong());
+      }
+      this.publishCounters(batchElements.size());
+      batchElements.clear();
+      db.getLocalCache().clear();
+      this.saveCheckpoint();
+    }
+
+    @Override
+    protected void rollbackBatch() {
+      if (!transactional) {
+        // edges saved before the failure are stored anyway
+        this.commitBatch();
+        return;
+      }
+      this.rollbackTransaction();
+      this.publishCounters(0);
+    }
+
+    private void publishCounters(long importedEdges) {
+      statistics.add(ONeo4jImporterStatistics.NEO4J_RELATIONSHIPS, relCounter);
+      statistics.add(ONeo4jImporterStatistics.ORIENTDB_EDGES, importedEdges);
+      if (importedEdges > 0) {
+        statistics.add(ONeo4jImporterStatistics.ORIENTDB_EDGES_UPDATED, updatedCounter);
+      }
+      relCounter = 0;
+      updatedCounter = 0;
     }
   }
 }
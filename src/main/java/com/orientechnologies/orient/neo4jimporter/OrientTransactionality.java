@@ -24,4 +24,14 @@ package com.orientechnologies.orient.neo4jimporter;
 public enum OrientTransactionality {
   TX,
   NoTX;
+
+  /** Case insensitive version of valueOf(). */
+  public static OrientTransactionality parse(String name) {
+    for (OrientTransactionality transactionality : values()) {
+      if (transactionality.name().equalsIgnoreCase(name)) {
+        return transactionality;
+      }
+    }
+    throw new IllegalArgumentException("Invalid transactionality '" + name + "'");
+  }
 }
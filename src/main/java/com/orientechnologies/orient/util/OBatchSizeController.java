@@ -0,0 +1,175 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Decides when the current transaction batch is full. Batches are sized by the estimated payload of
+ * their records rather than by a fixed number of records, and the payload target is adjusted after
+ * each commit: it's halved when the commit was slow or the heap is running out, and it grows when
+ * commits are fast and there is heap to spare. Each import worker has its own controller, so it's
+ * not thread safe.
+ */
+public class OBatchSizeController {
+
+  public static final String GROW = "grow";
+  public static final String KEEP = "keep";
+  public static final String SHRINK_SLOW_COMMIT = "shrink (slow commit)";
+  public static final String SHRINK_LOW_HEAP = "shrink (low heap)";
+
+  static final long MIN_TARGET_BYTES = 16 * 1024;
+  static final long MAX_TARGET_BYTES = 64 * 1024 * 1024;
+  static final long TARGET_COMMIT_MILLIS = 250;
+  static final double LOW_HEAP_HEADROOM = 0.2;
+  static final double GROW_HEAP_HEADROOM = 0.4;
+
+  private final int minRecords;
+  private final int maxRecords;
+  private long targetBytes;
+
+  private int batchRecords;
+  private long batchBytes;
+
+  private int lastBatchRecords;
+  private long lastBatchBytes;
+  private long lastCommitMillis;
+  private String lastDecision = KEEP;
+
+  public OBatchSizeController(int minRecords, int maxRecords, long initialTargetBytes) {
+    this.minRecords = minRecords;
+    this.maxRecords = maxRecords;
+    this.targetBytes = clamp(initialTargetBytes);
+  }
+
+  public void recordAdded(long estimatedBytes) {
+    batchRecords++;
+    batchBytes += estimatedBytes;
+  }
+
+  public boolean isBatchFull() {
+    return batchRecords >= maxRecords || (batchRecords >= minRecords && batchBytes >= targetBytes);
+  }
+
+  /**
+   * Adjusts the payload target after a batch has been committed.
+   *
+   * @param commitNanos time spent committing the batch
+   */
+  public void batchCommitted(long commitNanos) {
+    Runtime runtime = Runtime.getRuntime();
+    double used = runtime.totalMemory() - runtime.freeMemory();
+    this.batchCommitted(commitNanos, 1.0 - used / runtime.maxMemory());
+  }
+
+  void batchCommitted(long commitNanos, double heapHeadroom) {
+
+    long commitMillis = commitNanos / 1000000;
+
+    if (heapHeadroom < LOW_HEAP_HEADROOM) {
+      targetBytes = clamp(Math.min(targetBytes, batchBytes) / 2);
+      lastDecision = SHRINK_LOW_HEAP;
+    } else if (commitMillis > 2 * TARGET_COMMIT_MILLIS) {
+      targetBytes = clamp(targetBytes / 2);
+      lastDecision = SHRINK_SLOW_COMMIT;
+    } else if (commitMillis < TARGET_COMMIT_MILLIS / 2
+        && heapHeadroom > GROW_HEAP_HEADROOM
+        && batchBytes >= targetBytes) {
+      // grows only if the batch was actually limited by the target, not by the end of the data
+      targetBytes = clamp(targetBytes + targetBytes / 2);
+      lastDecision = GROW;
+    } else {
+      lastDecision = KEEP;
+    }
+
+    lastBatchRecords = batchRecords;
+    lastBatchBytes = batchBytes;
+    lastCommitMillis = commitMillis;
+    batchRecords = 0;
+    batchBytes = 0;
+  }
+
+  public void batchRolledBack() {
+    batchRecords = 0;
+    batchBytes = 0;
+  }
+
+  public long getTargetBytes() {
+    return targetBytes;
+  }
+
+  public int getLastBatchRecords() {
+    return lastBatchRecords;
+  }
+
+  public long getLastBatchBytes() {
+    return lastBatchBytes;
+  }
+
+  public long getLastCommitMillis() {
+    return lastCommitMillis;
+  }
+
+  public String getLastDecision() {
+    return lastDecision;
+  }
+
+  private static long clamp(long bytes) {
+    return Math.max(MIN_TARGET_BYTES, Math.min(MAX_TARGET_BYTES, bytes));
+  }
+
+  /**
+   * Roughly estimates the heap taken by a property value, as converted from Neo4j.
+   *
+   * @param value
+   * @return
+   */
+  public static long estimateSize(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof String) {
+      return 40 + 2L * ((String) value).length();
+    } else if (value instanceof byte[]) {
+      return 16 + ((byte[]) value).length;
+    } else if (value instanceof Collection) {
+      long size = 24;
+      for (Object element : (Collection<?>) value) {
+        size += 8 + estimateSize(element);
+      }
+      return size;
+    } else if (value instanceof Map) {
+      long size = 48;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+      }
+      return size;
+    } else if (value.getClass().isArray()) {
+      long size = 16;
+      for (int i = 0; i < Array.getLength(value); i++) {
+        size += 8 + estimateSize(Array.get(value, i));
+      }
+      return size;
+    }
+    return 16; // numbers, booleans
+  }
+}
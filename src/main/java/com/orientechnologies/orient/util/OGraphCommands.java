@@ -22,6 +22,7 @@ package com.orientechnologies.orient.util;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.index.OIndex;
 import com.orientechnologies.orient.core.record.OElement;
 import com.orientechnologies.orient.core.record.OVertex;
@@ -117,4 +118,17 @@ public class OGraphCommands {
     OIdentifiable id = (OIdentifiable) index.get(value);
     return ((OElement) id.getRecord()).asVertex().get();
   }
+
+  /**
+   * Loads the vertex with the passed RID, without any index lookup.
+   *
+   * @param orientGraph
+   * @param rid
+   * @return
+   */
+  public static OVertex getVertex(ODatabaseDocument orientGraph, ORID rid) {
+
+    OElement element = orientGraph.load(rid);
+    return element.asVertex().get();
+  }
 }
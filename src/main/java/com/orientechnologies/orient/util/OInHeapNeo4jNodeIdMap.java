@@ -0,0 +1,207 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) implementation of ONeo4jNodeIdMap backed by two primitive
+ * arrays, so no boxing happens on insert or on lookup. Each RID is packed in a single long: the
+ * cluster id in the 16 most significant bits, the cluster position in the remaining 48 bits.
+ */
+public class OInHeapNeo4jNodeIdMap implements ONeo4jNodeIdMap {
+
+  private static final long FREE_KEY = -1L; // Neo4j ids are never negative
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  static final int CLUSTER_POSITION_BITS = 48;
+  static final long CLUSTER_POSITION_MASK = (1L << CLUSTER_POSITION_BITS) - 1;
+
+  // replaced as a whole on resize, so that readers always see keys and values of the same table
+  private volatile Table table;
+  private int threshold;
+  private long size;
+
+  public OInHeapNeo4jNodeIdMap(long expectedSize) {
+    this.allocate((int) capacityFor(expectedSize));
+  }
+
+  private static long capacityFor(long expectedSize) {
+    long capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns the heap needed to store the passed number of node ids, or -1 if they cannot be stored
+   * in heap at all.
+   *
+   * @param expectedSize
+   * @return
+   */
+  public static long estimateMemory(long expectedSize) {
+    long capacity = capacityFor(expectedSize);
+    if (capacity > MAX_CAPACITY) {
+      return -1;
+    }
+    return capacity * 16; // one long key and one long value per slot
+  }
+
+  private void allocate(int capacity) {
+    this.table = new Table(capacity);
+    this.threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  @Override
+  public synchronized void put(long neo4jNodeId, ORID rid) {
+    if (neo4jNodeId < 0) {
+      throw new IllegalArgumentException("Invalid Neo4j node id: " + neo4jNodeId);
+    }
+    if (size >= threshold) {
+      this.rehash();
+    }
+    if (table.insert(neo4jNodeId, pack(rid))) {
+      size++;
+    }
+  }
+
+  @Override
+  public ORID get(long neo4jNodeId) {
+    Table table = this.table;
+    int slot = hash(neo4jNodeId) & table.mask;
+    long key;
+    while ((key = table.keys[slot]) != FREE_KEY) {
+      if (key == neo4jNodeId) {
+        return unpack(table.values[slot]);
+      }
+      slot = (slot + 1) & table.mask;
+    }
+    return null;
+  }
+
+  @Override
+  public boolean get(long neo4jNodeId, ORecordId rid) {
+    Table table = this.table;
+    int slot = hash(neo4jNodeId) & table.mask;
+    long key;
+    while ((key = table.keys[slot]) != FREE_KEY) {
+      if (key == neo4jNodeId) {
+        unpack(table.values[slot], rid);
+        return true;
+      }
+      slot = (slot + 1) & table.mask;
+    }
+    return false;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void close() {
+    this.allocate((int) capacityFor(0));
+    this.size = 0;
+  }
+
+  private void rehash() {
+    Table oldTable = this.table;
+    if (oldTable.keys.length >= MAX_CAPACITY) {
+      throw new IllegalStateException(
+          "Too many Neo4j nodes to keep their ids in heap (" + size + " entries)");
+    }
+    // filled before being published, readers keep using the old table meanwhile
+    Table newTable = new Table(oldTable.keys.length << 1);
+    for (int i = 0; i < oldTable.keys.length; i++) {
+      if (oldTable.keys[i] != FREE_KEY) {
+        newTable.insert(oldTable.keys[i], oldTable.values[i]);
+      }
+    }
+    this.table = newTable;
+    this.threshold = (int) (newTable.keys.length * LOAD_FACTOR);
+  }
+
+  static long pack(ORID rid) {
+    int clusterId = rid.getClusterId();
+    long clusterPosition = rid.getClusterPosition();
+    if (clusterId < 0 || clusterPosition < 0 || clusterPosition > CLUSTER_POSITION_MASK) {
+      throw new IllegalArgumentException("Cannot map a non persistent RID: " + rid);
+    }
+    return ((long) clusterId << CLUSTER_POSITION_BITS) | clusterPosition;
+  }
+
+  static ORID unpack(long packed) {
+    return new ORecordId((int) (packed >>> CLUSTER_POSITION_BITS), packed & CLUSTER_POSITION_MASK);
+  }
+
+  static void unpack(long packed, ORecordId rid) {
+    rid.setClusterId((int) (packed >>> CLUSTER_POSITION_BITS));
+    rid.setClusterPosition(packed & CLUSTER_POSITION_MASK);
+  }
+
+  /** Murmur3 finalizer: Neo4j ids are mostly contiguous, so they must be spread over the table. */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private static class Table {
+
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+
+    Table(int capacity) {
+      this.keys = new long[capacity];
+      this.values = new long[capacity];
+      Arrays.fill(this.keys, FREE_KEY);
+      this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns true if a new key has been added, false if the value of an existing key was updated.
+     */
+    private boolean insert(long key, long value) {
+      int slot = hash(key) & mask;
+      long current;
+      while ((current = keys[slot]) != FREE_KEY) {
+        if (current == key) {
+          values[slot] = value;
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+      values[slot] = value;
+      keys[slot] = key;
+      return true;
+    }
+  }
+}
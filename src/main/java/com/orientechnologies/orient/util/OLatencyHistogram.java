@@ -0,0 +1,141 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Histogram of durations in nanoseconds with fixed memory, in the style of HdrHistogram: values are
+ * counted in buckets whose width grows with the value, so that every value is known within 1/16 of
+ * itself (about 6%) from a nanosecond up to centuries, in less than 8KB per stripe. Recording is
+ * lock-free and safe from any number of threads: each thread counts in the buckets of its own
+ * stripe, so that parallel workers don't contend on the same counters. Percentiles read while
+ * recording are approximate.
+ */
+public class OLatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // values below are counted exactly
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+  private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+  private static final int MAX_STRIPES = 8;
+
+  private static final LongBinaryOperator MAX =
+      new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+          return Math.max(left, right);
+        }
+      };
+
+  private final AtomicLongArray[] stripes;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+  public OLatencyHistogram() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    // a power of two, to pick the stripe by masking the thread id
+    int count =
+        processors <= 1 ? 1 : Math.min(MAX_STRIPES, Integer.highestOneBit(processors - 1) << 1);
+    stripes = new AtomicLongArray[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+  }
+
+  /**
+   * @param nanos negative values are counted as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    int stripe = (int) Thread.currentThread().getId() & (stripes.length - 1);
+    stripes[stripe].incrementAndGet(bucketOf(value));
+    count.increment();
+    total.add(value);
+    max.accumulate(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the value below which the passed percentage of the recorded values falls, rounded up to
+   * the upper bound of its bucket (but never above the max).
+   *
+   * @param percentile between 0 and 100
+   * @return 0 if nothing has been recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] counts = new long[BUCKETS];
+    long recorded = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        long bucketCount = stripe.get(i);
+        counts[i] += bucketCount;
+        recorded += bucketCount;
+      }
+    }
+    if (recorded == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), this.getMax());
+      }
+    }
+    return this.getMax();
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // the top SUB_BUCKET_BITS bits of the value select the sub-bucket, the lower ones are dropped
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+    long top = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of ONeo4jNodeIdMap backed by memory-mapped files, used when the node ids do not
+ * fit in heap. As Neo4j ids are mostly contiguous, the map is a dense array indexed by the Neo4j
+ * id: each entry is a long holding the packed RID plus one, so that the zero-filled regions of the
+ * (sparse) files mean "not imported". The array is split in fixed-size segment files that are
+ * created and mapped on demand, so memory is paged in and out by the OS and never held in heap.
+ */
+public class OMappedNeo4jNodeIdMap implements ONeo4jNodeIdMap {
+
+  private static final int SEGMENT_BITS = 24; // 16M entries, 128MB per segment file
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+  private static final int ENTRY_SIZE = 8;
+
+  private final File directory;
+  private final boolean ownDirectory; // created by the map, deleted on close
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+  private final AtomicLong size = new AtomicLong();
+
+  public OMappedNeo4jNodeIdMap(File directory) {
+    this.directory = directory;
+    this.ownDirectory = !directory.exists();
+    if (ownDirectory && !directory.mkdirs()) {
+      throw new IllegalStateException(
+          "Cannot create the directory for the Neo4j node ids map: " + directory);
+    }
+    this.deleteSegmentFiles(); // leftovers of a previous run
+  }
+
+  @Override
+  public void put(long neo4jNodeId, ORID rid) {
+    if (neo4jNodeId < 0) {
+      throw new IllegalArgumentException("Invalid Neo4j node id: " + neo4jNodeId);
+    }
+    MappedByteBuffer segment = this.getOrCreateSegment((int) (neo4jNodeId >>> SEGMENT_BITS));
+    int offset = (int) (neo4jNodeId & SEGMENT_MASK) * ENTRY_SIZE;
+    long previous = segment.getLong(offset);
+    segment.putLong(offset, OInHeapNeo4jNodeIdMap.pack(rid) + 1);
+    if (previous == 0) {
+      size.incrementAndGet();
+    }
+  }
+
+  @Override
+  public ORID get(long neo4jNodeId) {
+    MappedByteBuffer[] segments = this.segments;
+    long segmentIndex = neo4jNodeId >>> SEGMENT_BITS;
+    if (neo4jNodeId < 0
+        || segmentIndex >= segments.length
+        || segments[(int) segmentIndex] == null) {
+      return null;
+    }
+    long value =
+        segments[(int) segmentIndex].getLong((int) (neo4jNodeId & SEGMENT_MASK) * ENTRY_SIZE);
+    return value == 0 ? null : OInHeapNeo4jNodeIdMap.unpack(value - 1);
+  }
+
+  @Override
+  public boolean get(long neo4jNodeId, ORecordId rid) {
+    MappedByteBuffer[] segments = this.segments;
+    long segmentIndex = neo4jNodeId >>> SEGMENT_BITS;
+    if (neo4jNodeId < 0
+        || segmentIndex >= segments.length
+        || segments[(int) segmentIndex] == null) {
+      return false;
+    }
+    long value =
+        segments[(int) segmentIndex].getLong((int) (neo4jNodeId & SEGMENT_MASK) * ENTRY_SIZE);
+    if (value == 0) {
+      return false;
+    }
+    OInHeapNeo4jNodeIdMap.unpack(value - 1, rid);
+    return true;
+  }
+
+  @Override
+  public long size() {
+    return size.get();
+  }
+
+  /**
+   * Drops the mappings and deletes the segment files, and the directory if it was created by the
+   * map. The mapped regions are released by the GC, so on platforms that don't allow deleting
+   * mapped files they are removed on JVM exit.
+   */
+  @Override
+  public synchronized void close() {
+    this.segments = new MappedByteBuffer[0];
+    this.size.set(0);
+    this.deleteSegmentFiles();
+    if (ownDirectory && !directory.delete()) {
+      directory.deleteOnExit(); // after its files, deleted in reverse order of registration
+    }
+  }
+
+  private void deleteSegmentFiles() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().startsWith("segment-") && !file.delete()) {
+          file.deleteOnExit();
+        }
+      }
+    }
+  }
+
+  private MappedByteBuffer getOrCreateSegment(int segmentIndex) {
+    MappedByteBuffer[] segments = this.segments;
+    if (segmentIndex < segments.length && segments[segmentIndex] != null) {
+      return segments[segmentIndex];
+    }
+    synchronized (this) {
+      segments = this.segments;
+      if (segmentIndex >= segments.length) {
+        MappedByteBuffer[] grown = new MappedByteBuffer[segmentIndex + 1];
+        System.arraycopy(segments, 0, grown, 0, segments.length);
+        segments = grown;
+      }
+      if (segments[segmentIndex] == null) {
+        segments[segmentIndex] = this.mapSegment(segmentIndex);
+      }
+      this.segments = segments;
+      return segments[segmentIndex];
+    }
+  }
+
+  private MappedByteBuffer mapSegment(int segmentIndex) {
+    File file = new File(directory, "segment-" + segmentIndex);
+    long length = (SEGMENT_MASK + 1) * ENTRY_SIZE;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(length); // sparse file: unused entries take no disk space
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Cannot map the Neo4j node ids segment file '" + file + "': " + e.getMessage(), e);
+    }
+  }
+}
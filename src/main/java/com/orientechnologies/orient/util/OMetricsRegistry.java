@@ -0,0 +1,190 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named metrics updated concurrently by the import threads. Counters and timers are striped
+ * (LongAdder), so that threads incrementing the same metric don't contend on a single memory
+ * location, and no increment is lost; the readers sum the stripes when they take a snapshot.
+ * Metrics are created on first use and live as long as the registry.
+ */
+public class OMetricsRegistry {
+
+  private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      Counter created = new Counter();
+      counter = counters.putIfAbsent(name, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    return counter;
+  }
+
+  public Gauge gauge(String name) {
+    Gauge gauge = gauges.get(name);
+    if (gauge == null) {
+      Gauge created = new Gauge();
+      gauge = gauges.putIfAbsent(name, created);
+      if (gauge == null) {
+        gauge = created;
+      }
+    }
+    return gauge;
+  }
+
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      Timer created = new Timer();
+      timer = timers.putIfAbsent(name, created);
+      if (timer == null) {
+        timer = created;
+      }
+    }
+    return timer;
+  }
+
+  /** Returns the counters by name, sorted by name. */
+  public Map<String, Counter> getCounters() {
+    return new TreeMap<String, Counter>(counters);
+  }
+
+  /** Returns the gauges by name, sorted by name. */
+  public Map<String, Gauge> getGauges() {
+    return new TreeMap<String, Gauge>(gauges);
+  }
+
+  /** Returns the timers by name, sorted by name. */
+  public Map<String, Timer> getTimers() {
+    return new TreeMap<String, Timer>(timers);
+  }
+
+  /**
+   * Returns the current value of each metric by name, sorted by name: a long for the counters, a
+   * double for the gauges and, for the timers, a map with the count of the timed operations and
+   * their total, mean, median, 99th percentile and max time in milliseconds.
+   */
+  public Map<String, Object> snapshot() {
+    Map<String, Object> snapshot = new TreeMap<String, Object>();
+    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().toMap());
+    }
+    return snapshot;
+  }
+
+  /** Monotonic count of events. */
+  public static class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+      value.increment();
+    }
+
+    public void add(long delta) {
+      value.add(delta);
+    }
+
+    public long get() {
+      return value.sum();
+    }
+  }
+
+  /**
+   * Last value of a measure. Concurrent writers overwrite each other's values: the gauge holds the
+   * last value written by any of them, as the depth of a queue shared by the threads. A measure of
+   * each thread needs a gauge of its own.
+   */
+  public static class Gauge {
+
+    private volatile double value;
+
+    public void set(double value) {
+      this.value = value;
+    }
+
+    public double get() {
+      return value;
+    }
+  }
+
+  /** Number and distribution of the durations of the timed operations. */
+  public static class Timer {
+
+    private final OLatencyHistogram histogram = new OLatencyHistogram();
+
+    public void record(long nanos) {
+      histogram.record(nanos);
+    }
+
+    public long getCount() {
+      return histogram.getCount();
+    }
+
+    public long getTotalNanos() {
+      return histogram.getTotal();
+    }
+
+    public long getMaxNanos() {
+      return histogram.getMax();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     */
+    public long getNanosAtPercentile(double percentile) {
+      return histogram.getValueAtPercentile(percentile);
+    }
+
+    private Map<String, Object> toMap() {
+      long count = this.getCount();
+      long totalNanos = this.getTotalNanos();
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      map.put("count", count);
+      map.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+      map.put("meanMillis", count == 0 ? 0.0 : totalNanos / 1e6 / count);
+      map.put("p50Millis", this.getNanosAtPercentile(50) / 1e6);
+      map.put("p99Millis", this.getNanosAtPercentile(99) / 1e6);
+      map.put("maxMillis", this.getMaxNanos() / 1e6);
+      return map;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of Neo4j ids, backed by a bitmap allocated in pages of PAGE_BITS ids as they are added. Neo4j
+ * reuses the ids of deleted records, so they stay dense, and the set of all the ids of a graph
+ * costs about one bit per record: cheap enough to diff the ids of the whole graph.
+ */
+public class ONeo4jIdSet {
+
+  private static final int PAGE_SHIFT = 16;
+  static final int PAGE_BITS = 1 << PAGE_SHIFT;
+  private static final int PAGE_WORDS = PAGE_BITS / 64;
+
+  private long[][] pages = new long[0][];
+  private long size;
+
+  /**
+   * @param id never negative
+   * @return false if the id was already in the set
+   */
+  public boolean add(long id) {
+    int page = (int) (id >>> PAGE_SHIFT);
+    if (page >= pages.length) {
+      pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+    }
+    if (pages[page] == null) {
+      pages[page] = new long[PAGE_WORDS];
+    }
+    int bit = (int) (id & (PAGE_BITS - 1));
+    long mask = 1L << bit;
+    long word = pages[page][bit >>> 6];
+    if ((word & mask) != 0) {
+      return false;
+    }
+    pages[page][bit >>> 6] = word | mask;
+    size++;
+    return true;
+  }
+
+  public boolean contains(long id) {
+    int page = (int) (id >>> PAGE_SHIFT);
+    if (id < 0 || page >= pages.length || pages[page] == null) {
+      return false;
+    }
+    int bit = (int) (id & (PAGE_BITS - 1));
+    return (pages[page][bit >>> 6] & (1L << bit)) != 0;
+  }
+
+  /**
+   * Returns the first id of the set not lower than the passed one.
+   *
+   * @param from
+   * @return -1 if there is none
+   */
+  public long next(long from) {
+    for (int page = (int) (from >>> PAGE_SHIFT); page < pages.length; page++) {
+      if (pages[page] == null) {
+        continue;
+      }
+      long pageStart = (long) page << PAGE_SHIFT;
+      int bit = from > pageStart ? (int) (from - pageStart) : 0;
+      for (int word = bit >>> 6; word < PAGE_WORDS; word++) {
+        long bits = pages[page][word];
+        if (word == bit >>> 6) {
+          bits &= -1L << (bit & 63);
+        }
+        if (bits != 0) {
+          return pageStart + ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+      }
+    }
+    return -1;
+  }
+
+  public long size() {
+    return size;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+
+/**
+ * Maps the original Neo4j node IDs to the RIDs of the corresponding OrientDB vertices. It's filled
+ * while vertices are committed and used during the relationships migration to resolve the edge
+ * endpoints without querying the 'neo4jNodeID' index.
+ */
+public interface ONeo4jNodeIdMap {
+
+  /**
+   * Stores the RID of the vertex imported from the Neo4j node with the passed id. The RID must be
+   * persistent, i.e. read after the transaction that created the vertex has been committed.
+   *
+   * @param neo4jNodeId
+   * @param rid
+   */
+  void put(long neo4jNodeId, ORID rid);
+
+  /**
+   * Returns the RID of the vertex imported from the Neo4j node with the passed id, null if the node
+   * was not imported.
+   *
+   * @param neo4jNodeId
+   * @return
+   */
+  ORID get(long neo4jNodeId);
+
+  /**
+   * Sets the passed RID to the one of the vertex imported from the Neo4j node with the passed id,
+   * without allocating: the edges import resolves two endpoints per relationship.
+   *
+   * @param neo4jNodeId
+   * @param rid set only if the node was imported
+   * @return false if the node was not imported
+   */
+  boolean get(long neo4jNodeId, ORecordId rid);
+
+  long size();
+
+  /** Releases the memory held by the map. */
+  void close();
+}
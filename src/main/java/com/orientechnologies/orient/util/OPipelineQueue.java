@@ -0,0 +1,132 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded queue between two stages of the import pipeline. Elements are handed over in chunks, so
+ * that the queue lock is taken once per chunk rather than once per record. A producer blocks while
+ * the queue is full, which propagates the backpressure of a slow stage back to the previous ones.
+ *
+ * <p>The queue ends when all of its producers are done: consumers then get null. It can also be
+ * aborted by any stage, which unblocks all the producers and the consumers.
+ */
+public class OPipelineQueue<E> {
+
+  private static final long POLL_MILLIS = 100;
+
+  // marks the end of the queue, put back by each consumer for the next one
+  private final List<E> end = Collections.emptyList();
+
+  private final BlockingQueue<List<E>> chunks;
+  private final int capacity;
+  private final AtomicInteger producers;
+  private final AtomicInteger size = new AtomicInteger();
+  private volatile boolean aborted;
+
+  /**
+   * @param capacity max number of elements in the queue
+   * @param chunkSize number of elements handed over at once
+   * @param producers number of the producers which must be done to end the queue
+   */
+  public OPipelineQueue(int capacity, int chunkSize, int producers) {
+    this.chunks = new ArrayBlockingQueue<List<E>>(Math.max(1, capacity / chunkSize));
+    this.capacity = capacity;
+    this.producers = new AtomicInteger(producers);
+  }
+
+  /**
+   * Adds a chunk of elements, waiting while the queue is full.
+   *
+   * @param chunk
+   * @return false if the queue has been aborted meanwhile
+   */
+  public boolean put(List<E> chunk) throws InterruptedException {
+    if (chunk.isEmpty()) {
+      return !aborted;
+    }
+    size.addAndGet(chunk.size());
+    if (this.offer(chunk)) {
+      return true;
+    }
+    size.addAndGet(-chunk.size());
+    return false;
+  }
+
+  /**
+   * Removes a chunk of elements, waiting while the queue is empty.
+   *
+   * @return null if the queue has ended or has been aborted
+   */
+  public List<E> take() throws InterruptedException {
+    while (!aborted) {
+      List<E> chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+      if (chunk == end) {
+        this.offer(end);
+        return null;
+      }
+      if (chunk != null) {
+        size.addAndGet(-chunk.size());
+        return chunk;
+      }
+    }
+    return null;
+  }
+
+  /** Called by each producer when it has no more elements to add. */
+  public void producerDone() throws InterruptedException {
+    if (producers.decrementAndGet() == 0) {
+      this.offer(end);
+    }
+  }
+
+  public void abort() {
+    aborted = true;
+  }
+
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /** Returns the number of elements in the queue. */
+  public int size() {
+    return size.get();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  private boolean offer(List<E> chunk) throws InterruptedException {
+    while (!aborted) {
+      if (chunks.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue over a ring of slots, safe for any number of producers and consumers
+ * (Vyukov's bounded MPMC queue). Each slot has a sequence number telling whether it's free for the
+ * producer of a position or filled for its consumer, so that offer() and poll() only need a CAS on
+ * their own position and never block: offer() fails when the ring is full, poll() returns null when
+ * it's empty.
+ */
+public class ORingBuffer<E> {
+
+  private final Object[] slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong(); // next position to fill
+  private final AtomicLong head = new AtomicLong(); // next position to consume
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  public ORingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.slots = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Adds the element, if there is room for it.
+   *
+   * @param element
+   * @return false if the ring is full
+   */
+  public boolean offer(E element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots[index] = element;
+          sequences.lazySet(index, position + 1); // publishes the element to the consumer
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false; // the slot still holds the element of the previous lap
+      } else {
+        position = tail.get(); // another producer took the position
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest element.
+   *
+   * @return null if the ring is empty
+   */
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    long position = head.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          E element = (E) slots[index];
+          slots[index] = null;
+          sequences.lazySet(index, position + mask + 1); // frees the slot for the next lap
+          return element;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        return null; // the slot has not been filled yet
+      } else {
+        position = head.get(); // another consumer took the position
+      }
+    }
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  /** Returns the number of elements added since the creation of the ring. */
+  public long offered() {
+    return tail.get();
+  }
+
+  public boolean isEmpty() {
+    return head.get() >= tail.get();
+  }
+}
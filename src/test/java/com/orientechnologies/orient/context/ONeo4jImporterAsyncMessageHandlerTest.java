@@ -0,0 +1,137 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.context.ONeo4jImporterAsyncMessageHandler.OverflowPolicy;
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ONeo4jImporterAsyncMessageHandlerTest {
+
+  @Test
+  public void shouldPrintMessagesInOrderInBackground() {
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ONeo4jImporterAsyncMessageHandler handler =
+        new ONeo4jImporterAsyncMessageHandler(
+            new ONeo4jImporterMessageHandler(
+                new PrintStream(output, true), OOutputStreamManager.INFO_LEVEL),
+            OverflowPolicy.DROP);
+
+    handler.info(this, "first\n");
+    handler.debug(this, "filtered\n");
+    handler.warn(this, "%s\n", "second");
+    handler.error(this, "third\n");
+    handler.flush();
+    assertThat(output.toString())
+        .containsSubsequence("first\n", "second\n", "third\n")
+        .doesNotContain("filtered");
+
+    handler.close();
+    handler.info(this, "after close\n");
+    assertThat(output.toString()).endsWith("after close\n");
+    assertThat(handler.getLostMessages()).isZero();
+  }
+
+  @Test
+  public void shouldDropNewMessagesWhenFull() throws Exception {
+
+    BlockingStream output = new BlockingStream();
+    ONeo4jImporterAsyncMessageHandler handler =
+        new ONeo4jImporterAsyncMessageHandler(
+            new ONeo4jImporterMessageHandler(
+                new PrintStream(output, true), OOutputStreamManager.INFO_LEVEL),
+            OverflowPolicy.DROP,
+            4);
+
+    this.fillWhileBlocked(handler, output);
+    assertThat(handler.getLostMessages()).isEqualTo(6);
+    assertThat(output.toString())
+        .startsWith("m0\nm1\nm2\nm3\nm4\n")
+        .contains("6 log messages lost")
+        .doesNotContain("m5");
+  }
+
+  @Test
+  public void shouldOverwriteOldestMessagesWhenFull() throws Exception {
+
+    BlockingStream output = new BlockingStream();
+    ONeo4jImporterAsyncMessageHandler handler =
+        new ONeo4jImporterAsyncMessageHandler(
+            new ONeo4jImporterMessageHandler(
+                new PrintStream(output, true), OOutputStreamManager.INFO_LEVEL),
+            OverflowPolicy.OVERWRITE,
+            4);
+
+    this.fillWhileBlocked(handler, output);
+    assertThat(handler.getLostMessages()).isEqualTo(6);
+    assertThat(output.toString())
+        .startsWith("m0\nm7\nm8\nm9\nm10\n")
+        .contains("6 log messages lost");
+  }
+
+  /**
+   * Publishes 11 messages while the log thread is stuck printing the first one: 4 fit in the
+   * buffer, the other 6 are lost. Publishing must never wait for the output.
+   */
+  private void fillWhileBlocked(ONeo4jImporterAsyncMessageHandler handler, BlockingStream output)
+      throws InterruptedException {
+
+    handler.info(this, "m0\n");
+    assertThat(output.printing.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 1; i <= 10; i++) {
+      handler.info(this, "m" + i + "\n");
+    }
+    output.release.countDown();
+    handler.close();
+  }
+
+  /** Output stuck on the first write until released. */
+  private static class BlockingStream extends OutputStream {
+
+    private final CountDownLatch printing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Override
+    public synchronized void write(int b) {
+      printing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      output.write(b);
+    }
+
+    @Override
+    public synchronized String toString() {
+      return output.toString();
+    }
+  }
+}
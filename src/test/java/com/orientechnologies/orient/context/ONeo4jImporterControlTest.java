@@ -0,0 +1,105 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Test;
+
+public class ONeo4jImporterControlTest {
+
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void shouldHoldTheWorkersWhilePaused() throws Exception {
+
+    final ONeo4jImporterControl control = new ONeo4jImporterControl();
+    control.pause();
+    assertThat(control.isPaused()).isTrue();
+
+    Future<Void> worker =
+        pool.submit(
+            new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                control.acquire();
+                return null;
+              }
+            });
+    try {
+      worker.get(300, TimeUnit.MILLISECONDS);
+      fail("The worker should wait until the import is resumed");
+    } catch (TimeoutException e) {
+      // expected
+    }
+
+    control.resume();
+    worker.get(5, TimeUnit.SECONDS);
+    assertThat(control.isPaused()).isFalse();
+  }
+
+  @Test
+  public void shouldLimitTheRecordsPerSecond() throws Exception {
+
+    ONeo4jImporterControl control = new ONeo4jImporterControl();
+    control.setMaxRecordsPerSecond(100);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 51; i++) {
+      control.acquire();
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertThat(elapsedMillis).isBetween(450L, 2000L);
+
+    control.setMaxRecordsPerSecond(0);
+    start = System.nanoTime();
+    for (int i = 0; i < 10000; i++) {
+      control.acquire();
+    }
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(450L);
+  }
+
+  @Test
+  public void shouldLimitTheRecordsPerSecondOfWholeBatches() throws Exception {
+
+    ONeo4jImporterControl control = new ONeo4jImporterControl();
+    control.setMaxRecordsPerSecond(1000);
+
+    long start = System.nanoTime();
+    control.acquire(500);
+    control.acquire(500);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertThat(elapsedMillis).isBetween(900L, 2500L);
+  }
+}
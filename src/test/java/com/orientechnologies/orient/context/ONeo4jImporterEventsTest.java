@@ -0,0 +1,102 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** The jdk.jfr API is used by reflection, as in the class under test. */
+public class ONeo4jImporterEventsTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldNotRecordWithoutRecording() {
+
+    assertThat(ONeo4jImporterEvents.BATCH.isEnabled()).isFalse();
+    ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.BATCH.begin();
+    assertThat(event.isRecorded()).isFalse();
+    event.commit("Person", 10L, 1000L);
+  }
+
+  @Test
+  public void shouldRecordTheEventsEnabledByARecording() throws Exception {
+
+    assumeTrue(isFlightRecorderAvailable());
+
+    Object recording = Class.forName("jdk.jfr.Recording").newInstance();
+    recording
+        .getClass()
+        .getMethod("enable", String.class)
+        .invoke(recording, "com.orientechnologies.orient.neo4jimporter.Batch");
+    recording.getClass().getMethod("start").invoke(recording);
+    try {
+      assertThat(ONeo4jImporterEvents.BATCH.isEnabled()).isTrue();
+
+      ONeo4jImporterEvents.Event event = ONeo4jImporterEvents.BATCH.begin();
+      assertThat(event.isRecorded()).isTrue();
+      event.commit("Person", 10L, 1000L);
+    } finally {
+      recording.getClass().getMethod("stop").invoke(recording);
+    }
+
+    Path dump = new File(folder.getRoot(), "import.jfr").toPath();
+    recording.getClass().getMethod("dump", Path.class).invoke(recording, dump);
+    recording.getClass().getMethod("close").invoke(recording);
+
+    List<String> batches = new ArrayList<String>();
+    for (Object recorded :
+        (List<?>)
+            Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class)
+                .invoke(null, dump)) {
+      Object type = recorded.getClass().getMethod("getEventType").invoke(recorded);
+      if ("com.orientechnologies.orient.neo4jimporter.Batch"
+          .equals(type.getClass().getMethod("getName").invoke(type))) {
+        batches.add(
+            recorded.getClass().getMethod("getString", String.class).invoke(recorded, "className")
+                + " "
+                + recorded.getClass().getMethod("getLong", String.class).invoke(recorded, "records")
+                + " "
+                + recorded.getClass().getMethod("getLong", String.class).invoke(recorded, "bytes"));
+      }
+    }
+    assertThat(batches).containsExactly("Person 10 1000");
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.consumer.RecordingFile");
+      return (Boolean)
+          Class.forName("jdk.jfr.FlightRecorder").getMethod("isAvailable").invoke(null);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+}
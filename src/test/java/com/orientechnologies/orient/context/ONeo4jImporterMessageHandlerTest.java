@@ -0,0 +1,194 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.neo4j.driver.internal.InternalRecord;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+
+public class ONeo4jImporterMessageHandlerTest {
+
+  @Test
+  public void shouldEnableDebugOnlyAtDebugLevel() {
+
+    assertThat(new ONeo4jImporterMessageHandler(OOutputStreamManager.DEBUG_LEVEL).isDebugEnabled())
+        .isTrue();
+    assertThat(new ONeo4jImporterMessageHandler(OOutputStreamManager.INFO_LEVEL).isDebugEnabled())
+        .isFalse();
+    assertThat(new ONeo4jImporterMessageHandler(OOutputStreamManager.BLANK_LEVEL).isDebugEnabled())
+        .isFalse();
+
+    ONeo4jImporterMessageHandler handler =
+        new ONeo4jImporterMessageHandler(OOutputStreamManager.INFO_LEVEL);
+    handler.setOutputManagerLevel(OOutputStreamManager.DEBUG_LEVEL);
+    assertThat(handler.isDebugEnabled()).isTrue();
+
+    ONeo4jImporterContext.newInstance((OrientDB) null).setMessageHandler(handler);
+    assertThat(ONeo4jImporterContext.getInstance().isDebugEnabled()).isTrue();
+  }
+
+  @Test
+  public void shouldPrintDebugMessagesOnlyWhenEnabled() {
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ONeo4jImporterMessageHandler handler =
+        new ONeo4jImporterMessageHandler(
+            new PrintStream(output, true), OOutputStreamManager.INFO_LEVEL);
+
+    handler.debug(this, "filtered");
+    handler.debug(this, "filtered %s", "too");
+    assertThat(output.toString()).isEmpty();
+
+    handler.setOutputManagerLevel(OOutputStreamManager.DEBUG_LEVEL);
+    handler.debug(this, "printed");
+    assertThat(output.toString()).contains("printed");
+  }
+
+  /**
+   * The debug messages of the import hot path, guarded by isDebugEnabled, must not be built when
+   * debug is filtered out: the record, whose string is the largest part of them, is never printed.
+   */
+  @Test
+  public void shouldNotBuildGuardedDebugMessagesWhenFiltered() {
+
+    ONeo4jImporterMessageHandler handler =
+        new ONeo4jImporterMessageHandler(
+            new PrintStream(new ByteArrayOutputStream()), OOutputStreamManager.INFO_LEVEL);
+    ONeo4jImporterContext.newInstance((OrientDB) null).setMessageHandler(handler);
+    CountingRecord record = new CountingRecord(wideNode(1));
+
+    logGuarded(record);
+    assertThat(record.printed).isZero();
+
+    // the messages are built anyway when unguarded, even if filtered out
+    logUnguarded(record);
+    assertThat(record.printed).isEqualTo(1);
+
+    handler.setOutputManagerLevel(OOutputStreamManager.DEBUG_LEVEL);
+    logGuarded(record);
+    assertThat(record.printed).isEqualTo(2);
+  }
+
+  /**
+   * Compares the bytes allocated for each imported node by the debug messages of the import hot
+   * path, built unconditionally as before and guarded by isDebugEnabled, with debug filtered out.
+   * Run by hand on a HotSpot JVM: the allocations of each round are its only output.
+   */
+  @Ignore
+  @Test
+  public void benchmarkDebugMessagesAllocation() {
+
+    ONeo4jImporterMessageHandler handler =
+        new ONeo4jImporterMessageHandler(
+            new PrintStream(new ByteArrayOutputStream()), OOutputStreamManager.INFO_LEVEL);
+    ONeo4jImporterContext.newInstance((OrientDB) null).setMessageHandler(handler);
+
+    List<Record> records = new ArrayList<Record>();
+    for (int i = 0; i < 1000; i++) {
+      records.add(wideNode(i));
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    for (int round = 0; round < 5; round++) {
+      long start = threads.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < 100; i++) {
+        for (Record record : records) {
+          logUnguarded(record);
+        }
+      }
+      long unguardedBytes = threads.getThreadAllocatedBytes(threadId) - start;
+
+      start = threads.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < 100; i++) {
+        for (Record record : records) {
+          logGuarded(record);
+        }
+      }
+      long guardedBytes = threads.getThreadAllocatedBytes(threadId) - start;
+
+      System.out.printf(
+          "round %d: before %.1f bytes/record, after %.1f bytes/record%n",
+          round, unguardedBytes / 1e5, guardedBytes / 1e5);
+    }
+  }
+
+  private static Record wideNode(int id) {
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    for (int i = 0; i < 30; i++) {
+      properties.put("property" + i, "value of property " + i + " of node " + id);
+    }
+    return new InternalRecord(
+        Arrays.asList("properties", "id", "labels"),
+        new Value[] {
+          Values.value(properties), Values.value(id), Values.value(Arrays.asList("A", "B"))
+        });
+  }
+
+  // the messages of a node with multiple labels and of one of its relationships
+  private void logUnguarded(Record record) {
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .debug(this, "Found node ('" + record + "') with multiple labels.");
+    ONeo4jImporterContext.getInstance()
+        .getMessageHandler()
+        .debug(this, "Neo:" + record.get("id") + "-" + "KNOWS" + "->" + record.get("id"));
+  }
+
+  private void logGuarded(Record record) {
+    if (ONeo4jImporterContext.getInstance().isDebugEnabled()) {
+      this.logUnguarded(record);
+    }
+  }
+
+  /** A record counting how many times it's turned into a string. */
+  private static class CountingRecord extends InternalRecord {
+
+    private int printed;
+
+    CountingRecord(Record record) {
+      super(record.keys(), record.values().toArray(new Value[0]));
+    }
+
+    @Override
+    public String toString() {
+      printed++;
+      return super.toString();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.listener.OStatisticsListener;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ONeo4jImporterStatisticsTest {
+
+  @Test
+  public void shouldPublishTheMetricsToTheListeners() {
+
+    ONeo4jImporterStatistics statistics = new ONeo4jImporterStatistics();
+    final List<Double> importedVertices = new ArrayList<Double>();
+    statistics.registerListener(
+        new OStatisticsListener() {
+          @Override
+          public String updateOnEvent(ONeo4jImporterStatistics statistics) {
+            importedVertices.add(statistics.orientDBImportedVerticesCounter);
+            return null;
+          }
+        });
+
+    statistics.add(ONeo4jImporterStatistics.ORIENTDB_VERTICES, 100);
+    statistics.increment(ONeo4jImporterStatistics.ORIENTDB_VERTICES);
+    statistics.set(ONeo4jImporterStatistics.NEO4J_TOTAL_NODES, 1000);
+    assertThat(statistics.orientDBImportedVerticesCounter).isEqualTo(0);
+
+    statistics.notifyListeners();
+    assertThat(importedVertices).containsExactly(101.0);
+    assertThat(statistics.snapshot().neo4jTotalNodes).isEqualTo(1000);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.core.db.OrientDB;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class ONeo4jImporterMetricsExporterTest {
+
+  // metric name, optional labels, value
+  private static final Pattern SAMPLE =
+      Pattern.compile("[a-z_][a-z0-9_]*(\\{[a-z_]+=\"[^\"]*\"\\})? -?([0-9.E-]+|NaN)");
+
+  @Test
+  public void shouldExportTheMetricsInPrometheusTextFormat() {
+
+    ONeo4jImporterContext context = ONeo4jImporterContext.newInstance((OrientDB) null);
+    ONeo4jImporterStatistics statistics = context.getStatistics();
+    statistics.startPhase("vertices");
+    statistics.add(ONeo4jImporterStatistics.NEO4J_NODES_NO_LABEL, 7);
+    statistics.set(ONeo4jImporterStatistics.NEO4J_TOTAL_NODES, 1000);
+    statistics.set(ONeo4jImporterStatistics.NEO4J_NODES_LAST_COMMITTED_ID + ".0", 99);
+    statistics.set(ONeo4jImporterStatistics.NEO4J_NODES_LAST_COMMITTED_ID + ".1", 199);
+    statistics
+        .getMetrics()
+        .timer(ONeo4jImporterStatistics.ORIENTDB_VERTICES_COMMIT)
+        .record(TimeUnit.MILLISECONDS.toNanos(250));
+    statistics
+        .getMetrics()
+        .timer(ONeo4jImporterStatistics.ORIENTDB_VERTICES_SAVE)
+        .record(TimeUnit.MILLISECONDS.toNanos(2));
+
+    String metrics = ONeo4jImporterMetricsExporter.export(context, true);
+
+    assertThat(metrics)
+        .contains("# TYPE neo4j_importer_neo4j_nodes_no_label_total counter\n")
+        .contains("neo4j_importer_neo4j_nodes_no_label_total 7\n")
+        .contains("neo4j_importer_neo4j_total_nodes 1000\n")
+        .contains("# TYPE neo4j_importer_orientdb_vertices_commit_seconds summary\n")
+        .contains("neo4j_importer_orientdb_vertices_commit_seconds_count 1\n")
+        .contains("neo4j_importer_orientdb_vertices_commit_seconds_sum 0.25\n")
+        .contains("neo4j_importer_neo4j_nodes_last_committed_id{worker=\"0\"} 99\n")
+        .contains("neo4j_importer_neo4j_nodes_last_committed_id{worker=\"1\"} 199\n")
+        .contains("neo4j_importer_timer_max_seconds{timer=\"orientdb.vertices.commit\"} 0.25\n")
+        .contains("neo4j_importer_timer_max_seconds{timer=\"orientdb.vertices.save\"} 0.002\n")
+        .contains("neo4j_importer_phase_duration_seconds{phase=\"vertices\"} ")
+        .contains("neo4j_importer_job_running 1\n")
+        .contains("neo4j_importer_jvm_heap_headroom_bytes ");
+    Set<String> families = new HashSet<String>();
+    for (String line : metrics.split("\n")) {
+      if (line.startsWith("# TYPE ")) {
+        // each family is declared once
+        assertThat(families.add(line.split(" ")[2])).as(line).isTrue();
+      } else if (!line.startsWith("#")) {
+        assertThat(SAMPLE.matcher(line).matches()).as(line).isTrue();
+      }
+    }
+  }
+
+  @Test
+  public void shouldExportOnlyTheHeapWithoutJobs() {
+
+    String metrics = ONeo4jImporterMetricsExporter.export(null, false);
+    assertThat(metrics).contains("neo4j_importer_job_running 0\n");
+    assertThat(metrics).doesNotContain("phase");
+  }
+
+  @Test
+  public void shouldConvertNamesToSnakeCase() {
+    assertThat(ONeo4jImporterMetricsExporter.metricName("neo4j.nodes.multipleLabels"))
+        .isEqualTo("neo4j_nodes_multiple_labels");
+  }
+}
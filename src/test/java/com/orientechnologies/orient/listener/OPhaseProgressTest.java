@@ -0,0 +1,94 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.listener;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Map;
+import org.junit.Test;
+
+public class OPhaseProgressTest {
+
+  @Test
+  public void shouldEstimateTheTimeLeftFromTheRate() {
+
+    OPhaseProgress progress = new OPhaseProgress("edges", 0, 0);
+    assertThat(progress.getEtaMillis()).isEqualTo(-1);
+
+    // 1000 edges per second for 30 seconds, of 100000
+    for (int second = 1; second <= 30; second++) {
+      progress.update(second * 1000L, second * 1000, 100000);
+    }
+
+    assertThat(progress.getCurrentRate()).isCloseTo(1000, within(0.001));
+    assertThat(progress.getMovingRate()).isCloseTo(1000, within(0.001));
+    assertThat(progress.getElapsedMillis()).isEqualTo(30000);
+    assertThat(progress.getPercentage()).isCloseTo(30, within(0.001));
+    assertThat(progress.getEtaMillis()).isEqualTo(70000);
+
+    Map<String, Object> map = progress.toMap();
+    assertThat(map.get("phase")).isEqualTo("edges");
+    assertThat(map.get("done")).isEqualTo(30000L);
+    assertThat(map.get("etaMillis")).isEqualTo(70000L);
+  }
+
+  @Test
+  public void shouldFollowRateChangesOverTheWindowAndSmoothThem() {
+
+    OPhaseProgress progress = new OPhaseProgress("vertices", 0, 0);
+    long done = 0;
+    for (int second = 1; second <= 60; second++) {
+      done += 1000;
+      progress.update(second * 1000L, done, 0);
+    }
+    // the rate drops to 100 per second
+    for (int second = 61; second <= 80; second++) {
+      done += 100;
+      progress.update(second * 1000L, done, 0);
+    }
+
+    // the window only holds samples at the new rate
+    assertThat(progress.getCurrentRate()).isCloseTo(100, within(0.001));
+    // the moving rate has moved only part of the way towards it
+    assertThat(progress.getMovingRate()).isBetween(100.0, 1000.0);
+    assertThat(progress.getMovingRate())
+        .isCloseTo(100 + 900 * Math.exp(-20000.0 / 60000), within(0.001));
+    // unknown total
+    assertThat(progress.getPercentage()).isEqualTo(-1);
+    assertThat(progress.getEtaMillis()).isEqualTo(-1);
+  }
+
+  @Test
+  public void shouldRateOnlyTheElementsDoneSinceTheResume() {
+
+    // 40000 edges imported before the resume, restored with the counters
+    OPhaseProgress progress = new OPhaseProgress("edges", 0, 40000);
+    for (int second = 1; second <= 10; second++) {
+      progress.update(second * 1000L, 40000 + second * 1000, 100000);
+    }
+
+    assertThat(progress.getCurrentRate()).isCloseTo(1000, within(0.001));
+    assertThat(progress.getMovingRate()).isCloseTo(1000, within(0.001));
+    assertThat(progress.getPercentage()).isCloseTo(50, within(0.001));
+    assertThat(progress.getEtaMillis()).isEqualTo(50000);
+  }
+}
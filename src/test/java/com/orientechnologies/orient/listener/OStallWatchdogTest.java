@@ -0,0 +1,121 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.listener;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterMessageHandler;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OStallWatchdogTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private ONeo4jImporterStatistics statistics;
+  private OStallWatchdog watchdog;
+
+  @Before
+  public void setUp() {
+    ONeo4jImporterContext.newInstance((OrientDB) null)
+        .setMessageHandler(
+            new ONeo4jImporterMessageHandler(
+                new PrintStream(new ByteArrayOutputStream()), OOutputStreamManager.INFO_LEVEL));
+    statistics = new ONeo4jImporterStatistics();
+    watchdog = new OStallWatchdog(10, folder.getRoot().getAbsolutePath());
+  }
+
+  @Test
+  public void shouldWriteDiagnosticsOnceWhenNothingMoves() throws Exception {
+
+    statistics.startPhase("edges");
+    statistics.increment(ONeo4jImporterStatistics.ORIENTDB_EDGES);
+    statistics.set(ONeo4jImporterStatistics.NEO4J_RELATIONSHIPS_LAST_COMMITTED_ID + ".0", 42);
+    statistics.getMetrics().timer(ONeo4jImporterStatistics.ORIENTDB_EDGES_SAVE).record(2000000);
+
+    assertThat(watchdog.check(statistics, 1000, false)).isNull();
+    assertThat(watchdog.check(statistics, 10999, false)).isNull();
+    assertThat(statistics.stalledSinceMillis).isZero();
+
+    File diagnostics = watchdog.check(statistics, 11000, false);
+    assertThat(diagnostics).isNotNull().exists();
+    assertThat(statistics.stalledSinceMillis).isEqualTo(1000);
+    assertThat(statistics.stallDiagnostics).isEqualTo(diagnostics.getAbsolutePath());
+
+    String content = new String(Files.readAllBytes(diagnostics.toPath()), StandardCharsets.UTF_8);
+    assertThat(content)
+        .contains("Importing edges")
+        .contains("worker 0 relationships: 42")
+        .contains(ONeo4jImporterStatistics.ORIENTDB_EDGES_SAVE + ": 1,")
+        .contains("\"" + Thread.currentThread().getName() + "\"")
+        .contains("OStallWatchdogTest");
+
+    // written once per stall
+    assertThat(watchdog.check(statistics, 30000, false)).isNull();
+    assertThat(statistics.stalledSinceMillis).isEqualTo(1000);
+  }
+
+  @Test
+  public void shouldClearTheStallOnProgress() {
+
+    statistics.startPhase("vertices");
+    watchdog.check(statistics, 0, false);
+    assertThat(watchdog.check(statistics, 10000, false)).isNotNull();
+
+    statistics.increment(ONeo4jImporterStatistics.ORIENTDB_VERTICES);
+    assertThat(watchdog.check(statistics, 11000, false)).isNull();
+    assertThat(statistics.stalledSinceMillis).isZero();
+    assertThat(statistics.stallDiagnostics).isNull();
+
+    // the timeout starts again from the last progress
+    assertThat(watchdog.check(statistics, 20000, false)).isNull();
+    assertThat(watchdog.check(statistics, 21000, false)).isNotNull();
+  }
+
+  @Test
+  public void shouldNotConsiderStalledWhilePausedOrBetweenPhases() {
+
+    statistics.startPhase("vertices");
+    watchdog.check(statistics, 0, false);
+    assertThat(watchdog.check(statistics, 60000, true)).isNull();
+    assertThat(watchdog.check(statistics, 69999, false)).isNull();
+
+    statistics.endPhase();
+    assertThat(watchdog.check(statistics, 100000, false)).isNull();
+
+    // a new phase restarts the timeout
+    statistics.startPhase("edges");
+    assertThat(watchdog.check(statistics, 100000, false)).isNull();
+    assertThat(watchdog.check(statistics, 109999, false)).isNull();
+    assertThat(statistics.stalledSinceMillis).isZero();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.core.db.OrientDBConfig;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+
+public class ONeo4jImporterCheckpointTest {
+
+  @Test
+  public void shouldAdvanceOnlyPastChunksCompletedWithoutGaps() {
+
+    ONeo4jImporterCheckpoint.Partition partition =
+        new ONeo4jImporterCheckpoint.Partition(null, 0, 1000);
+    ONeo4jImporterCheckpoint.Chunk first = partition.newChunk(99);
+    ONeo4jImporterCheckpoint.Chunk second = partition.newChunk(199);
+    ONeo4jImporterCheckpoint.Chunk third = partition.newChunk(299);
+    assertThat(partition.getCommittedId()).isEqualTo(-1);
+
+    // committed out of order by another writer
+    third.completed();
+    second.completed();
+    assertThat(partition.getCommittedId()).isEqualTo(-1);
+
+    first.completed();
+    assertThat(partition.getCommittedId()).isEqualTo(299);
+    assertThat(partition.isFinished()).isFalse();
+
+    partition.fetched();
+    assertThat(partition.isFinished()).isTrue();
+  }
+
+  @Test
+  public void shouldNotFinishWhileChunksArePending() {
+
+    ONeo4jImporterCheckpoint.Partition partition =
+        new ONeo4jImporterCheckpoint.Partition("KNOWS", -1, -1);
+    ONeo4jImporterCheckpoint.Chunk chunk = partition.newChunk(42);
+    partition.fetched();
+    assertThat(partition.isFinished()).isFalse();
+
+    chunk.completed();
+    assertThat(partition.isFinished()).isTrue();
+    assertThat(partition.getCommittedId()).isEqualTo(42);
+  }
+
+  @Test
+  public void shouldRestoreTheProgressSaved() {
+
+    OrientDB orientDB = new OrientDB("embedded:", OrientDBConfig.defaultConfig());
+    try {
+      orientDB.execute(
+          "create database checkpoint memory users ( admin identified by 'admin' role admin)");
+      ODatabaseDocument db = orientDB.open("checkpoint", "admin", "admin");
+      try {
+        assertThat(ONeo4jImporterCheckpoint.load(db, new OMetricsRegistry())).isNull();
+
+        OMetricsRegistry metrics = new OMetricsRegistry();
+        metrics.counter("orientdb.vertices").add(250);
+
+        ONeo4jImporterCheckpoint checkpoint = ONeo4jImporterCheckpoint.create(db, metrics);
+        ONeo4jImporterCheckpoint.Partition finished =
+            new ONeo4jImporterCheckpoint.Partition(null, 0, 500);
+        ONeo4jImporterCheckpoint.Partition interrupted =
+            new ONeo4jImporterCheckpoint.Partition(null, 500, 1000);
+        checkpoint.setPartitions(
+            db,
+            ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE,
+            Arrays.asList(finished, interrupted));
+        finished.newChunk(499).completed();
+        finished.fetched();
+        interrupted.newChunk(599).completed();
+        interrupted.newChunk(699); // written, never committed
+        checkpoint.save(db);
+        checkpoint.phaseCompleted(db, "classes");
+        assertThat(checkpoint.isResumed()).isFalse();
+
+        ONeo4jImporterCheckpoint loaded = ONeo4jImporterCheckpoint.load(db, new OMetricsRegistry());
+        assertThat(loaded.isResumed()).isTrue();
+        assertThat(loaded.isCompleted("classes")).isTrue();
+        assertThat(loaded.isCompleted(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE))
+            .isFalse();
+        assertThat(loaded.getCounters()).containsEntry("orientdb.vertices", 250L);
+
+        List<ONeo4jImporterCheckpoint.Partition> partitions =
+            loaded.getPartitions(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE);
+        assertThat(partitions).hasSize(2);
+        assertThat(partitions.get(0).isFinished()).isTrue();
+        assertThat(partitions.get(1).isRestored()).isTrue();
+        assertThat(partitions.get(1).isFinished()).isFalse();
+        assertThat(partitions.get(1).lo).isEqualTo(500);
+        assertThat(partitions.get(1).getCommittedId()).isEqualTo(599);
+        assertThat(loaded.getPartitions(ONeo4jImporterVerticesAndEdgesMigrator.EDGES_PHASE))
+            .isNull();
+
+        partitions.get(1).setImported(new HashSet<Long>(Collections.singleton(650L)));
+        assertThat(partitions.get(1).isImported(650)).isTrue();
+        assertThat(partitions.get(1).isImported(700)).isFalse();
+      } finally {
+        db.close();
+      }
+    } finally {
+      orientDB.close();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterMessageHandler;
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.core.db.OrientDBConfig;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import org.junit.Test;
+
+public class ONeo4jImporterClassResolverTest {
+
+  @Test
+  public void shouldFindClassesWhateverTheCaseOfTheirName() {
+
+    ONeo4jImporterContext context = ONeo4jImporterContext.newInstance((OrientDB) null);
+    context.setMessageHandler(new ONeo4jImporterMessageHandler(OOutputStreamManager.BLANK_LEVEL));
+
+    OrientDB orientDB = new OrientDB("embedded:", OrientDBConfig.defaultConfig());
+    try {
+      orientDB.execute(
+          "create database resolver memory users ( admin identified by 'admin' role admin)");
+      ODatabaseDocument db = orientDB.open("resolver", "admin", "admin");
+      try {
+        db.createVertexClass("Person");
+        ONeo4jImporterClassResolver resolver = new ONeo4jImporterClassResolver(db);
+
+        // asked twice: the second lookup of each name hits the exact names
+        for (int i = 0; i < 2; i++) {
+          assertThat(resolver.existsClass("Person")).isTrue();
+          assertThat(resolver.existsClass("PERSON")).isTrue();
+          assertThat(resolver.existsClass("Movie")).isFalse();
+        }
+
+        resolver.createVertexClass(db, "movie");
+        assertThat(resolver.existsClass("Movie")).isTrue();
+        assertThat(db.getMetadata().getSchema().getClass("Movie").getName()).isEqualTo("movie");
+      } finally {
+        db.close();
+      }
+    } finally {
+      orientDB.close();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.driver.internal.InternalRecord;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+
+public class ONeo4jImporterDeadLettersTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldCreateTheFileAtTheFirstRecord() {
+
+    ONeo4jImporterDeadLetters deadLetters =
+        ONeo4jImporterDeadLetters.create(null, folder.getRoot().getAbsolutePath());
+    assertThat(deadLetters.getFile().getParentFile()).isEqualTo(folder.getRoot());
+    assertThat(deadLetters.getFile()).doesNotExist();
+
+    deadLetters.add(
+        ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE, 7, node(7), "validation failed");
+    deadLetters.close();
+    assertThat(deadLetters.getFile()).exists();
+    assertThat(deadLetters.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldReadTheIdsOfEachPhase() throws Exception {
+
+    File file = folder.newFile("dead-letters.jsonl");
+    ONeo4jImporterDeadLetters deadLetters = ONeo4jImporterDeadLetters.create(file.getPath(), null);
+    deadLetters.add(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE, 42, node(42), "a");
+    deadLetters.add(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE, 7, node(7), "b \"c\"");
+    deadLetters.add(ONeo4jImporterVerticesAndEdgesMigrator.EDGES_PHASE, 3, node(3), "d");
+    deadLetters.add(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE, 42, node(42), "e");
+    deadLetters.close();
+
+    Map<String, List<Long>> ids = ONeo4jImporterDeadLetters.read(file);
+    assertThat(ids.get(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE))
+        .containsExactly(7L, 42L);
+    assertThat(ids.get(ONeo4jImporterVerticesAndEdgesMigrator.EDGES_PHASE)).containsExactly(3L);
+  }
+
+  private static Record node(long id) {
+    return new InternalRecord(
+        Arrays.asList("properties", "id", "labels"),
+        new Value[] {
+          Values.value(Collections.singletonMap("name", "node " + id + "\n")),
+          Values.value(id),
+          Values.value(Arrays.asList("Person"))
+        });
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterMessageHandler;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.Test;
+
+public class ONeo4jImporterJobManagementTest {
+
+  @Test
+  public void shouldExposeTheJobThroughJmx() throws Exception {
+
+    ONeo4jImporterContext context = ONeo4jImporterContext.newInstance((OrientDB) null);
+    context.setMessageHandler(new ONeo4jImporterMessageHandler(OOutputStreamManager.BLANK_LEVEL));
+    ONeo4jImporterSettings settings =
+        new ONeo4jImporterSettings(
+            "bolt://localhost:7687", "neo4j", "", "/tmp/jmxtest", "plocal", true, false);
+    context.getStatistics().add(ONeo4jImporterStatistics.ORIENTDB_VERTICES, 42);
+    context.getStatistics().getMetrics().timer(ONeo4jImporterStatistics.ORIENTDB_VERTICES_COMMIT);
+
+    ONeo4jImporterJobManagement management = new ONeo4jImporterJobManagement(settings, context);
+    management.register();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name =
+        new ObjectName(
+            ONeo4jImporterJobManagement.DOMAIN
+                + ":type=ImportJob,database="
+                + ObjectName.quote("/tmp/jmxtest"));
+    try {
+      assertThat(server.getAttribute(name, "ImportedVertices")).isEqualTo(42L);
+      assertThat(((TabularData) server.getAttribute(name, "StageP99Millis")).size()).isEqualTo(1);
+
+      server.invoke(name, "pause", null, null);
+      assertThat(context.getControl().isPaused()).isTrue();
+      server.invoke(name, "throttle", new Object[] {500.0}, new String[] {"double"});
+      assertThat(server.getAttribute(name, "MaxRecordsPerSecond")).isEqualTo(500.0);
+    } finally {
+      management.unregister();
+    }
+
+    assertThat(server.isRegistered(name)).isFalse();
+    assertThat(context.getControl().isPaused()).isFalse();
+  }
+}
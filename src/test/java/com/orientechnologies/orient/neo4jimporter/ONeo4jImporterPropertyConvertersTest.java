@@ -0,0 +1,67 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.neo4jimporter.ONeo4jImporterPropertyConverters.Converter;
+import java.util.Map;
+import org.junit.Test;
+import org.neo4j.driver.v1.Values;
+
+public class ONeo4jImporterPropertyConvertersTest {
+
+  @Test
+  public void shouldLearnConvertersFromSamples() {
+
+    ONeo4jImporterPropertyConverters table = new ONeo4jImporterPropertyConverters();
+    table.learnLabel("Person", Values.parameters("name", "John", "id", 1L, "score", 1));
+    table.learnLabel("Person", Values.parameters("name", "Jane", "id", 2L, "score", 0.5));
+    table.learnRelationshipType("KNOWS", Values.parameters("since", 2001));
+
+    Map<String, Converter> converters = table.forLabel("Person");
+    assertThat(converters.get("name")).isEqualTo(Converter.STRING);
+    assertThat(converters.get("id")).isEqualTo(Converter.INTEGER);
+    assertThat(converters.get("score")).isEqualTo(Converter.GENERIC);
+    assertThat(table.forRelationshipType("KNOWS").get("since")).isEqualTo(Converter.INTEGER);
+
+    assertThat(table.forLabel("Movie")).isEmpty();
+    assertThat(table.forLabel(null)).isEmpty();
+  }
+
+  @Test
+  public void shouldConvertLikeTheGenericPath() {
+
+    ONeo4jImporterPropertyConverters table = new ONeo4jImporterPropertyConverters();
+    table.learnLabel("Person", Values.parameters("id", 1L, "ratio", 0.1));
+
+    // the second node has a string id, and a property not seen in the sample
+    Map<String, Object> properties =
+        ONeo4jImporterPropertyConverters.convertProperties(
+            Values.parameters("id", "x-1", "ratio", 0.5, "age", 5000000000L),
+            table.forLabel("Person"));
+
+    assertThat(properties)
+        .containsEntry("id", "x-1")
+        .containsEntry("ratio", 0.5f)
+        .containsEntry("age", 5000000000L);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.neo4j.driver.internal.value.FloatValue;
+import org.neo4j.driver.internal.value.IntegerValue;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+import org.neo4j.driver.v1.exceptions.value.LossyCoercion;
+
+public class ONeo4jImporterUtilsTest {
+
+  @Test
+  public void shouldConvertIntegersWithoutLosingPrecision() {
+
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(42))).isEqualTo(42);
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(Integer.MIN_VALUE)))
+        .isEqualTo(Integer.MIN_VALUE);
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(5000000000L)))
+        .isEqualTo(5000000000L);
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(Long.MIN_VALUE)))
+        .isEqualTo(Long.MIN_VALUE);
+  }
+
+  @Test
+  public void shouldConvertFloatsWithoutLosingPrecision() {
+
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(0.5)))
+        .isEqualTo(0.5f);
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(0.1)))
+        .isEqualTo(0.1d);
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(1e300)))
+        .isEqualTo(1e300d);
+    assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(Values.value(Double.NaN)))
+        .isEqualTo(Float.NaN);
+  }
+
+  /**
+   * The former conversion, based on asInt()/asFloat() and on catching LossyCoercion, lost the
+   * ID-like longs that don't fit in an int and the doubles that don't fit in a float.
+   */
+  @Test
+  public void shouldConvertTheValuesLostByTheLossyCoercion() {
+
+    Value[] values = {Values.value(10000000000L), Values.value(0.1)};
+    for (Value value : values) {
+      assertThat(convertWithLossyCoercion(value)).isNull();
+      assertThat(ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(value)).isNotNull();
+    }
+  }
+
+  /**
+   * Compares the cost per value of the conversion with the former one, on ID-like longs that don't
+   * fit in an int and doubles that don't fit in a float. Run by hand: the timings of each round are
+   * its only output.
+   */
+  @Ignore
+  @Test
+  public void benchmarkNumericConversion() {
+
+    Value[] values = new Value[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 2 == 0 ? Values.value(10000000000L + i) : Values.value(i + 0.1);
+    }
+
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      int lostBefore = 0;
+      for (int i = 0; i < 1000; i++) {
+        for (Value value : values) {
+          if (convertWithLossyCoercion(value) == null) {
+            lostBefore++;
+          }
+        }
+      }
+      long legacyNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int lostAfter = 0;
+      for (int i = 0; i < 1000; i++) {
+        for (Value value : values) {
+          if (ONeo4jImporterUtils.convertValueTypeFromNeo4jToJava(value) == null) {
+            lostAfter++;
+          }
+        }
+      }
+      long nanos = System.nanoTime() - start;
+
+      System.out.printf(
+          "round %d: before %.1f ns/value (%d values lost), after %.1f ns/value (%d values lost)%n",
+          round, legacyNanos / 1e6, lostBefore, nanos / 1e6, lostAfter);
+      assertThat(lostAfter).isZero();
+    }
+  }
+
+  private static Object convertWithLossyCoercion(Value value) {
+    Object convertedValue = null;
+    if (value instanceof IntegerValue) {
+      try {
+        convertedValue = value.asInt();
+      } catch (LossyCoercion e) {
+        // DO NOTHING: we accept losing precision
+      }
+    } else if (value instanceof FloatValue) {
+      try {
+        convertedValue = value.asFloat();
+      } catch (LossyCoercion e) {
+        // DO NOTHING: we accept losing precision
+      }
+    }
+    return convertedValue;
+  }
+}
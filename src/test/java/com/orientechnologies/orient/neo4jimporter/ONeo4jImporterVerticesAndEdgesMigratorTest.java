@@ -0,0 +1,159 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.neo4jimporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.orientechnologies.orient.context.ONeo4jImporterContext;
+import com.orientechnologies.orient.context.ONeo4jImporterMessageHandler;
+import com.orientechnologies.orient.context.ONeo4jImporterStatistics;
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.core.db.OrientDBConfig;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.output.OOutputStreamManager;
+import com.orientechnologies.orient.util.OMetricsRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.neo4j.driver.internal.InternalRecord;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+
+public class ONeo4jImporterVerticesAndEdgesMigratorTest {
+
+  private static final int NODES = 250;
+
+  @Test
+  public void shouldSaveTheCheckpointAndCommitAfterAPauseInTxMode() throws Exception {
+
+    ONeo4jImporterContext context = ONeo4jImporterContext.newInstance((OrientDB) null);
+    context.setMessageHandler(new ONeo4jImporterMessageHandler(OOutputStreamManager.BLANK_LEVEL));
+    ONeo4jImporterStatistics statistics = context.getStatistics();
+
+    OrientDB orientDB = new OrientDB("embedded:", OrientDBConfig.defaultConfig());
+    try {
+      orientDB.execute(
+          "create database pause memory users ( admin identified by 'admin' role admin)");
+      ODatabaseDocument db = orientDB.open("pause", "admin", "admin");
+      try {
+        db.createVertexClass("Person");
+        ONeo4jImporterCheckpoint checkpoint =
+            ONeo4jImporterCheckpoint.create(db, statistics.getMetrics());
+        final ONeo4jImporterCheckpoint.Partition partition =
+            new ONeo4jImporterCheckpoint.Partition(null, 0, NODES);
+        checkpoint.setPartitions(
+            db,
+            ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE,
+            Collections.singletonList(partition));
+
+        final ONeo4jImporterVerticesAndEdgesMigrator migrator =
+            new ONeo4jImporterVerticesAndEdgesMigrator(
+                "",
+                false,
+                true,
+                null,
+                null,
+                db,
+                statistics,
+                false,
+                false,
+                new ONeo4jImporterSettings(),
+                checkpoint,
+                null);
+
+        // large enough for a batch to be committed after the first chunk of 100 nodes
+        final List<Record> records = new ArrayList<Record>();
+        char[] text = new char[1024];
+        Arrays.fill(text, 'x');
+        for (int id = 0; id < NODES; id++) {
+          records.add(
+              new InternalRecord(
+                  Arrays.asList("properties", "id", "labels"),
+                  new Value[] {
+                    Values.value(Collections.singletonMap("text", new String(text))),
+                    Values.value(id),
+                    Values.value(Collections.singletonList("Person"))
+                  }));
+        }
+
+        context.getControl().pause();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ODatabaseDocument writerDb = orientDB.open("pause", "admin", "admin");
+        Thread writer =
+            new Thread(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    writerDb.activateOnCurrentThread();
+                    try {
+                      migrator.writeNodes(writerDb, partition, records);
+                    } catch (Throwable e) {
+                      failure.set(e);
+                    } finally {
+                      writerDb.close();
+                    }
+                  }
+                });
+        writer.start();
+
+        // the writer saves the checkpoint and waits outside of its transaction
+        long committedId = -1;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (committedId < 0 && System.currentTimeMillis() < deadline && writer.isAlive()) {
+          Thread.sleep(50);
+          committedId = this.committedId(orientDB);
+        }
+        assertThat(committedId).isEqualTo(99);
+        assertThat(writer.isAlive()).isTrue();
+
+        context.getControl().resume();
+        writer.join(30000);
+        assertThat(failure.get()).isNull();
+        assertThat(writer.isAlive()).isFalse();
+
+        db.activateOnCurrentThread();
+        assertThat(db.countClass("Person")).isEqualTo(NODES);
+      } finally {
+        db.activateOnCurrentThread();
+        db.close();
+      }
+    } finally {
+      orientDB.close();
+    }
+  }
+
+  /** Reads the checkpoint through a session of its own, which sees only what was committed. */
+  private long committedId(OrientDB orientDB) {
+    ODatabaseDocument reader = orientDB.open("pause", "admin", "admin");
+    try {
+      return ONeo4jImporterCheckpoint.load(reader, new OMetricsRegistry())
+          .getPartitions(ONeo4jImporterVerticesAndEdgesMigrator.VERTICES_PHASE)
+          .get(0)
+          .getCommittedId();
+    } finally {
+      reader.close();
+    }
+  }
+}
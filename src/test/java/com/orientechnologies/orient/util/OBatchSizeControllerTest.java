@@ -0,0 +1,88 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OBatchSizeControllerTest {
+
+  private static final long MILLIS = 1000000;
+
+  @Test
+  public void shouldFillBatchesByPayload() {
+
+    OBatchSizeController controller = new OBatchSizeController(10, 1000, 64 * 1024);
+
+    // small records: the batch is limited by the maximum number of records
+    for (int i = 0; i < 999; i++) {
+      controller.recordAdded(20);
+    }
+    assertFalse(controller.isBatchFull());
+    controller.recordAdded(20);
+    assertTrue(controller.isBatchFull());
+    controller.batchCommitted(100 * MILLIS, 0.9);
+
+    // big records: the batch is limited by the payload target, but not below the minimum size
+    for (int i = 0; i < 9; i++) {
+      controller.recordAdded(1024 * 1024);
+    }
+    assertFalse(controller.isBatchFull());
+    controller.recordAdded(1024 * 1024);
+    assertTrue(controller.isBatchFull());
+  }
+
+  @Test
+  public void shouldAdjustTargetFromLatencyAndHeap() {
+
+    OBatchSizeController controller = new OBatchSizeController(1, 1000, 64 * 1024);
+
+    // fast commit of a full batch with plenty of heap: grows
+    controller.recordAdded(64 * 1024);
+    controller.batchCommitted(10 * MILLIS, 0.9);
+    assertEquals(OBatchSizeController.GROW, controller.getLastDecision());
+    assertEquals(96 * 1024, controller.getTargetBytes());
+
+    // fast commit of a batch cut by the end of the data: keeps
+    controller.recordAdded(1024);
+    controller.batchCommitted(10 * MILLIS, 0.9);
+    assertEquals(OBatchSizeController.KEEP, controller.getLastDecision());
+    assertEquals(96 * 1024, controller.getTargetBytes());
+
+    // slow commit: halves
+    controller.recordAdded(96 * 1024);
+    controller.batchCommitted(2000 * MILLIS, 0.9);
+    assertEquals(OBatchSizeController.SHRINK_SLOW_COMMIT, controller.getLastDecision());
+    assertEquals(48 * 1024, controller.getTargetBytes());
+    assertEquals(1, controller.getLastBatchRecords());
+
+    // low heap: halves, never below the minimum target
+    for (int i = 0; i < 10; i++) {
+      controller.recordAdded(48 * 1024);
+      controller.batchCommitted(10 * MILLIS, 0.1);
+    }
+    assertEquals(OBatchSizeController.SHRINK_LOW_HEAP, controller.getLastDecision());
+    assertEquals(OBatchSizeController.MIN_TARGET_BYTES, controller.getTargetBytes());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+import org.junit.Test;
+
+public class OInHeapNeo4jNodeIdMapTest {
+
+  @Test
+  public void shouldResolveStoredIds() {
+
+    ONeo4jNodeIdMap map = new OInHeapNeo4jNodeIdMap(0);
+
+    // more entries than the initial capacity, so that the table is rehashed several times
+    for (long i = 0; i < 10000; i++) {
+      map.put(i * 3, new ORecordId((int) (i % 50) + 10, i));
+    }
+
+    assertEquals(10000, map.size());
+    for (long i = 0; i < 10000; i++) {
+      assertEquals(new ORecordId((int) (i % 50) + 10, i), map.get(i * 3));
+    }
+    assertNull(map.get(1));
+    assertNull(map.get(30000));
+  }
+
+  @Test
+  public void shouldResolveStoredIdsIntoTheSameRid() {
+
+    ONeo4jNodeIdMap map = new OInHeapNeo4jNodeIdMap(10);
+    map.put(7, new ORecordId(17, 3));
+    map.put(8, new ORecordId(18, 1L << 40));
+
+    ORecordId rid = new ORecordId();
+    assertTrue(map.get(7, rid));
+    assertEquals(new ORecordId(17, 3), rid);
+    assertTrue(map.get(8, rid));
+    assertEquals(new ORecordId(18, 1L << 40), rid);
+    assertFalse(map.get(9, rid));
+    assertEquals(new ORecordId(18, 1L << 40), rid);
+  }
+
+  @Test
+  public void shouldOverwriteExistingIds() {
+
+    ONeo4jNodeIdMap map = new OInHeapNeo4jNodeIdMap(10);
+    map.put(42, new ORecordId(17, 0));
+    map.put(42, new ORecordId(18, 5));
+
+    assertEquals(1, map.size());
+    assertEquals(new ORecordId(18, 5), map.get(42));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectTemporaryRids() {
+
+    ONeo4jNodeIdMap map = new OInHeapNeo4jNodeIdMap(10);
+    map.put(1, new ORecordId(17, -2));
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class OLatencyHistogramTest {
+
+  @Test
+  public void shouldCoverEveryValueWithContiguousBuckets() {
+
+    long previousHighest = -1;
+    for (int bucket = 0; bucket < OLatencyHistogram.bucketOf(Long.MAX_VALUE) + 1; bucket++) {
+      long highest = OLatencyHistogram.highestValueOf(bucket);
+      assertEquals(bucket, OLatencyHistogram.bucketOf(previousHighest + 1));
+      assertEquals(bucket, OLatencyHistogram.bucketOf(highest));
+      previousHighest = highest;
+    }
+    assertEquals(Long.MAX_VALUE, previousHighest);
+  }
+
+  @Test
+  public void shouldReportPercentilesWithinTheBucketPrecision() {
+
+    OLatencyHistogram histogram = new OLatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+
+    // 1..100000 microseconds, shuffled
+    Random random = new Random(42);
+    long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i + 1) * 1000L;
+    }
+    for (int i = values.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      long value = values[i];
+      values[i] = values[j];
+      values[j] = value;
+    }
+    for (long value : values) {
+      histogram.record(value);
+    }
+
+    assertEquals(100000, histogram.getCount());
+    assertEquals(100000L * 100001 / 2 * 1000, histogram.getTotal());
+    assertEquals(100000000L, histogram.getMax());
+    assertWithin(50000000L, histogram.getValueAtPercentile(50));
+    assertWithin(99000000L, histogram.getValueAtPercentile(99));
+    assertEquals(100000000L, histogram.getValueAtPercentile(100));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual + " not within 1/16 of " + expected, actual >= expected);
+    assertTrue(actual + " not within 1/16 of " + expected, actual <= expected + expected / 16);
+  }
+}
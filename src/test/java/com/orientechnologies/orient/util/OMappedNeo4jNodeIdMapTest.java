@@ -0,0 +1,81 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OMappedNeo4jNodeIdMapTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldResolveStoredIdsAcrossSegments() throws Exception {
+
+    File directory = folder.newFolder("ids");
+    ONeo4jNodeIdMap map = new OMappedNeo4jNodeIdMap(directory);
+
+    // ids in the first and in a far segment, so that the gap is never mapped
+    map.put(0, new ORecordId(10, 0));
+    map.put(1, new ORecordId(11, 1));
+    map.put(50000000L, new ORecordId(12, 123456789L));
+
+    assertEquals(3, map.size());
+    assertEquals(new ORecordId(10, 0), map.get(0));
+    assertEquals(new ORecordId(11, 1), map.get(1));
+    assertEquals(new ORecordId(12, 123456789L), map.get(50000000L));
+    assertNull(map.get(2));
+    assertNull(map.get(20000000L));
+    assertNull(map.get(Long.MAX_VALUE));
+
+    ORecordId rid = new ORecordId();
+    assertTrue(map.get(50000000L, rid));
+    assertEquals(new ORecordId(12, 123456789L), rid);
+    assertTrue(map.get(0, rid));
+    assertEquals(new ORecordId(10, 0), rid);
+    assertFalse(map.get(2, rid));
+    assertFalse(map.get(20000000L, rid));
+
+    map.close();
+    assertNull(map.get(0));
+    assertEquals(0, directory.listFiles().length);
+  }
+
+  @Test
+  public void shouldDeleteTheDirectoryItCreated() throws Exception {
+
+    File directory = new File(folder.getRoot(), "neo4j-importer-ids-1");
+    ONeo4jNodeIdMap map = new OMappedNeo4jNodeIdMap(directory);
+    map.put(0, new ORecordId(10, 0));
+    assertTrue(directory.isDirectory());
+
+    map.close();
+    assertFalse(directory.exists());
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class OMetricsRegistryTest {
+
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void shouldNotLoseConcurrentIncrements() throws Exception {
+
+    final OMetricsRegistry registry = new OMetricsRegistry();
+    final int threads = 8;
+    final int increments = 100000;
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 0; i < threads; i++) {
+      futures.add(
+          pool.submit(
+              new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                  start.await();
+                  for (int j = 0; j < increments; j++) {
+                    registry.counter("records").increment();
+                    registry.counter("bytes").add(10);
+                    registry.timer("commit").record(j);
+                  }
+                  return null;
+                }
+              }));
+    }
+    start.countDown();
+    for (Future<Void> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+
+    assertEquals((long) threads * increments, registry.counter("records").get());
+    assertEquals(10L * threads * increments, registry.counter("bytes").get());
+    assertEquals((long) threads * increments, registry.timer("commit").getCount());
+    assertEquals(increments - 1, registry.timer("commit").getMaxNanos());
+  }
+
+  @Test
+  public void shouldSnapshotEveryMetricByName() {
+
+    OMetricsRegistry registry = new OMetricsRegistry();
+    assertSame(registry.counter("records"), registry.counter("records"));
+
+    registry.counter("records").add(3);
+    registry.gauge("depth").set(42);
+    registry.timer("commit").record(TimeUnit.MILLISECONDS.toNanos(2));
+    registry.timer("commit").record(TimeUnit.MILLISECONDS.toNanos(4));
+
+    Map<String, Object> snapshot = registry.snapshot();
+    assertEquals(3L, snapshot.get("records"));
+    assertEquals(42.0, snapshot.get("depth"));
+    Map<?, ?> commit = (Map<?, ?>) snapshot.get("commit");
+    assertEquals(2L, commit.get("count"));
+    assertEquals(6L, commit.get("totalMillis"));
+    assertEquals(3.0, commit.get("meanMillis"));
+    assertEquals(4.0, (Double) commit.get("p99Millis"), 4.0 / 16);
+    assertEquals(4.0, commit.get("maxMillis"));
+  }
+}
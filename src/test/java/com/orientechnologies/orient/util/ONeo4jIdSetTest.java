@@ -0,0 +1,79 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ONeo4jIdSetTest {
+
+  @Test
+  public void shouldContainTheAddedIds() {
+
+    ONeo4jIdSet ids = new ONeo4jIdSet();
+    assertTrue(ids.add(0));
+    assertTrue(ids.add(63));
+    assertTrue(ids.add(64));
+    assertTrue(ids.add(5L * ONeo4jIdSet.PAGE_BITS + 7));
+    assertFalse(ids.add(63));
+
+    assertEquals(4, ids.size());
+    assertTrue(ids.contains(0));
+    assertTrue(ids.contains(63));
+    assertTrue(ids.contains(64));
+    assertTrue(ids.contains(5L * ONeo4jIdSet.PAGE_BITS + 7));
+    assertFalse(ids.contains(1));
+    assertFalse(ids.contains(5L * ONeo4jIdSet.PAGE_BITS));
+    assertFalse(ids.contains(100L * ONeo4jIdSet.PAGE_BITS));
+    assertFalse(ids.contains(-1));
+  }
+
+  @Test
+  public void shouldIterateTheIdsInOrder() {
+
+    ONeo4jIdSet ids = new ONeo4jIdSet();
+    List<Long> added =
+        Arrays.asList(
+            3L,
+            64L,
+            65L,
+            (long) ONeo4jIdSet.PAGE_BITS - 1,
+            3L * ONeo4jIdSet.PAGE_BITS,
+            3L * ONeo4jIdSet.PAGE_BITS + 200);
+    for (long id : added) {
+      ids.add(id);
+    }
+
+    List<Long> iterated = new ArrayList<Long>();
+    for (long id = ids.next(0); id >= 0; id = ids.next(id + 1)) {
+      iterated.add(id);
+    }
+    assertEquals(added, iterated);
+    assertEquals(64L, ids.next(4));
+    assertEquals(-1L, ids.next(3L * ONeo4jIdSet.PAGE_BITS + 201));
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class OPipelineQueueTest {
+
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void shouldBlockProducersWhileFull() throws Exception {
+
+    final OPipelineQueue<Integer> queue = new OPipelineQueue<Integer>(4, 2, 1);
+    assertTrue(queue.put(Arrays.asList(1, 2)));
+    assertTrue(queue.put(Arrays.asList(3, 4)));
+    assertEquals(4, queue.size());
+
+    Future<Boolean> blocked =
+        pool.submit(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() throws Exception {
+                return queue.put(Arrays.asList(5, 6));
+              }
+            });
+    try {
+      blocked.get(300, TimeUnit.MILLISECONDS);
+      fail("The producer should wait for room in the queue");
+    } catch (TimeoutException e) {
+      // expected
+    }
+
+    assertEquals(Arrays.asList(1, 2), queue.take());
+    assertTrue(blocked.get(5, TimeUnit.SECONDS));
+    assertEquals(4, queue.size());
+  }
+
+  @Test
+  public void shouldEndAllConsumersWhenAllProducersAreDone() throws Exception {
+
+    final OPipelineQueue<Integer> queue = new OPipelineQueue<Integer>(100, 10, 2);
+    final AtomicInteger consumed = new AtomicInteger();
+
+    Callable<Void> consumer =
+        new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            List<Integer> chunk;
+            while ((chunk = queue.take()) != null) {
+              consumed.addAndGet(chunk.size());
+            }
+            return null;
+          }
+        };
+    Future<Void> consumer1 = pool.submit(consumer);
+    Future<Void> consumer2 = pool.submit(consumer);
+    Future<Void> consumer3 = pool.submit(consumer);
+
+    for (int i = 0; i < 50; i++) {
+      queue.put(Arrays.asList(i, i, i));
+    }
+    queue.producerDone();
+    queue.put(Arrays.asList(1));
+    queue.producerDone();
+
+    consumer1.get(5, TimeUnit.SECONDS);
+    consumer2.get(5, TimeUnit.SECONDS);
+    consumer3.get(5, TimeUnit.SECONDS);
+    assertEquals(151, consumed.get());
+    assertEquals(0, queue.size());
+    assertNull(queue.take());
+  }
+
+  @Test
+  public void shouldUnblockEveryoneOnAbort() throws Exception {
+
+    final OPipelineQueue<Integer> full = new OPipelineQueue<Integer>(1, 1, 1);
+    final OPipelineQueue<Integer> empty = new OPipelineQueue<Integer>(1, 1, 1);
+    full.put(Arrays.asList(1));
+
+    Future<Boolean> producer =
+        pool.submit(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() throws Exception {
+                return full.put(Arrays.asList(2));
+              }
+            });
+    Future<List<Integer>> consumer =
+        pool.submit(
+            new Callable<List<Integer>>() {
+              @Override
+              public List<Integer> call() throws Exception {
+                return empty.take();
+              }
+            });
+
+    full.abort();
+    empty.abort();
+    assertFalse(producer.get(5, TimeUnit.SECONDS));
+    assertNull(consumer.get(5, TimeUnit.SECONDS));
+    assertTrue(full.isAborted());
+    assertEquals(1, full.size());
+  }
+}
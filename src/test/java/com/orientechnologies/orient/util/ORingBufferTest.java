@@ -0,0 +1,116 @@
+/*
+ *
+ *  *  Copyright 2010-2017 OrientDB LTD (http://orientdb.com)
+ *  *
+ *  *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  *  you may not use this file except in compliance with the License.
+ *  *  You may obtain a copy of the License at
+ *  *
+ *  *       http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *  Unless required by applicable law or agreed to in writing, software
+ *  *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *  See the License for the specific language governing permissions and
+ *  *  limitations under the License.
+ *  *
+ *  * For more information: http://orientdb.com
+ *
+ */
+
+package com.orientechnologies.orient.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ORingBufferTest {
+
+  @Test
+  public void shouldKeepOrderAndBounds() {
+
+    ORingBuffer<Integer> ring = new ORingBuffer<Integer>(3);
+    assertEquals(4, ring.capacity());
+    assertTrue(ring.isEmpty());
+    assertNull(ring.poll());
+
+    for (int lap = 0; lap < 3; lap++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(ring.offer(lap * 10 + i));
+      }
+      assertFalse(ring.offer(-1));
+      for (int i = 0; i < 4; i++) {
+        assertEquals(Integer.valueOf(lap * 10 + i), ring.poll());
+      }
+      assertNull(ring.poll());
+    }
+    assertEquals(12, ring.offered());
+  }
+
+  @Test
+  public void shouldDeliverEachElementOnceToConcurrentConsumers() throws Exception {
+
+    final int producers = 4;
+    final int perProducer = 100000;
+    final ORingBuffer<Integer> ring = new ORingBuffer<Integer>(64);
+    ExecutorService pool = Executors.newFixedThreadPool(producers + 2);
+    try {
+      for (int p = 0; p < producers; p++) {
+        final int first = p * perProducer;
+        pool.submit(
+            new Callable<Void>() {
+              @Override
+              public Void call() {
+                for (int i = first; i < first + perProducer; i++) {
+                  while (!ring.offer(i)) {
+                    Thread.yield();
+                  }
+                }
+                return null;
+              }
+            });
+      }
+
+      List<Future<BitSet>> consumers = new ArrayList<Future<BitSet>>();
+      for (int c = 0; c < 2; c++) {
+        consumers.add(
+            pool.submit(
+                new Callable<BitSet>() {
+                  @Override
+                  public BitSet call() {
+                    BitSet seen = new BitSet();
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+                    while (ring.offered() < producers * perProducer || !ring.isEmpty()) {
+                      Integer element = ring.poll();
+                      if (element != null) {
+                        seen.set(element);
+                      } else if (System.nanoTime() > deadline) {
+                        break;
+                      }
+                    }
+                    return seen;
+                  }
+                }));
+      }
+
+      BitSet first = consumers.get(0).get(60, TimeUnit.SECONDS);
+      BitSet second = consumers.get(1).get(60, TimeUnit.SECONDS);
+      assertFalse(first.intersects(second));
+      first.or(second);
+      assertEquals(producers * perProducer, first.cardinality());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}